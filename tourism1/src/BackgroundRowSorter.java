@@ -0,0 +1,336 @@
+import javax.swing.*;
+import javax.swing.table.TableModel;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * RowSorter that sorts and filters on a background thread.
+ *
+ * The EDT only copies the cell references of the affected columns (the values are immutable
+ * Strings, Numbers and Dates). The worker turns them into primitive keys (double for numbers,
+ * epoch millis for dates, collation keys for text), sorts an int index array and hands the finished
+ * view-to-model mapping back to the EDT, where it replaces the old one in a single step. Until then
+ * the table keeps showing the previous order; rows appended in the meantime go to the end of the
+ * view. Model changes are coalesced, so reloading a table re-sorts it once.
+ */
+class BackgroundRowSorter<M extends TableModel> extends RowSorter<M> {
+    private static final int MAX_SORT_KEYS = 3;
+    private static final int COALESCE_MS = 150;
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "table-sorter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    private final M model;
+    private final Timer coalesce;
+    private List<SortKey> sortKeys = Collections.emptyList();
+    private String filterText = "";
+
+    // Current mapping; null means identity (nothing sorted or filtered yet)
+    private int[] viewToModel;
+    private int viewCount;
+    private int[] modelToView;
+    private int modelCount;
+
+    // Bumped on every model or criteria change so results computed from older data are dropped
+    private int revision;
+
+    BackgroundRowSorter(M model) {
+        this.model = model;
+        this.modelCount = model.getRowCount();
+        this.coalesce = new Timer(COALESCE_MS, e -> startSort());
+        this.coalesce.setRepeats(false);
+    }
+
+    @Override
+    public M getModel() { return model; }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() { return sortKeys; }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> copy = keys == null ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(keys));
+        if (copy.equals(sortKeys)) return;
+        sortKeys = copy;
+        fireSortOrderChanged();
+        revision++;
+        startSort();
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        List<SortKey> keys = new ArrayList<>(sortKeys);
+        SortOrder order = SortOrder.ASCENDING;
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).getColumn() == column) {
+                if (i == 0) {
+                    order = keys.get(0).getSortOrder() == SortOrder.ASCENDING ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+                }
+                keys.remove(i);
+                break;
+            }
+        }
+        keys.add(0, new SortKey(column, order));
+        if (keys.size() > MAX_SORT_KEYS) keys = keys.subList(0, MAX_SORT_KEYS);
+        setSortKeys(keys);
+    }
+
+    /** Shows only rows where some cell contains the text (case-insensitive); empty shows all. */
+    public void setFilterText(String text) {
+        String normalized = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(filterText)) return;
+        filterText = normalized;
+        revision++;
+        startSort();
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (viewToModel == null) return index;
+        if (index < 0 || index >= viewCount) throw new IndexOutOfBoundsException("Invalid view index " + index);
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (viewToModel == null) return index;
+        if (index < 0 || index >= modelCount) throw new IndexOutOfBoundsException("Invalid model index " + index);
+        return modelToView[index];
+    }
+
+    @Override
+    public int getViewRowCount() { return viewToModel == null ? modelCount : viewCount; }
+
+    @Override
+    public int getModelRowCount() { return modelCount; }
+
+    @Override
+    public void modelStructureChanged() {
+        if (!sortKeys.isEmpty()) {
+            sortKeys = Collections.emptyList();
+            fireSortOrderChanged();
+        }
+        allRowsChanged();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        // The old mapping says nothing about the new rows: show them unsorted until the worker is done
+        modelCount = model.getRowCount();
+        viewToModel = null;
+        modelToView = null;
+        scheduleSort();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        int inserted = endRow - firstRow + 1;
+        boolean append = firstRow == modelCount;
+        modelCount += inserted;
+        if (viewToModel == null) {
+            scheduleSort();
+            return;
+        }
+
+        if (!append) {
+            for (int i = 0; i < viewCount; i++) {
+                if (viewToModel[i] >= firstRow) viewToModel[i] += inserted;
+            }
+        }
+        // Tables are loaded one addRow at a time, so appending has to stay amortised O(1)
+        if (viewCount + inserted > viewToModel.length) {
+            viewToModel = Arrays.copyOf(viewToModel, Math.max(viewCount + inserted, viewToModel.length * 2));
+        }
+        if (append) modelToView = ensureCapacity(modelToView, modelCount);
+        for (int row = firstRow; row <= endRow; row++) {
+            if (append) modelToView[row] = viewCount;
+            viewToModel[viewCount++] = row;
+        }
+        if (!append) rebuildModelToView();
+        scheduleSort();
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        int deleted = endRow - firstRow + 1;
+        modelCount -= deleted;
+        if (viewToModel != null) {
+            int kept = 0;
+            for (int i = 0; i < viewCount; i++) {
+                int row = viewToModel[i];
+                if (row >= firstRow && row <= endRow) continue;
+                viewToModel[kept++] = row > endRow ? row - deleted : row;
+            }
+            viewCount = kept;
+            rebuildModelToView();
+        }
+        scheduleSort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        scheduleSort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        scheduleSort();
+    }
+
+    private void scheduleSort() {
+        revision++;
+        if (sortKeys.isEmpty() && filterText.isEmpty() && viewToModel == null) return;
+        coalesce.restart();
+    }
+
+    // EDT: copy the cell references the worker needs, then hand off
+    private void startSort() {
+        coalesce.stop();
+        int rows = model.getRowCount();
+        if (sortKeys.isEmpty() && filterText.isEmpty()) {
+            publish(null, rows);
+            return;
+        }
+
+        List<SortKey> keys = sortKeys;
+        Object[][] sortColumns = new Object[keys.size()][];
+        for (int k = 0; k < keys.size(); k++) sortColumns[k] = column(keys.get(k).getColumn(), rows);
+
+        String filter = filterText;
+        Object[][] filterColumns = new Object[filter.isEmpty() ? 0 : model.getColumnCount()][];
+        for (int c = 0; c < filterColumns.length; c++) filterColumns[c] = column(c, rows);
+
+        int started = revision;
+        WORKER.execute(() -> {
+            int[] order = sortAndFilter(rows, keys, sortColumns, filter, filterColumns);
+            SwingUtilities.invokeLater(() -> {
+                if (started == revision) publish(order, rows);
+            });
+        });
+    }
+
+    private Object[] column(int column, int rows) {
+        Object[] values = new Object[rows];
+        for (int row = 0; row < rows; row++) values[row] = model.getValueAt(row, column);
+        return values;
+    }
+
+    // EDT: swap in the finished mapping in one step
+    private void publish(int[] order, int rows) {
+        int[] previous = new int[getViewRowCount()];
+        for (int i = 0; i < previous.length; i++) previous[i] = convertRowIndexToModel(i);
+
+        modelCount = rows;
+        viewToModel = order;
+        viewCount = order == null ? 0 : order.length;
+        if (order != null) rebuildModelToView();
+        else modelToView = null;
+        fireRowSorterChanged(previous);
+    }
+
+    private void rebuildModelToView() {
+        modelToView = ensureCapacity(modelToView, modelCount);
+        Arrays.fill(modelToView, 0, modelCount, -1);
+        for (int i = 0; i < viewCount; i++) modelToView[viewToModel[i]] = i;
+    }
+
+    private static int[] ensureCapacity(int[] array, int size) {
+        if (array != null && array.length >= size) return array;
+        return array == null ? new int[Math.max(size, 16)] : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+
+    // Worker thread from here on
+
+    private static int[] sortAndFilter(int rows, List<SortKey> keys, Object[][] sortColumns,
+                                       String filter, Object[][] filterColumns) {
+        int[] order = new int[rows];
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            if (filter.isEmpty() || matches(row, filter, filterColumns)) order[count++] = row;
+        }
+        order = Arrays.copyOf(order, count);
+        if (keys.isEmpty()) return order;
+
+        IndexComparator[] comparators = new IndexComparator[keys.size()];
+        for (int k = 0; k < keys.size(); k++) {
+            IndexComparator comparator = comparatorFor(sortColumns[k]);
+            comparators[k] = keys.get(k).getSortOrder() == SortOrder.DESCENDING
+                    ? (a, b) -> comparator.compare(b, a) : comparator;
+        }
+        // Falls through to the model index, so equal rows keep the model order
+        mergeSort(order, new int[order.length], 0, order.length, (a, b) -> {
+            for (IndexComparator comparator : comparators) {
+                int result = comparator.compare(a, b);
+                if (result != 0) return result;
+            }
+            return Integer.compare(a, b);
+        });
+        return order;
+    }
+
+    private static boolean matches(int row, String filter, Object[][] columns) {
+        for (Object[] column : columns) {
+            Object value = column[row];
+            if (value != null && value.toString().toLowerCase(Locale.ROOT).contains(filter)) return true;
+        }
+        return false;
+    }
+
+    /** Precomputes one primitive or collation key per row; nulls sort first. */
+    private static IndexComparator comparatorFor(Object[] values) {
+        boolean numeric = true;
+        boolean dates = true;
+        for (Object value : values) {
+            if (value == null) continue;
+            numeric &= value instanceof Number;
+            dates &= value instanceof java.util.Date;
+        }
+
+        boolean[] missing = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) missing[i] = values[i] == null;
+
+        if (numeric) {
+            double[] keys = new double[values.length];
+            for (int i = 0; i < values.length; i++) if (!missing[i]) keys[i] = ((Number) values[i]).doubleValue();
+            return (a, b) -> missing[a] || missing[b] ? Boolean.compare(!missing[a], !missing[b]) : Double.compare(keys[a], keys[b]);
+        }
+        if (dates) {
+            long[] keys = new long[values.length];
+            for (int i = 0; i < values.length; i++) if (!missing[i]) keys[i] = ((java.util.Date) values[i]).getTime();
+            return (a, b) -> missing[a] || missing[b] ? Boolean.compare(!missing[a], !missing[b]) : Long.compare(keys[a], keys[b]);
+        }
+
+        Collator collator = Collator.getInstance();
+        CollationKey[] keys = new CollationKey[values.length];
+        for (int i = 0; i < values.length; i++) if (!missing[i]) keys[i] = collator.getCollationKey(values[i].toString());
+        return (a, b) -> missing[a] || missing[b] ? Boolean.compare(!missing[a], !missing[b]) : keys[a].compareTo(keys[b]);
+    }
+
+    private static void mergeSort(int[] a, int[] tmp, int from, int to, IndexComparator comparator) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid, comparator);
+        mergeSort(a, tmp, mid, to, comparator);
+        if (comparator.compare(a[mid - 1], a[mid]) <= 0) return;
+
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) a[k++] = comparator.compare(tmp[j], tmp[i]) < 0 ? tmp[j++] : tmp[i++];
+        while (i < mid) a[k++] = tmp[i++];
+        while (j < to) a[k++] = tmp[j++];
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.*;
+import java.nio.file.*;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip-compressed files holding the bookings of archived travel-date partitions.
+ *
+ * One file per archived partition, named bookings-YYYY-MM-&lt;timestamp&gt;.bin.gz after the partition's
+ * month. A file only holds travel dates before the end of its month (earlier dates can end up there
+ * when older partitions were archived first), which is what readRange relies on to skip files.
+ *
+ * There is no default location: archived bookings leave the shared database, so every client must
+ * be able to read them. Archiving and lookups only happen when tourism.archive.dir is set, and it
+ * must point at storage all clients share.
+ *
+ * Archiving the same rows again, after a pass was interrupted before the partition was dropped,
+ * reuses the existing file. Lookups by id go through an in-memory index of the sorted id hashes of
+ * each file, so only a file that may hold the id is read. A second index holds the tours and
+ * customers each file references, which the delete checks consult once the rows have left the
+ * database.
+ */
+class BookingArchive {
+    private static final int MAGIC = 0x544D4241; // "TMBA"
+    private static final int FORMAT_VERSION = 1;
+    private static final String PREFIX = "bookings-";
+    private static final String SUFFIX = ".bin.gz";
+
+    private static final String DIR_PROPERTY = System.getProperty("tourism.archive.dir");
+    static final Path DIR = DIR_PROPERTY == null || DIR_PROPERTY.isEmpty() ? null : Paths.get(DIR_PROPERTY);
+
+    // File -> sorted hash codes of the ids it holds; archive files never change once written
+    private static final Map<Path, int[]> ID_INDEX = new ConcurrentHashMap<>();
+
+    // File -> tour and customer ids its bookings reference
+    private static final Map<Path, References> REFERENCES = new ConcurrentHashMap<>();
+
+    private static final class References {
+        final Set<String> tours = new HashSet<>();
+        final Set<String> customers = new HashSet<>();
+
+        References(List<Booking> bookings) {
+            for (Booking b : bookings) {
+                tours.add(b.getTourId());
+                customers.add(b.getCustomerId());
+            }
+        }
+    }
+
+    private BookingArchive() {
+    }
+
+    /** True when tourism.archive.dir names the shared archive directory. */
+    static boolean isConfigured() {
+        return DIR != null;
+    }
+
+    /** Writes the bookings of one partition month and returns the file. */
+    static Path write(YearMonth month, List<Booking> bookings) throws IOException {
+        if (!isConfigured()) throw new IOException("tourism.archive.dir is not set");
+        Path existing = existingArchive(month, bookings);
+        if (existing != null) return existing;
+
+        Files.createDirectories(DIR);
+        Path file = DIR.resolve(PREFIX + month + "-" + System.currentTimeMillis() + SUFFIX);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(bookings.size());
+            for (Booking b : bookings) {
+                out.writeUTF(b.getId());
+                out.writeUTF(b.getTourId());
+                out.writeUTF(b.getCustomerId());
+                out.writeInt((int) b.getBookingDate().toLocalDate().toEpochDay());
+                out.writeInt((int) b.getTravelDate().toLocalDate().toEpochDay());
+                out.writeInt(b.getNumPeople());
+                out.writeDouble(b.getTotalPrice());
+                out.writeUTF(b.getStatus());
+            }
+        }
+
+        // Only a complete, readable file may take the place of the rows that are about to be dropped
+        if (read(tmp).size() != bookings.size()) {
+            throw new IOException("archive verification failed for " + tmp);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        ID_INDEX.put(file, idHashes(bookings));
+        REFERENCES.put(file, new References(bookings));
+        return file;
+    }
+
+    /** The given tours that archived bookings reference. */
+    static List<String> referencedTours(List<String> ids) throws IOException {
+        return referenced(ids, true);
+    }
+
+    /** The given customers that archived bookings reference. */
+    static List<String> referencedCustomers(List<String> ids) throws IOException {
+        return referenced(ids, false);
+    }
+
+    private static List<String> referenced(List<String> ids, boolean tours) throws IOException {
+        List<Path> files = files();
+        REFERENCES.keySet().retainAll(files);
+
+        Set<String> found = new LinkedHashSet<>();
+        for (Path file : files) {
+            References references = REFERENCES.get(file);
+            if (references == null) {
+                // Written by another client, or before this process started
+                references = new References(read(file));
+                REFERENCES.put(file, references);
+            }
+            Set<String> referenced = tours ? references.tours : references.customers;
+            for (String id : ids) {
+                if (referenced.contains(id)) found.add(id);
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /** Archived bookings travelling in [from, to). */
+    static List<Booking> readRange(LocalDate from, LocalDate to) throws IOException {
+        List<Booking> result = new ArrayList<>();
+        // Directories written before archiving was idempotent can hold the same month twice
+        Set<String> seen = new HashSet<>();
+        YearMonth firstMonth = YearMonth.from(from);
+        for (Path file : files()) {
+            if (monthOf(file).isBefore(firstMonth)) continue;
+            for (Booking b : read(file)) {
+                LocalDate travel = b.getTravelDate().toLocalDate();
+                if (!travel.isBefore(from) && travel.isBefore(to) && seen.add(b.getId())) result.add(b);
+            }
+        }
+        return result;
+    }
+
+    /** Looks an archived booking up by id, reading only files whose index may hold it; callers try the database first. */
+    static Booking findById(String id) throws IOException {
+        List<Path> files = files();
+        ID_INDEX.keySet().retainAll(files);
+
+        int hash = id.hashCode();
+        for (Path file : files) {
+            int[] index = ID_INDEX.get(file);
+            List<Booking> bookings = null;
+            if (index == null) {
+                // Written by another client, or before this process started
+                bookings = read(file);
+                index = idHashes(bookings);
+                ID_INDEX.put(file, index);
+            }
+            if (Arrays.binarySearch(index, hash) < 0) continue;
+
+            if (bookings == null) bookings = read(file);
+            for (Booking b : bookings) {
+                if (b.getId().equals(id)) return b;
+            }
+        }
+        return null;
+    }
+
+    // A file of the same month holding exactly these ids, left by an earlier attempt
+    private static Path existingArchive(YearMonth month, List<Booking> bookings) throws IOException {
+        Set<String> ids = new HashSet<>();
+        for (Booking b : bookings) ids.add(b.getId());
+
+        for (Path file : files()) {
+            if (!monthOf(file).equals(month)) continue;
+            List<Booking> archived = read(file);
+            if (archived.size() != ids.size()) continue;
+            boolean same = true;
+            for (Booking b : archived) {
+                if (!ids.contains(b.getId())) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) return file;
+        }
+        return null;
+    }
+
+    private static int[] idHashes(List<Booking> bookings) {
+        int[] hashes = new int[bookings.size()];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = bookings.get(i).getId().hashCode();
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    /** The archive files; empty when tourism.archive.dir is not set. */
+    static List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!isConfigured() || !Files.isDirectory(DIR)) return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DIR, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) files.add(file);
+        }
+        return files;
+    }
+
+    private static YearMonth monthOf(Path file) {
+        String name = file.getFileName().toString();
+        return YearMonth.parse(name.substring(PREFIX.length(), PREFIX.length() + 7));
+    }
+
+    private static List<Booking> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a booking archive or has an unsupported format version");
+            }
+            int count = in.readInt();
+            List<Booking> bookings = new ArrayList<>(count);
+            Interner ids = Interner.forLoad();
+            for (int i = 0; i < count; i++) {
+                Booking booking = new Booking(in.readUTF(),
+                        ids.intern(in.readUTF()), ids.intern(in.readUTF()),
+                        Date.valueOf(LocalDate.ofEpochDay(in.readInt())),
+                        Date.valueOf(LocalDate.ofEpochDay(in.readInt())),
+                        in.readInt(), in.readDouble(), in.readUTF());
+                booking.markArchived();
+                bookings.add(booking);
+            }
+            return bookings;
+        }
+    }
+}
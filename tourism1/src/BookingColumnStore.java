@@ -0,0 +1,265 @@
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Column-oriented in-memory copy of the bookings table for analytics.
+ *
+ * Each booking occupies one slot across parallel primitive arrays: dates as epoch days, tour,
+ * customer and status as dictionary codes, and the total price as cents. A filter/group-by pass is
+ * a linear scan over a few int/long arrays instead of a walk over Booking objects. Deleted slots are
+ * refilled from the last slot so the arrays stay dense.
+ */
+class BookingColumnStore {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Maps strings to dense int codes and back. */
+    static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        /** Code of a value already encoded, or -1; unlike encode it never adds. */
+        int codeOf(String value) {
+            Integer code = codes.get(value);
+            return code != null ? code : -1;
+        }
+
+        String decode(int code) { return values.get(code); }
+        int size() { return values.size(); }
+    }
+
+    /** Per-tour totals produced by {@link #summarizeByTour}. */
+    static final class TourSummary {
+        final String tourId;
+        final int bookings;
+        final long people;
+        final long revenueCents;
+
+        TourSummary(String tourId, int bookings, long people, long revenueCents) {
+            this.tourId = tourId;
+            this.bookings = bookings;
+            this.people = people;
+            this.revenueCents = revenueCents;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Dictionary tours = new Dictionary();
+    private final Dictionary customers = new Dictionary();
+    private final Map<String, Integer> slotById = new HashMap<>();
+
+    private int size;
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private int[] bookingDay = new int[INITIAL_CAPACITY];
+    private int[] travelDay = new int[INITIAL_CAPACITY];
+    private int[] tourCode = new int[INITIAL_CAPACITY];
+    private int[] customerCode = new int[INITIAL_CAPACITY];
+    private int[] statusCode = new int[INITIAL_CAPACITY];
+    private int[] numPeople = new int[INITIAL_CAPACITY];
+    private long[] priceCents = new long[INITIAL_CAPACITY];
+
+    /** Streams the whole bookings table row by row without materialising Booking objects. */
+    public static BookingColumnStore load(Connection conn) throws SQLException {
+        BookingColumnStore store = new BookingColumnStore();
+        String query = "SELECT id, tour_id, customer_id, booking_date, travel_date, num_people, total_price, status " +
+                "FROM bookings";
+
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE makes Connector/J stream rows instead of buffering the full result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            ResultSet rs = stmt.executeQuery(query);
+            while (rs.next()) {
+                store.put(rs.getString(1), rs.getString(2), rs.getString(3),
+                        (int) rs.getObject(4, LocalDate.class).toEpochDay(),
+                        (int) rs.getObject(5, LocalDate.class).toEpochDay(),
+                        rs.getInt(6), toCents(rs.getBigDecimal(7)),
+                        BookingStatus.fromStoredLabel(rs.getString(8)).ordinal());
+            }
+        }
+        return store;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void upsert(Booking b) {
+        lock.writeLock().lock();
+        try {
+            put(b.getId(), b.getTourId(), b.getCustomerId(),
+                    (int) b.getBookingDate().toLocalDate().toEpochDay(),
+                    (int) b.getTravelDate().toLocalDate().toEpochDay(),
+                    b.getNumPeople(), Math.round(b.getTotalPrice() * 100),
+                    b.getBookingStatus().ordinal());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.remove(id);
+            if (slot == null) return;
+
+            int last = --size;
+            if (slot != last) {
+                ids[slot] = ids[last];
+                bookingDay[slot] = bookingDay[last];
+                travelDay[slot] = travelDay[last];
+                tourCode[slot] = tourCode[last];
+                customerCode[slot] = customerCode[last];
+                statusCode[slot] = statusCode[last];
+                numPeople[slot] = numPeople[last];
+                priceCents[slot] = priceCents[last];
+                slotById.put(ids[slot], slot);
+            }
+            ids[last] = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Booking count, people and revenue per tour for travel dates in [from, to], optionally limited to some statuses. */
+    public List<TourSummary> summarizeByTour(LocalDate from, LocalDate to, BookingStatus... statuses) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        boolean[] wanted = statusFilter(statuses);
+
+        lock.readLock().lock();
+        try {
+            int groups = tours.size();
+            int[] count = new int[groups];
+            long[] people = new long[groups];
+            long[] revenue = new long[groups];
+
+            for (int i = 0; i < size; i++) {
+                int day = travelDay[i];
+                if (day < fromDay || day > toDay || !wanted[statusCode[i]]) continue;
+                int group = tourCode[i];
+                count[group]++;
+                people[group] += numPeople[i];
+                revenue[group] += priceCents[i];
+            }
+
+            List<TourSummary> result = new ArrayList<>();
+            for (int group = 0; group < groups; group++) {
+                if (count[group] > 0) {
+                    result.add(new TourSummary(tours.decode(group), count[group], people[group], revenue[group]));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Booking count per status (indexed by BookingStatus ordinal) for travel dates in [from, to]. */
+    public int[] countByStatus(LocalDate from, LocalDate to) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        int[] counts = new int[BookingStatus.values().length];
+
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                int day = travelDay[i];
+                if (day >= fromDay && day <= toDay) counts[statusCode[i]]++;
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Number of distinct customers with at least one booking travelling in [from, to]. */
+    public int distinctCustomers(LocalDate from, LocalDate to) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+
+        lock.readLock().lock();
+        try {
+            boolean[] seen = new boolean[customers.size()];
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                int day = travelDay[i];
+                if (day < fromDay || day > toDay || seen[customerCode[i]]) continue;
+                seen[customerCode[i]] = true;
+                distinct++;
+            }
+            return distinct;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(String id, String tourId, String customerId, int booked, int travel,
+                     int people, long cents, int status) {
+        Integer existing = slotById.get(id);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+        } else {
+            if (size == ids.length) grow();
+            slot = size++;
+            slotById.put(id, slot);
+            ids[slot] = id;
+        }
+
+        bookingDay[slot] = booked;
+        travelDay[slot] = travel;
+        tourCode[slot] = tours.encode(tourId);
+        customerCode[slot] = customers.encode(customerId);
+        statusCode[slot] = status;
+        numPeople[slot] = people;
+        priceCents[slot] = cents;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        bookingDay = Arrays.copyOf(bookingDay, capacity);
+        travelDay = Arrays.copyOf(travelDay, capacity);
+        tourCode = Arrays.copyOf(tourCode, capacity);
+        customerCode = Arrays.copyOf(customerCode, capacity);
+        statusCode = Arrays.copyOf(statusCode, capacity);
+        numPeople = Arrays.copyOf(numPeople, capacity);
+        priceCents = Arrays.copyOf(priceCents, capacity);
+    }
+
+    private static boolean[] statusFilter(BookingStatus... statuses) {
+        boolean[] wanted = new boolean[BookingStatus.values().length];
+        if (statuses.length == 0) {
+            Arrays.fill(wanted, true);
+        } else {
+            for (BookingStatus status : statuses) wanted[status.ordinal()] = true;
+        }
+        return wanted;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).longValue();
+    }
+}
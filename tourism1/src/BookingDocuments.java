@@ -0,0 +1,392 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Month-end itinerary and invoice documents, one per Confirmed booking made in the month.
+ *
+ * A reader thread streams the bookings joined with their tour, destination and customer in id order
+ * and hands each row to a pool of WORKERS renderers. The calling thread takes the rendered documents
+ * back in the same order through a bounded queue, which also keeps the reader from running ahead,
+ * and writes them either as one file per booking into a directory or as entries of zip files of
+ * PART_DOCUMENTS documents each (name-0001.zip, name-0002.zip, ...).
+ *
+ * A checkpoint file next to the output records the last booking whose document is safely written:
+ * every CHECKPOINT_EVERY documents for a directory, and when a part is closed for zips, since a
+ * zip left open by a crash is unreadable. Running again for the same month resumes after it and
+ * removes the checkpoint once the month is complete.
+ *
+ * The template is HTML with ${name} placeholders, or tourism.documents.template; values are
+ * HTML-escaped unless the template file ends in .txt.
+ *
+ * Run with the application classpath: java BookingDocuments yyyy-MM (directory | file.zip)
+ */
+class BookingDocuments {
+    private static final int WORKERS = Integer.getInteger("tourism.documents.workers",
+            Runtime.getRuntime().availableProcessors());
+    private static final int PART_DOCUMENTS = Integer.getInteger("tourism.documents.partSize", 10_000);
+    private static final int CHECKPOINT_EVERY = 1000;
+    private static final String TEMPLATE_FILE = System.getProperty("tourism.documents.template");
+
+    private static final String DEFAULT_TEMPLATE = "<!DOCTYPE html>\n" +
+            "<html><head><meta charset=\"utf-8\"><title>Booking ${bookingId}</title></head>\n" +
+            "<body>\n" +
+            "<h1>Itinerary and Invoice</h1>\n" +
+            "<p>Booking ${bookingId}, booked on ${bookingDate}. Issued ${issuedOn}.</p>\n" +
+            "<h2>Traveller</h2>\n" +
+            "<p>${customerName} (${customerId})<br>${address}<br>${email} &middot; ${phone}</p>\n" +
+            "<h2>Itinerary</h2>\n" +
+            "<p>${tourName}, ${destination}, ${country}<br>\n" +
+            "${travelDate} to ${returnDate} (${durationDays} days), ${people} traveller(s)</p>\n" +
+            "<h2>Invoice</h2>\n" +
+            "<table>\n" +
+            "<tr><td>${tourName}</td><td>${people} &times; ${unitPrice}</td><td>${totalPrice}</td></tr>\n" +
+            "<tr><th colspan=\"2\">Total</th><th>${totalPrice}</th></tr>\n" +
+            "</table>\n" +
+            "</body></html>\n";
+
+    interface Progress {
+        void report(long documents, long elapsedNanos);
+    }
+
+    private static final class Row {
+        String bookingId;
+        LocalDate bookingDate;
+        LocalDate travelDate;
+        int people;
+        BigDecimal totalPrice;
+        String tourName;
+        int durationDays;
+        BigDecimal unitPrice;
+        String destination;
+        String country;
+        String customerId;
+        String customerName;
+        String email;
+        String phone;
+        String address;
+    }
+
+    private static final class Document {
+        final String bookingId;
+        final String fileName;
+        final byte[] content;
+
+        Document(String bookingId, String fileName, byte[] content) {
+            this.bookingId = bookingId;
+            this.fileName = fileName;
+            this.content = content;
+        }
+    }
+
+    private static final Document END = new Document(null, null, null);
+
+    /** A template split once into literal text and placeholder names, so rendering is plain appends. */
+    private static final class Template {
+        private final List<String> literals = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private final boolean html;
+        final String extension;
+
+        Template(String text, boolean html) {
+            this.html = html;
+            this.extension = html ? ".html" : ".txt";
+            int from = 0;
+            while (true) {
+                int start = text.indexOf("${", from);
+                int end = start < 0 ? -1 : text.indexOf('}', start);
+                if (end < 0) {
+                    literals.add(text.substring(from));
+                    return;
+                }
+                literals.add(text.substring(from, start));
+                keys.add(text.substring(start + 2, end));
+                from = end + 1;
+            }
+        }
+
+        static Template load() throws IOException {
+            if (TEMPLATE_FILE == null) return new Template(DEFAULT_TEMPLATE, true);
+            Path file = Paths.get(TEMPLATE_FILE);
+            return new Template(new String(Files.readAllBytes(file), StandardCharsets.UTF_8),
+                    !file.getFileName().toString().endsWith(".txt"));
+        }
+
+        String render(Map<String, String> values) {
+            StringBuilder out = new StringBuilder(2048);
+            for (int i = 0; i < keys.size(); i++) {
+                out.append(literals.get(i));
+                String value = values.getOrDefault(keys.get(i), "");
+                if (html) escape(out, value); else out.append(value);
+            }
+            return out.append(literals.get(keys.size())).toString();
+        }
+
+        private static void escape(StringBuilder out, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                switch (ch) {
+                    case '<': out.append("&lt;"); break;
+                    case '>': out.append("&gt;"); break;
+                    case '&': out.append("&amp;"); break;
+                    case '"': out.append("&quot;"); break;
+                    default: out.append(ch);
+                }
+            }
+        }
+    }
+
+    private BookingDocuments() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: java BookingDocuments yyyy-MM (directory | file.zip)");
+            System.exit(2);
+        }
+        long documents = generate(YearMonth.parse(args[0]), Paths.get(args[1]), (count, elapsed) ->
+                System.out.printf("%,d documents, %,.0f per second%n", count, count / Math.max(elapsed / 1e9, 1e-3)));
+        System.out.printf("Done: %,d documents written to %s%n", documents, args[1]);
+    }
+
+    /**
+     * Writes the documents of the month's Confirmed bookings to output, resuming after the
+     * checkpoint of an earlier, interrupted run; progress is reported about once a second.
+     * Returns the number of documents written by this run.
+     */
+    static long generate(YearMonth month, Path output, Progress progress)
+            throws SQLException, IOException, InterruptedException {
+        Template template = Template.load();
+        Path checkpointFile = output.resolveSibling(output.getFileName() + ".checkpoint");
+        Properties checkpoint = readCheckpoint(checkpointFile, month);
+        String afterId = checkpoint.getProperty("lastId", "");
+        int part = Integer.parseInt(checkpoint.getProperty("nextPart", "1"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(WORKERS, r -> {
+            Thread t = new Thread(r, "document-renderer");
+            t.setDaemon(true);
+            return t;
+        });
+        // Holds the documents in booking order; its capacity is how far rendering may run ahead of writing
+        BlockingQueue<Future<Document>> queue = new ArrayBlockingQueue<>(WORKERS * 64);
+        Thread reader = new Thread(() -> read(month, afterId, template, pool, queue), "document-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        long written = 0;
+        try (Sink sink = output.getFileName().toString().endsWith(".zip") ? new ZipSink(output, part) : new DirectorySink(output)) {
+            while (true) {
+                Document document;
+                try {
+                    document = queue.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SQLException) throw (SQLException) cause;
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    throw new IOException("rendering failed", cause);
+                }
+                if (document == END) break;
+
+                if (sink.write(document)) {
+                    saveCheckpoint(checkpointFile, month, document.bookingId, sink.nextPart());
+                }
+                written++;
+                long now = System.nanoTime();
+                if (now - lastReport >= 1_000_000_000L) {
+                    progress.report(written, now - start);
+                    lastReport = now;
+                }
+            }
+        } finally {
+            reader.interrupt();
+            pool.shutdownNow();
+        }
+        progress.report(written, System.nanoTime() - start);
+        Files.deleteIfExists(checkpointFile);
+        return written;
+    }
+
+    private static void read(YearMonth month, String afterId, Template template, ExecutorService pool,
+                             BlockingQueue<Future<Document>> queue) {
+        String query = "SELECT b.id, b.booking_date, b.travel_date, b.num_people, b.total_price, " +
+                "t.name, t.duration_days, t.price, d.name, d.country, c.id, c.name, c.email, c.phone, c.address " +
+                "FROM bookings b " +
+                "JOIN tours t ON t.id = b.tour_id " +
+                "JOIN destinations d ON d.id = t.destination_id " +
+                "JOIN customers c ON c.id = b.customer_id " +
+                "WHERE b.status = ? AND b.booking_date >= ? AND b.booking_date < ? AND b.id > ? " +
+                "ORDER BY b.id";
+        try (Connection conn = Database.connectForMaintenance();
+             PreparedStatement pstmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE makes Connector/J stream rows instead of buffering the full result
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+            pstmt.setString(1, BookingStatus.CONFIRMED.getLabel());
+            pstmt.setDate(2, Date.valueOf(month.atDay(1)));
+            pstmt.setDate(3, Date.valueOf(month.plusMonths(1).atDay(1)));
+            pstmt.setString(4, afterId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Row row = new Row();
+                row.bookingId = rs.getString(1);
+                row.bookingDate = rs.getDate(2).toLocalDate();
+                row.travelDate = rs.getDate(3).toLocalDate();
+                row.people = rs.getInt(4);
+                row.totalPrice = rs.getBigDecimal(5);
+                row.tourName = rs.getString(6);
+                row.durationDays = rs.getInt(7);
+                row.unitPrice = rs.getBigDecimal(8);
+                row.destination = rs.getString(9);
+                row.country = rs.getString(10);
+                row.customerId = rs.getString(11);
+                row.customerName = rs.getString(12);
+                row.email = rs.getString(13);
+                row.phone = rs.getString(14);
+                row.address = rs.getString(15);
+                queue.put(pool.submit(() -> render(template, row)));
+            }
+            queue.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            // The writer gave up; nobody is waiting for the rest
+        } catch (SQLException | RuntimeException e) {
+            CompletableFuture<Document> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            try {
+                queue.put(failed);
+            } catch (InterruptedException interrupted) {
+                // The writer is already gone
+            }
+        }
+    }
+
+    private static Document render(Template template, Row row) {
+        Map<String, String> values = new HashMap<>();
+        values.put("bookingId", row.bookingId);
+        values.put("bookingDate", row.bookingDate.toString());
+        values.put("travelDate", row.travelDate.toString());
+        values.put("returnDate", row.travelDate.plusDays(Math.max(0, row.durationDays - 1)).toString());
+        values.put("people", Integer.toString(row.people));
+        values.put("unitPrice", String.format("%,.2f", row.unitPrice));
+        values.put("totalPrice", String.format("%,.2f", row.totalPrice));
+        values.put("tourName", row.tourName);
+        values.put("durationDays", Integer.toString(row.durationDays));
+        values.put("destination", row.destination);
+        values.put("country", row.country);
+        values.put("customerId", row.customerId);
+        values.put("customerName", row.customerName);
+        values.put("email", row.email);
+        values.put("phone", row.phone);
+        values.put("address", row.address == null ? "" : row.address);
+        values.put("issuedOn", LocalDate.now().toString());
+        return new Document(row.bookingId, row.bookingId + template.extension,
+                template.render(values).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Properties readCheckpoint(Path file, YearMonth month) throws IOException {
+        Properties checkpoint = new Properties();
+        if (!Files.isRegularFile(file)) return checkpoint;
+        try (InputStream in = Files.newInputStream(file)) {
+            checkpoint.load(in);
+        }
+        // A checkpoint of another month says nothing about this one
+        if (!month.toString().equals(checkpoint.getProperty("month"))) checkpoint.clear();
+        return checkpoint;
+    }
+
+    private static void saveCheckpoint(Path file, YearMonth month, String lastId, int nextPart) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("month", month.toString());
+        checkpoint.setProperty("lastId", lastId);
+        checkpoint.setProperty("nextPart", Integer.toString(nextPart));
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            checkpoint.store(out, "BookingDocuments progress");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private interface Sink extends Closeable {
+        /** Writes one document; returns true when everything written so far is complete on disk. */
+        boolean write(Document document) throws IOException;
+
+        /** Zip part a resumed run starts with, as of the last write that returned true. */
+        int nextPart();
+    }
+
+    // A document past the checkpoint may be half written after a crash; the resumed run overwrites it
+    private static final class DirectorySink implements Sink {
+        private final Path dir;
+        private long count;
+
+        DirectorySink(Path dir) throws IOException {
+            this.dir = Files.createDirectories(dir);
+        }
+
+        @Override
+        public boolean write(Document document) throws IOException {
+            Files.write(dir.resolve(document.fileName), document.content);
+            return ++count % CHECKPOINT_EVERY == 0;
+        }
+
+        @Override
+        public int nextPart() { return 1; }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class ZipSink implements Sink {
+        private final Path base;
+        private int part;
+        private int entries;
+        private ZipOutputStream zip;
+
+        ZipSink(Path base, int firstPart) {
+            this.base = base;
+            this.part = firstPart;
+        }
+
+        @Override
+        public boolean write(Document document) throws IOException {
+            if (zip == null) {
+                String name = base.getFileName().toString();
+                Path file = base.resolveSibling(String.format("%s-%04d.zip", name.substring(0, name.length() - 4), part));
+                Path parent = file.toAbsolutePath().getParent();
+                if (parent != null) Files.createDirectories(parent);
+                zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            }
+            zip.putNextEntry(new ZipEntry(document.fileName));
+            zip.write(document.content);
+            zip.closeEntry();
+            if (++entries < PART_DOCUMENTS) return false;
+            close();
+            return true;
+        }
+
+        @Override
+        public int nextPart() { return part; }
+
+        @Override
+        public void close() throws IOException {
+            if (zip == null) return;
+            zip.close();
+            zip = null;
+            entries = 0;
+            part++;
+        }
+    }
+}
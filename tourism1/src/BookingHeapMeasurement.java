@@ -0,0 +1,81 @@
+import java.lang.ref.Reference;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the retained heap of a fully loaded bookings table, before and after dictionary
+ * encoding. The "before" figure loads every row into a copy of the previous Booking layout,
+ * with a fresh String for the status, tour id and customer id of each row.
+ *
+ * Run with the application classpath: java BookingHeapMeasurement
+ */
+class BookingHeapMeasurement {
+    // Field layout of Booking before statuses became an enum and ids were pooled per load
+    private static final class UnpooledBooking {
+        final String id;
+        final String tourId;
+        final String customerId;
+        final Date bookingDate;
+        final Date travelDate;
+        final int numPeople;
+        final double totalPrice;
+        final String status;
+
+        UnpooledBooking(ResultSet rs) throws SQLException {
+            id = rs.getString("id");
+            tourId = rs.getString("tour_id");
+            customerId = rs.getString("customer_id");
+            bookingDate = rs.getDate("booking_date");
+            travelDate = rs.getDate("travel_date");
+            numPeople = rs.getInt("num_people");
+            totalPrice = rs.getDouble("total_price");
+            status = rs.getString("status");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (Connection conn = Database.connectForMaintenance()) {
+            long before = retainedBytes(() -> {
+                List<UnpooledBooking> rows = new ArrayList<>();
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT * FROM bookings")) {
+                    while (rs.next()) rows.add(new UnpooledBooking(rs));
+                }
+                return rows;
+            });
+            long after = retainedBytes(() -> Booking.getAllBookings(conn));
+            int count = Booking.getAllBookings(conn).size();
+
+            System.out.printf("Bookings loaded:            %,d%n", count);
+            System.out.printf("Retained heap, unpooled:    %,d bytes (%,d per booking)%n", before, before / Math.max(1, count));
+            System.out.printf("Retained heap, dictionary:  %,d bytes (%,d per booking)%n", after, after / Math.max(1, count));
+            System.out.printf("Reduction:                  %.1f%%%n", before == 0 ? 0.0 : 100.0 * (before - after) / before);
+        }
+    }
+
+    private interface Loader {
+        List<?> load() throws SQLException;
+    }
+
+    private static long retainedBytes(Loader loader) throws SQLException {
+        long baseline = usedHeapAfterGc();
+        List<?> rows = loader.load();
+        long loaded = usedHeapAfterGc();
+        Reference.reachabilityFence(rows);
+        return loaded - baseline;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,83 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically applies the time-based booking transitions:
+ * Confirmed bookings whose travel date has passed become Completed, and Pending bookings
+ * that were never confirmed expire to Cancelled.
+ *
+ * Each pass updates at most CHUNK_SIZE rows per statement in autocommit mode, walking the
+ * (status, travel_date) / (status, booking_date) indexes, so row locks are held only briefly.
+ * Open booking tables pick up the changes through DeltaSync.
+ */
+class BookingLifecycleJob {
+    private static final int CHUNK_SIZE = 500;
+    private static final long PAUSE_BETWEEN_CHUNKS_MS = 50;
+    private static final int INTERVAL_MINUTES = Integer.getInteger("tourism.lifecycle.intervalMinutes", 15);
+    private static final int PENDING_EXPIRY_DAYS = Integer.getInteger("tourism.lifecycle.pendingExpiryDays", 7);
+
+    private ScheduledExecutorService scheduler;
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "booking-lifecycle");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, 1, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    private void runSafely() {
+        try (Connection conn = Database.connect()) {
+            runOnce(conn, LocalDate.now());
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Applies all time-based transitions as of the given day and returns the number of bookings changed. */
+    public int runOnce(Connection conn, LocalDate today) throws SQLException, InterruptedException {
+        Date todayDate = Date.valueOf(today);
+        int changed = 0;
+
+        changed += transition(conn, BookingStatus.CONFIRMED, BookingStatus.COMPLETED, "travel_date", todayDate, null);
+        changed += transition(conn, BookingStatus.PENDING, BookingStatus.CANCELLED, "travel_date", todayDate, null);
+        // Pending bookings travelling before today are gone after the previous step, so bounding
+        // travel_date from below changes nothing but lets MySQL skip the past partitions
+        changed += transition(conn, BookingStatus.PENDING, BookingStatus.CANCELLED, "booking_date",
+                Date.valueOf(today.minusDays(PENDING_EXPIRY_DAYS)), todayDate);
+        return changed;
+    }
+
+    private int transition(Connection conn, BookingStatus from, BookingStatus to, String dateColumn,
+                           Date before, Date travelFrom) throws SQLException, InterruptedException {
+        String query = "UPDATE bookings SET status = ? WHERE status = ? AND " + dateColumn + " < ? " +
+                (travelFrom != null ? "AND travel_date >= ? " : "") +
+                "ORDER BY " + dateColumn + " LIMIT " + CHUNK_SIZE;
+        int total = 0;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, to.getLabel());
+            pstmt.setString(2, from.getLabel());
+            pstmt.setDate(3, before);
+            if (travelFrom != null) pstmt.setDate(4, travelFrom);
+
+            int updated;
+            do {
+                updated = pstmt.executeUpdate();
+                total += updated;
+                if (updated == CHUNK_SIZE) Thread.sleep(PAUSE_BETWEEN_CHUNKS_MS);
+            } while (updated == CHUNK_SIZE);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the bookings table range-partitioned by travel_date, one partition per month (pYYYYMM)
+ * plus a catch-all pmax, and moves old months out into BookingArchive files.
+ *
+ * Queries that bound travel_date with plain comparisons (travel_date >= ? AND travel_date < ?) only
+ * touch the matching partitions. A periodic pass in every client keeps MONTHS_AHEAD future partitions
+ * split off pmax. Archiving months older than RETENTION_MONTHS, once none of their bookings is
+ * Pending or Confirmed, is a separate maintenance run that needs tourism.archive.dir on shared storage:
+ *   java -Dtourism.archive.dir=/shared/tourism-archive BookingPartitions archive
+ * Only one client runs a pass at a time (GET_LOCK).
+ *
+ * Dropping a partition fires no delete triggers, so archiving leaves sync tombstones for the
+ * archived ids itself; other clients then drop those bookings on their next delta poll.
+ */
+class BookingPartitions {
+    private static final int MONTHS_AHEAD = Integer.getInteger("tourism.partitions.monthsAhead", 12);
+    private static final int RETENTION_MONTHS = Integer.getInteger("tourism.archive.retentionMonths", 24);
+    private static final int INTERVAL_HOURS = Integer.getInteger("tourism.partitions.intervalHours", 24);
+    private static final String LOCK_NAME = "tourism_booking_partitions";
+    private static final String DETACHED = "bookings_detached";
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private ScheduledExecutorService scheduler;
+
+    /** Converts an unpartitioned bookings table, created by an older version or just now, into the partitioned layout. */
+    static void createSchema(Connection conn) throws SQLException {
+        if (isPartitioned(conn)) return;
+
+        try (Statement stmt = conn.createStatement()) {
+            // Partitioned InnoDB tables cannot have foreign keys. Booking.lockParents and the locked
+            // reference checks in Tour.deleteAll and Customer.deleteAll take their place
+            for (String constraint : foreignKeys(conn)) {
+                stmt.execute("ALTER TABLE bookings DROP FOREIGN KEY " + constraint);
+            }
+            if (!hasIndexOn(conn, "tour_id")) {
+                stmt.execute("CREATE INDEX idx_bookings_tour ON bookings (tour_id)");
+            }
+            if (!hasIndexOn(conn, "customer_id")) {
+                stmt.execute("CREATE INDEX idx_bookings_customer ON bookings (customer_id)");
+            }
+
+            YearMonth first = YearMonth.now();
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(travel_date) FROM bookings")) {
+                if (rs.next() && rs.getDate(1) != null) {
+                    first = YearMonth.from(rs.getDate(1).toLocalDate());
+                }
+            }
+
+            // Every unique key of a partitioned table must contain the partitioning column
+            stmt.execute("ALTER TABLE bookings DROP PRIMARY KEY, ADD PRIMARY KEY (id, travel_date) " +
+                    "PARTITION BY RANGE COLUMNS(travel_date) (" +
+                    partitionDefinitions(first, YearMonth.now().plusMonths(MONTHS_AHEAD)) + ")");
+        }
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "booking-partitions");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, 1, INTERVAL_HOURS * 60L, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1 || !"archive".equals(args[0])) {
+            System.err.println("Usage: java -Dtourism.archive.dir=<shared directory> BookingPartitions archive");
+            System.exit(2);
+        }
+        try (Connection conn = Database.connectForMaintenance()) {
+            int archived = archive(conn, LocalDate.now());
+            System.out.println(archived < 0 ? "Another client is running a partition pass; try again later"
+                    : "Archived " + archived + " month(s) to " + BookingArchive.DIR);
+        }
+    }
+
+    // Never archives: that would move bookings out of the shared database from a desktop client
+    private void runSafely() {
+        try (Connection conn = Database.connectForMaintenance()) {
+            if (!tryLock(conn)) return;
+            try {
+                ensureFuturePartitions(conn, YearMonth.from(LocalDate.now()).plusMonths(MONTHS_AHEAD));
+            } finally {
+                releaseLock(conn);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds missing future partitions and archives expired months into BookingArchive; returns the
+     * number of months archived, or -1 when another client holds the lock.
+     */
+    static int archive(Connection conn, LocalDate today) throws SQLException, IOException {
+        if (!BookingArchive.isConfigured()) {
+            throw new IOException("Set tourism.archive.dir to a directory every client can read before archiving");
+        }
+        if (!tryLock(conn)) return -1;
+        try {
+            ensureFuturePartitions(conn, YearMonth.from(today).plusMonths(MONTHS_AHEAD));
+            return archiveBefore(conn, YearMonth.from(today).minusMonths(RETENTION_MONTHS));
+        } finally {
+            releaseLock(conn);
+        }
+    }
+
+    private static void ensureFuturePartitions(Connection conn, YearMonth target) throws SQLException {
+        YearMonth highest = null;
+        for (String name : partitionNames(conn)) {
+            YearMonth month = monthOf(name);
+            if (month != null && (highest == null || month.isAfter(highest))) highest = month;
+        }
+        YearMonth next = highest == null ? YearMonth.now() : highest.plusMonths(1);
+        if (next.isAfter(target)) return;
+
+        // Splitting pmax is cheap while it is empty, which it is unless bookings are made years ahead
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE bookings REORGANIZE PARTITION pmax INTO (" +
+                    partitionDefinitions(next, target) + ")");
+        }
+    }
+
+    private static int archiveBefore(Connection conn, YearMonth cutoff) throws SQLException, IOException {
+        // Finish a detach that was interrupted after the exchange
+        if (tableExists(conn, DETACHED)) {
+            archiveDetached(conn);
+        }
+
+        int archived = 0;
+        for (String name : partitionNames(conn)) {
+            YearMonth month = monthOf(name);
+            if (month == null || !month.isBefore(cutoff)) continue;
+            if (hasOpenBookings(conn, name)) continue;
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE " + DETACHED + " LIKE bookings");
+                stmt.execute("ALTER TABLE " + DETACHED + " REMOVE PARTITIONING");
+                // Swaps the partition's rows into the empty table in one metadata operation
+                stmt.execute("ALTER TABLE bookings EXCHANGE PARTITION " + name + " WITH TABLE " + DETACHED);
+                archiveDetached(conn);
+                stmt.execute("ALTER TABLE bookings DROP PARTITION " + name);
+            }
+            archived++;
+        }
+        return archived;
+    }
+
+    private static void archiveDetached(Connection conn) throws SQLException, IOException {
+        List<Booking> bookings = Booking.getAllFrom(conn, DETACHED);
+        if (!bookings.isEmpty()) {
+            LocalDate latest = bookings.get(0).getTravelDate().toLocalDate();
+            for (Booking b : bookings) {
+                LocalDate travel = b.getTravelDate().toLocalDate();
+                if (travel.isAfter(latest)) latest = travel;
+            }
+            BookingArchive.write(YearMonth.from(latest), bookings);
+            DeltaSync.writeTombstones(conn, "booking", DETACHED);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE " + DETACHED);
+        }
+    }
+
+    private static String partitionDefinitions(YearMonth from, YearMonth to) {
+        StringBuilder ddl = new StringBuilder();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            ddl.append("PARTITION ").append(NAME.format(month.atDay(1)))
+                    .append(" VALUES LESS THAN ('").append(month.plusMonths(1).atDay(1)).append("'), ");
+        }
+        return ddl.append("PARTITION pmax VALUES LESS THAN (MAXVALUE)").toString();
+    }
+
+    private static YearMonth monthOf(String partitionName) {
+        try {
+            return YearMonth.parse(partitionName.substring(1), DateTimeFormatter.ofPattern("yyyyMM"));
+        } catch (DateTimeParseException | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static boolean tryLock(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT GET_LOCK('" + LOCK_NAME + "', 0)")) {
+            return rs.next() && rs.getInt(1) == 1;
+        }
+    }
+
+    private static void releaseLock(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DO RELEASE_LOCK('" + LOCK_NAME + "')");
+        }
+    }
+
+    private static boolean isPartitioned(Connection conn) throws SQLException {
+        return !partitionNames(conn).isEmpty();
+    }
+
+    private static List<String> partitionNames(Connection conn) throws SQLException {
+        List<String> names = new ArrayList<>();
+        String query = "SELECT partition_name FROM information_schema.partitions " +
+                "WHERE table_schema = DATABASE() AND table_name = 'bookings' AND partition_name IS NOT NULL " +
+                "ORDER BY partition_ordinal_position";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) names.add(rs.getString(1));
+        }
+        return names;
+    }
+
+    private static List<String> foreignKeys(Connection conn) throws SQLException {
+        List<String> names = new ArrayList<>();
+        String query = "SELECT constraint_name FROM information_schema.referential_constraints " +
+                "WHERE constraint_schema = DATABASE() AND table_name = 'bookings'";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) names.add(rs.getString(1));
+        }
+        return names;
+    }
+
+    private static boolean hasIndexOn(Connection conn, String column) throws SQLException {
+        String query = "SELECT 1 FROM information_schema.statistics " +
+                "WHERE table_schema = DATABASE() AND table_name = 'bookings' AND column_name = ? AND seq_in_index = 1";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, column);
+            return pstmt.executeQuery().next();
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        String query = "SELECT 1 FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, table);
+            return pstmt.executeQuery().next();
+        }
+    }
+
+    private static boolean hasOpenBookings(Connection conn, String partition) throws SQLException {
+        String query = "SELECT 1 FROM bookings PARTITION (" + partition + ") WHERE status IN (?, ?) LIMIT 1";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, BookingStatus.PENDING.getLabel());
+            pstmt.setString(2, BookingStatus.CONFIRMED.getLabel());
+            return pstmt.executeQuery().next();
+        }
+    }
+}
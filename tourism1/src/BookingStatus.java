@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Booking states and the transitions allowed between them.
+ * Pending and Confirmed are the only states a booking can be created in; Cancelled and Completed are final.
+ */
+enum BookingStatus {
+    CONFIRMED("Confirmed"),
+    PENDING("Pending"),
+    CANCELLED("Cancelled"),
+    COMPLETED("Completed");
+
+    // Stored labels already reported by fromStoredLabel
+    private static final Set<String> UNKNOWN_LABELS = ConcurrentHashMap.newKeySet();
+
+    private final String label;
+
+    BookingStatus(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() { return label; }
+
+    public Set<BookingStatus> nextStates() {
+        switch (this) {
+            case PENDING:
+                return EnumSet.of(CONFIRMED, CANCELLED);
+            case CONFIRMED:
+                return EnumSet.of(COMPLETED, CANCELLED);
+            default:
+                return EnumSet.noneOf(BookingStatus.class);
+        }
+    }
+
+    public boolean canTransitionTo(BookingStatus next) {
+        return this == next || nextStates().contains(next);
+    }
+
+    public boolean isInitial() {
+        return this == PENDING || this == CONFIRMED;
+    }
+
+    /** Labels of every state that may legally move to the given one, for use in SQL IN lists. */
+    public static List<String> labelsLeadingTo(BookingStatus next) {
+        List<String> labels = new ArrayList<>();
+        for (BookingStatus status : values()) {
+            if (status.canTransitionTo(next)) labels.add(status.label);
+        }
+        return labels;
+    }
+
+    public static String[] labels() {
+        BookingStatus[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) labels[i] = values[i].label;
+        return labels;
+    }
+
+    /**
+     * The status of a stored label. Rows written before the statuses were fixed may hold null or a
+     * label that is no longer used; they read as Confirmed, the column default, and are reported
+     * once per label so one old row cannot stop a whole table from loading.
+     */
+    public static BookingStatus fromStoredLabel(String label) {
+        for (BookingStatus status : values()) {
+            if (status.label.equalsIgnoreCase(label)) return status;
+        }
+        if (UNKNOWN_LABELS.add(String.valueOf(label))) {
+            System.err.println("Unknown booking status " + (label == null ? "NULL" : "'" + label + "'") +
+                    ", reading it as " + CONFIRMED.label);
+        }
+        return CONFIRMED;
+    }
+
+    public static BookingStatus fromLabel(String label) {
+        for (BookingStatus status : values()) {
+            if (status.label.equalsIgnoreCase(label)) return status;
+        }
+        throw new IllegalArgumentException("Unknown booking status: " + label);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,347 @@
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * "Customers who booked X also booked Y" for the booking form.
+ *
+ * A sparse symmetric matrix holds, per pair of destinations, the number of customers with bookings
+ * for both; the diagonal holds the customers per destination. Scores are cosine similarities
+ * (co / sqrt(n(X) n(Y))), so popular destinations do not win by size alone. A query scans the
+ * non-zero entries of the seed rows with a bounded heap, which touches a few dozen map entries.
+ *
+ * The matrix changes only when a customer books a destination for the first time or loses the
+ * last booking there, so each booking is remembered as (customer, tour) and each customer as
+ * destination -> bookings. Updates come from DomainEvents; those that arrive while load() streams
+ * the bookings are held back and applied once it has finished, so a booking deleted during the load
+ * stays deleted. The matrix alone is saved to a small file, so answers are available at startup
+ * while the full state loads.
+ */
+class CoBookingIndex implements DomainEvents.Listener {
+    private static final int MAGIC = 0x54434F42; // "TCOB"
+    private static final int FORMAT_VERSION = 1;
+    static final Path FILE = Paths.get(System.getProperty("tourism.recommendations.file",
+            Paths.get(System.getProperty("user.home"), ".tourism", "cobooking.bin").toString()));
+
+    /** One suggested destination. */
+    static final class Recommendation {
+        final String destinationId;
+        final String name;
+        final double score;
+
+        Recommendation(String destinationId, String name, double score) {
+            this.destinationId = destinationId;
+            this.name = name;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() { return name; }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BookingColumnStore.Dictionary destinations = new BookingColumnStore.Dictionary();
+    private final BookingColumnStore.Dictionary tours = new BookingColumnStore.Dictionary();
+    private final BookingColumnStore.Dictionary customers = new BookingColumnStore.Dictionary();
+    private final Map<Integer, String> destinationNames = new HashMap<>();
+    private final Map<Integer, Integer> tourDestination = new HashMap<>();
+    // booking id -> customer code << 32 | tour code
+    private final Map<String, Long> bookings = new HashMap<>();
+    private final Map<Integer, Map<Integer, Integer>> customerDestinations = new HashMap<>();
+    private final Map<Integer, Map<Integer, Integer>> matrix = new HashMap<>();
+    private boolean changed;
+    private boolean fromFile;
+    // Events published while load() runs; null once they have been applied
+    private List<DomainEvent> pending = new ArrayList<>();
+
+    /** Builds the full state from the database. Subscribe to DomainEvents first so no write is missed. */
+    public void load(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT id, name FROM destinations")) {
+                while (rs.next()) putDestination(rs.getString(1), rs.getString(2));
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT id, destination_id FROM tours")) {
+                while (rs.next()) putTour(rs.getString(1), rs.getString(2));
+            }
+        }
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE makes Connector/J stream rows instead of buffering the full result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            ResultSet rs = stmt.executeQuery("SELECT id, customer_id, tour_id FROM bookings");
+            while (rs.next()) putBooking(rs.getString(1), rs.getString(2), rs.getString(3));
+        }
+
+        synchronized (this) {
+            apply(pending);
+            pending = null;
+        }
+    }
+
+    /** Held back until load() has finished; ignored by an index from readSaved(). */
+    @Override
+    public void onEvents(List<DomainEvent> events) {
+        // A matrix read from the file has no per-customer state to apply changes against
+        if (fromFile) return;
+        synchronized (this) {
+            if (pending != null) {
+                pending.addAll(events);
+                return;
+            }
+        }
+        apply(events);
+    }
+
+    private void apply(List<DomainEvent> events) {
+        for (DomainEvent event : events) {
+            if (event.change == DomainEvent.Change.DELETED) {
+                if (event.entity == DomainEvent.Entity.BOOKING) removeBooking(event.id);
+            } else {
+                put(event.row);
+            }
+        }
+    }
+
+    private void put(Object entity) {
+        if (entity instanceof Destination) {
+            Destination d = (Destination) entity;
+            putDestination(d.getId(), d.getName());
+        } else if (entity instanceof Tour) {
+            Tour t = (Tour) entity;
+            putTour(t.getId(), t.getDestinationId());
+        } else if (entity instanceof Booking) {
+            Booking b = (Booking) entity;
+            putBooking(b.getId(), b.getCustomerId(), b.getTourId());
+        }
+    }
+
+    void removeBooking(String id) {
+        lock.writeLock().lock();
+        try {
+            Long pair = bookings.remove(id);
+            if (pair != null) count((int) (pair >>> 32), tourDestination.get((int) (long) pair), -1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putDestination(String id, String name) {
+        lock.writeLock().lock();
+        try {
+            destinationNames.put(destinations.encode(id), name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putTour(String id, String destinationId) {
+        lock.writeLock().lock();
+        try {
+            int tour = tours.encode(id);
+            int destination = destinations.encode(destinationId);
+            Integer previous = tourDestination.put(tour, destination);
+            if (previous == null || previous == destination) return;
+
+            // Rare: the tour moved to another destination, so all of its bookings move with it
+            for (long pair : bookings.values()) {
+                if ((int) pair != tour) continue;
+                int customer = (int) (pair >>> 32);
+                count(customer, previous, -1);
+                count(customer, destination, 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putBooking(String id, String customerId, String tourId) {
+        lock.writeLock().lock();
+        try {
+            long pair = (long) customers.encode(customerId) << 32 | tours.encode(tourId);
+            Long previous = bookings.put(id, pair);
+            if (previous != null && previous == pair) return;
+            if (previous != null) count((int) (previous >>> 32), tourDestination.get((int) (long) previous), -1);
+            count((int) (pair >>> 32), tourDestination.get((int) pair), 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Adjusts how many bookings the customer holds for the destination, and the matrix when that
+    // crosses zero. Bookings for tours not seen yet have no destination and are not counted.
+    private void count(int customer, Integer destination, int delta) {
+        if (destination == null) return;
+        Map<Integer, Integer> held = customerDestinations.computeIfAbsent(customer, c -> new HashMap<>(4));
+        int before = held.getOrDefault(destination, 0);
+        int after = before + delta;
+        if (after > 0) {
+            held.put(destination, after);
+        } else {
+            held.remove(destination);
+            if (held.isEmpty()) customerDestinations.remove(customer);
+        }
+
+        if (before == 0 && after > 0) {
+            for (int other : held.keySet()) {
+                addPair(destination, other, 1);
+                if (other != destination) addPair(other, destination, 1);
+            }
+        } else if (before > 0 && after <= 0) {
+            addPair(destination, destination, -1);
+            for (int other : held.keySet()) {
+                addPair(destination, other, -1);
+                addPair(other, destination, -1);
+            }
+        }
+    }
+
+    private void addPair(int row, int column, int delta) {
+        Map<Integer, Integer> cells = matrix.computeIfAbsent(row, r -> new HashMap<>(8));
+        int value = cells.getOrDefault(column, 0) + delta;
+        if (value > 0) {
+            cells.put(column, value);
+        } else {
+            cells.remove(column);
+            if (cells.isEmpty()) matrix.remove(row);
+        }
+        changed = true;
+    }
+
+    /**
+     * Destinations most often booked together with the given one and with the customer's earlier
+     * destinations, best first. Either argument may be null; destinations already among them are left out.
+     */
+    public List<Recommendation> recommend(String customerId, String destinationId, int k) {
+        lock.readLock().lock();
+        try {
+            List<Integer> seeds = new ArrayList<>();
+            int destination = destinationId == null ? -1 : destinations.codeOf(destinationId);
+            if (destination >= 0) seeds.add(destination);
+            int customer = customerId == null ? -1 : customers.codeOf(customerId);
+            if (customer >= 0) {
+                seeds.addAll(customerDestinations.getOrDefault(customer, Collections.emptyMap()).keySet());
+            }
+
+            Map<Integer, Double> scores = new HashMap<>();
+            for (int seed : seeds) {
+                Map<Integer, Integer> row = matrix.get(seed);
+                if (row == null) continue;
+                double seedCount = row.getOrDefault(seed, 1);
+                for (Map.Entry<Integer, Integer> cell : row.entrySet()) {
+                    int other = cell.getKey();
+                    if (seeds.contains(other)) continue;
+                    double otherCount = matrix.get(other).getOrDefault(other, 1);
+                    scores.merge(other, cell.getValue() / Math.sqrt(seedCount * otherCount), Double::sum);
+                }
+            }
+
+            PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(k + 1, Map.Entry.comparingByValue());
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                top.add(entry);
+                if (top.size() > k) top.poll();
+            }
+            List<Recommendation> result = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                Map.Entry<Integer, Double> entry = top.poll();
+                int code = entry.getKey();
+                result.add(0, new Recommendation(destinations.decode(code),
+                        destinationNames.getOrDefault(code, destinations.decode(code)), entry.getValue()));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the matrix and destination names, gzip-compressed: each row lists its non-zero columns
+     * as ascending code gaps and counts, both as variable-length integers.
+     */
+    public void save() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (!changed) return;
+            Files.createDirectories(FILE.getParent());
+            Path tmp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeVarInt(out, destinations.size());
+                for (int code = 0; code < destinations.size(); code++) {
+                    out.writeUTF(destinations.decode(code));
+                    out.writeUTF(destinationNames.getOrDefault(code, ""));
+                    Map<Integer, Integer> row = matrix.getOrDefault(code, Collections.emptyMap());
+                    List<Integer> columns = new ArrayList<>(row.keySet());
+                    Collections.sort(columns);
+                    writeVarInt(out, columns.size());
+                    int last = 0;
+                    for (int column : columns) {
+                        writeVarInt(out, column - last);
+                        writeVarInt(out, row.get(column));
+                        last = column;
+                    }
+                }
+            }
+            Files.move(tmp, FILE, StandardCopyOption.REPLACE_EXISTING);
+            changed = false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Reads a matrix written by save(); it answers recommend() but knows no bookings, so it is not kept current. */
+    public static CoBookingIndex readSaved() {
+        if (!Files.isRegularFile(FILE)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(FILE))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("not a co-booking file or unsupported format version");
+            }
+            CoBookingIndex index = new CoBookingIndex();
+            index.fromFile = true;
+            index.pending = null;
+            int count = readVarInt(in);
+            for (int code = 0; code < count; code++) {
+                index.destinations.encode(in.readUTF());
+                index.destinationNames.put(code, in.readUTF());
+                int cells = readVarInt(in);
+                int column = 0;
+                for (int i = 0; i < cells; i++) {
+                    column += readVarInt(in);
+                    index.matrix.computeIfAbsent(code, r -> new HashMap<>(8)).put(column, readVarInt(in));
+                }
+            }
+            return index;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable co-booking file " + FILE + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+}
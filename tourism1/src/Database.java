@@ -0,0 +1,71 @@
+import java.sql.*;
+import java.util.Properties;
+
+/**
+ * Connection settings shared by the UI and the background jobs, which each open their own connection.
+ * The defaults can be overridden with the tourism.db.* system properties; setting
+ * tourism.db.replicaUrl routes read-only queries to a replica (see ReadRouter).
+ *
+ * connect() and connectReplica() return self-healing connections with statement timeouts (see
+ * ResilientConnection); schema changes and other long maintenance work use connectForMaintenance().
+ */
+class Database {
+    static final String URL = System.getProperty("tourism.db.url", "jdbc:mysql://localhost:3306/tourism_db");
+    static final String USER = System.getProperty("tourism.db.user", "root");
+    static final String PASSWORD = System.getProperty("tourism.db.password", "dbms");
+    static final String REPLICA_URL = System.getProperty("tourism.db.replicaUrl");
+    static final String REPLICA_USER = System.getProperty("tourism.db.replicaUser", USER);
+    static final String REPLICA_PASSWORD = System.getProperty("tourism.db.replicaPassword", PASSWORD);
+    // Without it a connect to an unreachable host can hang for minutes
+    static final int CONNECT_TIMEOUT_MS = Integer.getInteger("tourism.db.connectTimeoutMs", 5000);
+
+    private Database() {
+    }
+
+    static Connection connect() throws SQLException {
+        return ResilientConnection.open(URL, () -> open(URL, USER, PASSWORD));
+    }
+
+    static boolean hasReplica() {
+        return REPLICA_URL != null && !REPLICA_URL.isEmpty();
+    }
+
+    static Connection connectReplica() throws SQLException {
+        if (!hasReplica()) return connect();
+        return ResilientConnection.open(REPLICA_URL, () -> open(REPLICA_URL, REPLICA_USER, REPLICA_PASSWORD));
+    }
+
+    /** Plain connection without statement timeouts or retries, for DDL and other long-running maintenance. */
+    static Connection connectForMaintenance() throws SQLException {
+        return open(URL, USER, PASSWORD);
+    }
+
+    /**
+     * Maintenance connection that may stream LOAD DATA LOCAL INFILE from the client and sends
+     * batched inserts as multi-row statements, for DatasetGenerator.
+     */
+    static Connection connectForBulkLoad() throws SQLException {
+        Properties extra = new Properties();
+        extra.setProperty("allowLoadLocalInfile", "true");
+        extra.setProperty("rewriteBatchedStatements", "true");
+        return open(URL, USER, PASSWORD, extra);
+    }
+
+    private static Connection open(String url, String user, String password) throws SQLException {
+        return open(url, user, password, new Properties());
+    }
+
+    private static Connection open(String url, String user, String password, Properties extra) throws SQLException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("MySQL JDBC driver not found", e);
+        }
+        Properties props = new Properties();
+        props.putAll(extra);
+        props.setProperty("user", user);
+        props.setProperty("password", password);
+        props.setProperty("connectTimeout", String.valueOf(CONNECT_TIMEOUT_MS));
+        return DriverManager.getConnection(url, props);
+    }
+}
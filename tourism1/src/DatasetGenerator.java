@@ -0,0 +1,412 @@
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Replaces the contents of a database with a synthetic dataset of a chosen size, for benchmarks and
+ * UI tests that need known data volumes.
+ *
+ * Destinations get a country and a best season; tours belong to destinations, more of them to popular
+ * ones; bookings pick tours with Zipf-skewed popularity and customers with a long tail of repeat
+ * bookers. Travel dates fall in the destination's season most of the time, in the two years before
+ * and the year after the anchor date, and statuses follow the travel date: past trips are mostly
+ * Completed, future ones Confirmed or Pending, some of both Cancelled. Every table draws from its own
+ * random stream, so the same booking count, seed and anchor date always give the same rows.
+ *
+ * Rows are streamed with LOAD DATA LOCAL INFILE when the server allows it (local_infile=ON) and sent
+ * as rewritten multi-row insert batches otherwise, between DatasetSnapshot.beginBulkLoad and
+ * endBulkLoad. The id sequences are moved past the generated ids afterwards.
+ *
+ * Run with the application classpath, with tourism.db.url pointing at a disposable database:
+ *   java DatasetGenerator <bookings> [seed] [anchor yyyy-mm-dd]
+ */
+class DatasetGenerator {
+    private static final int LOAD_DATA_ROWS = 500_000;
+    private static final int BATCH_ROWS = 5000;
+    private static final int TRAVEL_MONTHS_BACK = 24;
+    private static final int TRAVEL_MONTHS_AHEAD = 12;
+    private static final int IN_SEASON_PERCENT = 85;
+
+    private static final String[] COUNTRIES = {
+            "India", "Indonesia", "Thailand", "Japan", "Vietnam", "Sri Lanka", "Nepal", "Maldives",
+            "France", "Italy", "Spain", "Greece", "Portugal", "Switzerland", "Iceland", "Norway",
+            "Egypt", "Morocco", "Kenya", "Tanzania", "South Africa", "Peru", "Brazil", "Argentina",
+            "Mexico", "Canada", "USA", "Australia", "New Zealand", "Turkey"};
+    private static final String[] PLACE_WORDS = {
+            "Coral", "Golden", "Misty", "Silver", "Emerald", "Sunset", "Crystal", "Royal", "Hidden",
+            "Blue", "Cedar", "Jade", "Amber", "Lotus", "Falcon", "Ivory", "Saffron", "Monsoon"};
+    private static final String[] PLACE_KINDS = {
+            "Bay", "Valley", "Peaks", "Coast", "Lagoon", "Highlands", "Falls", "Islands", "Desert",
+            "Old Town", "Harbour", "Springs", "Canyon", "Forest"};
+    private static final String[] SEASONS = {
+            "Summer", "Winter", "Spring", "Autumn", "All Year", "Nov-Mar", "Apr-Jun", "Jun-Sep",
+            "Dec-Feb", "Oct-Apr"};
+    private static final String[] TOUR_KINDS = {
+            "Discovery", "Heritage Walk", "Adventure", "Cruise", "Food Trail", "Safari", "Trek",
+            "Escape", "Highlights", "Retreat", "Family Break", "Photo Tour"};
+    private static final String[] FIRST_NAMES = {
+            "Aarav", "Priya", "Rahul", "Ananya", "Vikram", "Meera", "John", "Emma", "Liam", "Olivia",
+            "Noah", "Sophia", "Arjun", "Kavya", "Lucas", "Mia", "Rohan", "Isha", "Daniel", "Sara"};
+    private static final String[] LAST_NAMES = {
+            "Sharma", "Patel", "Iyer", "Reddy", "Nair", "Gupta", "Smith", "Johnson", "Brown", "Garcia",
+            "Miller", "Davis", "Khan", "Singh", "Wilson", "Taylor", "Das", "Menon", "Lopez", "Clark"};
+    private static final String[] STREETS = {
+            "Maple", "Park", "Lake", "Hill", "Station", "Church", "Market", "Temple", "River", "Garden"};
+    // Party sizes 1..6 by weight
+    private static final int[] PARTY_WEIGHTS = {20, 40, 12, 18, 5, 5};
+
+    private interface Rows {
+        /** Fills row with the values of row number index; called once per row, in order. */
+        void fill(long index, Object[] row);
+    }
+
+    private final long bookings;
+    private final int customers;
+    private final int tours;
+    private final int destinations;
+    private final long seed;
+    private final LocalDate anchor;
+
+    // What the bookings need to know about the rows generated before them
+    private String[] destinationNames;
+    private int[] destinationMonths;
+    private int[] tourDestination;
+    private long[] tourPriceCents;
+    private int[] tourByRank;
+    private double[] tourPopularity;
+
+    DatasetGenerator(long bookings, long seed, LocalDate anchor) {
+        this.bookings = bookings;
+        this.customers = (int) Math.min(Integer.MAX_VALUE, Math.max(50, bookings / 8));
+        this.tours = (int) Math.max(20, Math.min(20_000, bookings / 2000));
+        this.destinations = Math.max(10, tours / 5);
+        this.seed = seed;
+        this.anchor = anchor;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java DatasetGenerator <bookings> [seed] [anchor yyyy-mm-dd]");
+            System.exit(2);
+        }
+        long bookings = Long.parseLong(args[0].replace("_", ""));
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        LocalDate anchor = args.length > 2 ? LocalDate.parse(args[2]) : LocalDate.now();
+
+        long start = System.nanoTime();
+        Map<String, Long> rows;
+        try (Connection conn = Database.connectForBulkLoad()) {
+            rows = new DatasetGenerator(bookings, seed, anchor).generate(conn);
+        }
+        for (Map.Entry<String, Long> table : rows.entrySet()) {
+            System.out.printf("%-14s %,14d rows%n", table.getKey(), table.getValue());
+        }
+        System.out.printf("Seed %d, anchor %s, %.1f s%n", seed, anchor, (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Replaces the four tables' rows with the generated dataset; returns the row count per table. */
+    Map<String, Long> generate(Connection conn) throws SQLException {
+        TourismManagementSystem.createTables(conn);
+        boolean loadData = localInfileEnabled(conn);
+
+        Map<String, Long> rows = new LinkedHashMap<>();
+        Map<String, List<String>> deferredIndexes = new LinkedHashMap<>();
+        try {
+            DatasetSnapshot.beginBulkLoad(conn, deferredIndexes);
+            rows.put("destinations", load(conn, loadData, "destinations",
+                    new String[]{"id", "name", "country", "description", "best_season", "season_months"},
+                    destinations, destinationRows()));
+            rows.put("tours", load(conn, loadData, "tours",
+                    new String[]{"id", "name", "destination_id", "duration_days", "price", "available"},
+                    tours, tourRows()));
+            rows.put("customers", load(conn, loadData, "customers",
+                    new String[]{"id", "name", "email", "phone", "address", "email_norm", "phone_norm"},
+                    customers, customerRows()));
+            rows.put("bookings", load(conn, loadData, "bookings",
+                    new String[]{"id", "tour_id", "customer_id", "booking_date", "travel_date", "num_people",
+                            "total_price", "status"},
+                    bookings, bookingRows()));
+        } finally {
+            DatasetSnapshot.endBulkLoad(conn, deferredIndexes);
+        }
+
+        IdAllocator.reserveThrough(conn, "destination", destinations);
+        IdAllocator.reserveThrough(conn, "tour", tours);
+        IdAllocator.reserveThrough(conn, "customer", customers);
+        IdAllocator.reserveThrough(conn, "booking", bookings);
+        return rows;
+    }
+
+    // One independent stream per table, so changing how one table is generated leaves the others alone
+    private SplittableRandom random(int table) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + table);
+    }
+
+    private Rows destinationRows() {
+        SplittableRandom random = random(1);
+        destinationNames = new String[destinations];
+        destinationMonths = new int[destinations];
+        return (index, row) -> {
+            int i = (int) index;
+            String name = pick(random, PLACE_WORDS) + " " + pick(random, PLACE_KINDS);
+            String country = pick(random, COUNTRIES);
+            String season = pick(random, SEASONS);
+            destinationNames[i] = name;
+            destinationMonths[i] = SeasonIndex.seasonMonths(season);
+            row[0] = IdAllocator.idOf("destination", i);
+            row[1] = name;
+            row[2] = country;
+            row[3] = name + " in " + country + ", best visited in " + season.toLowerCase(Locale.ROOT) + ".";
+            row[4] = season;
+            row[5] = destinationMonths[i];
+        };
+    }
+
+    private Rows tourRows() {
+        SplittableRandom random = random(2);
+        double[] destinationPopularity = zipf(destinations, 0.8);
+        tourDestination = new int[tours];
+        tourPriceCents = new long[tours];
+        return (index, row) -> {
+            int i = (int) index;
+            int destination = sample(random, destinationPopularity);
+            int days = 2 + random.nextInt(13);
+            // Per-day rate between 80 and 400, rounded to whole fives
+            long cents = Math.round(days * (80 + random.nextInt(321)) / 5.0) * 500;
+            tourDestination[i] = destination;
+            tourPriceCents[i] = cents;
+            row[0] = IdAllocator.idOf("tour", i);
+            row[1] = destinationNames[destination] + " " + pick(random, TOUR_KINDS);
+            row[2] = IdAllocator.idOf("destination", destination);
+            row[3] = days;
+            row[4] = BigDecimal.valueOf(cents, 2);
+            row[5] = random.nextInt(10) != 0;
+        };
+    }
+
+    private Rows customerRows() {
+        SplittableRandom random = random(3);
+        return (index, row) -> {
+            String first = pick(random, FIRST_NAMES);
+            String last = pick(random, LAST_NAMES);
+            String email = (first + "." + last + "." + Long.toString(index, 36) + "@example.com").toLowerCase(Locale.ROOT);
+            long number = 2_000_000_000L + index;
+            String phone = String.format("+1 %03d %03d %04d", number / 10_000_000, number / 10_000 % 1000, number % 10_000);
+            row[0] = IdAllocator.idOf("customer", index);
+            row[1] = first + " " + last;
+            row[2] = email;
+            row[3] = phone;
+            row[4] = (1 + random.nextInt(999)) + " " + pick(random, STREETS) + " Street";
+            row[5] = DuplicateDetector.normalizeEmail(email);
+            row[6] = DuplicateDetector.normalizePhone(phone);
+        };
+    }
+
+    private Rows bookingRows() {
+        SplittableRandom random = random(4);
+        // Popularity rank is shuffled over the tours, so the busiest tours are not simply the first ids
+        tourByRank = new int[tours];
+        for (int i = 0; i < tours; i++) tourByRank[i] = i;
+        SplittableRandom shuffle = random(5);
+        for (int i = tours - 1; i > 0; i--) {
+            int j = shuffle.nextInt(i + 1);
+            int swap = tourByRank[i];
+            tourByRank[i] = tourByRank[j];
+            tourByRank[j] = swap;
+        }
+        tourPopularity = zipf(tours, 1.0);
+        LocalDate firstMonth = anchor.withDayOfMonth(1).minusMonths(TRAVEL_MONTHS_BACK);
+        int months = TRAVEL_MONTHS_BACK + TRAVEL_MONTHS_AHEAD;
+
+        return (index, row) -> {
+            int tour = tourByRank[sample(random, tourPopularity)];
+            // u^1.6 crowds picks towards low numbers: a few customers book often, most only once or twice
+            int customer = (int) (customers * Math.pow(random.nextDouble(), 1.6));
+
+            int season = destinationMonths[tourDestination[tour]];
+            LocalDate month = firstMonth.plusMonths(random.nextInt(months));
+            if (season != 0 && random.nextInt(100) < IN_SEASON_PERCENT) {
+                while ((season & (1 << (month.getMonthValue() - 1))) == 0) {
+                    month = firstMonth.plusMonths(random.nextInt(months));
+                }
+            }
+            LocalDate travel = month.plusDays(random.nextInt(month.lengthOfMonth()));
+            // Booked an exponentially distributed lead time ahead (mean 45 days), never after the anchor
+            long lead = Math.min(365, (long) (-Math.log(1 - random.nextDouble()) * 45));
+            LocalDate booked = travel.minusDays(lead);
+            if (booked.isAfter(anchor)) booked = anchor.minusDays(random.nextInt(60));
+
+            int people = 1 + sample(random, PARTY_WEIGHTS);
+            int roll = random.nextInt(100);
+            BookingStatus status = travel.isBefore(anchor)
+                    ? (roll < 90 ? BookingStatus.COMPLETED : BookingStatus.CANCELLED)
+                    : (roll < 72 ? BookingStatus.CONFIRMED : roll < 90 ? BookingStatus.PENDING : BookingStatus.CANCELLED);
+
+            row[0] = IdAllocator.idOf("booking", index);
+            row[1] = IdAllocator.idOf("tour", tour);
+            row[2] = IdAllocator.idOf("customer", customer);
+            row[3] = booked;
+            row[4] = travel;
+            row[5] = people;
+            row[6] = BigDecimal.valueOf(people * tourPriceCents[tour], 2);
+            row[7] = status.getLabel();
+        };
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /** Cumulative weights 1 / rank^exponent over n items, normalized to end at 1. */
+    private static double[] zipf(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < n; i++) cumulative[i] /= total;
+        return cumulative;
+    }
+
+    private static int sample(SplittableRandom random, double[] cumulative) {
+        int i = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(cumulative.length - 1, i >= 0 ? i : -i - 1);
+    }
+
+    private static int sample(SplittableRandom random, int[] weights) {
+        int total = 0;
+        for (int weight : weights) total += weight;
+        int roll = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) return i;
+        }
+        return weights.length - 1;
+    }
+
+    private static boolean localInfileEnabled(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT @@local_infile")) {
+            return rs.next() && rs.getInt(1) == 1;
+        }
+    }
+
+    private static long load(Connection conn, boolean loadData, String table, String[] columns,
+                             long count, Rows rows) throws SQLException {
+        if (loadData) {
+            // Several statements rather than one, so no single transaction grows to the whole table
+            String sql = "LOAD DATA LOCAL INFILE 'generated.tsv' INTO TABLE " + table + " CHARACTER SET utf8mb4 " +
+                    "FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (" +
+                    String.join(", ", columns) + ")";
+            for (long from = 0; from < count; from += LOAD_DATA_ROWS) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(
+                            new TsvStream(rows, columns.length, from, Math.min(count, from + LOAD_DATA_ROWS)));
+                    stmt.execute(sql);
+                }
+            }
+            return count;
+        }
+
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" +
+                SqlSupport.placeholders(columns.length) + ")";
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            Object[] row = new Object[columns.length];
+            for (long i = 0; i < count; i++) {
+                rows.fill(i, row);
+                for (int c = 0; c < row.length; c++) pstmt.setObject(c + 1, row[c]);
+                pstmt.addBatch();
+                if ((i + 1) % BATCH_ROWS == 0 || i + 1 == count) {
+                    pstmt.executeBatch();
+                    conn.commit();
+                }
+            }
+            return count;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /** Rows [from, to) as tab-separated lines in LOAD DATA's default escaping, produced as the server reads. */
+    private static final class TsvStream extends InputStream {
+        private final Rows rows;
+        private final Object[] row;
+        private final StringBuilder lines = new StringBuilder(1 << 16);
+        private long next;
+        private final long to;
+        private byte[] buffer = new byte[0];
+        private int position;
+
+        TsvStream(Rows rows, int columns, long from, long to) {
+            this.rows = rows;
+            this.row = new Object[columns];
+            this.next = from;
+            this.to = to;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (position == buffer.length && !fill()) return -1;
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean fill() {
+            if (next >= to) return false;
+            lines.setLength(0);
+            for (int i = 0; i < 1000 && next < to; i++, next++) {
+                rows.fill(next, row);
+                for (int c = 0; c < row.length; c++) {
+                    if (c > 0) lines.append('\t');
+                    append(row[c]);
+                }
+                lines.append('\n');
+            }
+            buffer = lines.toString().getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            return true;
+        }
+
+        private void append(Object value) {
+            if (value == null) {
+                lines.append("\\N");
+            } else if (value instanceof Boolean) {
+                lines.append((Boolean) value ? '1' : '0');
+            } else if (value instanceof BigDecimal) {
+                lines.append(((BigDecimal) value).toPlainString());
+            } else {
+                String text = value.toString();
+                for (int i = 0; i < text.length(); i++) {
+                    char ch = text.charAt(i);
+                    if (ch == '\\' || ch == '\t' || ch == '\n') lines.append('\\');
+                    lines.append(ch);
+                }
+            }
+        }
+    }
+}
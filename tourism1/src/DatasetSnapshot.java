@@ -0,0 +1,576 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Full backup of the four entity tables into one compact binary file, and restore from it.
+ *
+ * Per table the file holds the column names and types, then blocks of up to BLOCK_ROWS rows. A
+ * block stores its rows column by column (a null bitmap, then the values: zigzag varint deltas for
+ * integers, decimals, dates and timestamps, length-prefixed UTF-8 for text), deflated and prefixed
+ * with its row count, both lengths and a CRC32 of the uncompressed bytes, so a damaged file fails on
+ * the bad block instead of restoring garbage. Columns are matched by name, so a file restores into
+ * a schema that gained or lost columns since.
+ *
+ * Restore replaces the target's rows. It drops the sync triggers and the secondary indexes a foreign
+ * key does not need (beginBulkLoad), loads each block with multi-row inserts in one transaction, then
+ * rebuilds each table's indexes with a single ALTER, reinstalls the triggers and moves the id
+ * sequences past the restored ids (endBulkLoad). It is meant for seeding test and debug databases:
+ * nothing else may use the target while it runs, and a failed restore leaves the blocks loaded so
+ * far.
+ *
+ * Only rows still in the database are backed up. Bookings of archived months live in the files
+ * under tourism.archive.dir (see BookingArchive) and are not part of the snapshot; backup warns when
+ * that directory holds any, and they have to be copied next to the snapshot to be kept.
+ *
+ * Run with the application classpath, with tourism.db.url pointing at the source or target:
+ *   java DatasetSnapshot backup tourism.tmds
+ *   java DatasetSnapshot restore tourism.tmds
+ */
+class DatasetSnapshot {
+    private static final int MAGIC = 0x544D4453; // "TMDS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int BLOCK_ROWS = 8192;
+    private static final int ROWS_PER_INSERT = 1000;
+    // MySQL allows at most 65535 placeholders in one statement
+    private static final int MAX_PARAMETERS = 60000;
+
+    private static final byte STRING = 0;
+    private static final byte LONG = 1;
+    private static final byte DECIMAL = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DATE = 5;
+    private static final byte TIMESTAMP = 6;
+
+    private static final class Column {
+        final String name;
+        final byte type;
+        final int scale;
+
+        Column(String name, byte type, int scale) {
+            this.name = name;
+            this.type = type;
+            this.scale = scale;
+        }
+    }
+
+    private DatasetSnapshot() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 || !("backup".equals(args[0]) || "restore".equals(args[0]))) {
+            System.err.println("Usage: java DatasetSnapshot backup|restore <file>");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[1]);
+        long start = System.nanoTime();
+        Map<String, Integer> rows;
+        try (Connection conn = Database.connectForMaintenance()) {
+            rows = "backup".equals(args[0]) ? backup(conn, file) : restore(conn, file);
+        }
+        for (Map.Entry<String, Integer> table : rows.entrySet()) {
+            System.out.printf("%-14s %,12d rows%n", table.getKey(), table.getValue());
+        }
+        System.out.printf("%s %s (%,d bytes) in %.1f s%n", "backup".equals(args[0]) ? "Wrote" : "Restored",
+                file, Files.size(file), (System.nanoTime() - start) / 1e9);
+        if ("backup".equals(args[0])) warnAboutArchive();
+    }
+
+    private static void warnAboutArchive() throws IOException {
+        int archived = BookingArchive.files().size();
+        if (archived > 0) {
+            System.err.println("Warning: the " + archived + " booking archive file(s) in " + BookingArchive.DIR +
+                    " are not part of the snapshot; copy that directory to keep them");
+        }
+    }
+
+    /** Streams the four tables, as of one point in time, into file; returns the row count per table. */
+    static Map<String, Integer> backup(Connection conn, Path file) throws SQLException, IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Map<String, Integer> rows = new LinkedHashMap<>();
+
+        boolean autoCommit = conn.getAutoCommit();
+        // One repeatable-read transaction gives all four tables the same snapshot
+        conn.setAutoCommit(false);
+        conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        Deflater deflater = new Deflater();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(DeltaSync.TABLES.length);
+            for (String table : DeltaSync.TABLES) {
+                rows.put(table, writeTable(conn, table, out, deflater));
+            }
+            conn.commit();
+        } finally {
+            deflater.end();
+            conn.setAutoCommit(autoCommit);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        return rows;
+    }
+
+    /** Replaces the rows of the four tables with the contents of file; returns the row count per table. */
+    static Map<String, Integer> restore(Connection conn, Path file) throws SQLException, IOException {
+        Map<String, Integer> rows = new LinkedHashMap<>();
+        TourismManagementSystem.createTables(conn);
+
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a dataset snapshot or has an unsupported format version");
+            }
+            in.readLong();
+            int tables = in.readInt();
+
+            Map<String, List<String>> deferredIndexes = new LinkedHashMap<>();
+            try {
+                beginBulkLoad(conn, deferredIndexes);
+                for (int t = 0; t < tables; t++) {
+                    String table = in.readUTF();
+                    if (!Arrays.asList(DeltaSync.TABLES).contains(table)) {
+                        throw new IOException(file + " holds unexpected table " + table);
+                    }
+                    Column[] columns = new Column[in.readInt()];
+                    for (int c = 0; c < columns.length; c++) {
+                        columns[c] = new Column(in.readUTF(), in.readByte(), in.readByte());
+                    }
+                    rows.put(table, loadTable(conn, in, inflater, table, columns));
+                }
+            } finally {
+                endBulkLoad(conn, deferredIndexes);
+            }
+        } finally {
+            inflater.end();
+        }
+        return rows;
+    }
+
+    /**
+     * Empties the four tables and readies them for a bulk load: no foreign key or unique checks, no
+     * sync triggers (loaded rows keep the versions they come with) and no secondary indexes a
+     * foreign key does not need. The dropped indexes are added to deferredIndexes as they go, so
+     * endBulkLoad restores them even when this fails halfway.
+     */
+    static void beginBulkLoad(Connection conn, Map<String, List<String>> deferredIndexes) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET foreign_key_checks = 0, unique_checks = 0");
+            DeltaSync.dropTriggers(conn);
+            for (String table : DeltaSync.TABLES) {
+                stmt.execute("TRUNCATE TABLE " + table);
+                deferredIndexes.put(table, dropSecondaryIndexes(conn, table));
+            }
+            stmt.execute("TRUNCATE TABLE sync_tombstones");
+        }
+    }
+
+    /** Rebuilds the indexes dropped by beginBulkLoad, reinstalls the sync triggers and moves the clock past the loaded versions. */
+    static void endBulkLoad(Connection conn, Map<String, List<String>> deferredIndexes) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (Map.Entry<String, List<String>> table : deferredIndexes.entrySet()) {
+                if (table.getValue().isEmpty()) continue;
+                // One ALTER builds all of a table's indexes in a single sorted pass over its rows
+                stmt.execute("ALTER TABLE " + table.getKey() + " " + String.join(", ", table.getValue()));
+            }
+            DeltaSync.createSchema(conn);
+            for (String table : DeltaSync.TABLES) {
+                // Rounded into each shard's residue class, so versions stay unique across shards
+                stmt.execute("UPDATE sync_clock SET version = GREATEST(version, " +
+                        "(SELECT COALESCE(MAX(version), 0) FROM " + table + ") DIV " + DeltaSync.SHARDS +
+                        " * " + DeltaSync.SHARDS + " + id)");
+            }
+            // Restored ids were never handed out here, so the sequences must skip past them
+            for (int i = 0; i < DeltaSync.TABLES.length; i++) {
+                IdAllocator.reservePastExisting(conn, DeltaSync.ENTITIES[i], DeltaSync.TABLES[i]);
+            }
+            stmt.execute("SET foreign_key_checks = 1, unique_checks = 1");
+        }
+    }
+
+    private static int writeTable(Connection conn, String table, DataOutputStream out, Deflater deflater)
+            throws SQLException, IOException {
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE makes Connector/J stream rows instead of buffering the full result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            ResultSet rs = stmt.executeQuery("SELECT * FROM " + table);
+            ResultSetMetaData meta = rs.getMetaData();
+            Column[] columns = new Column[meta.getColumnCount()];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = new Column(meta.getColumnLabel(c + 1), typeOf(meta.getColumnType(c + 1)),
+                        Math.max(0, meta.getScale(c + 1)));
+            }
+
+            out.writeUTF(table);
+            out.writeInt(columns.length);
+            for (Column column : columns) {
+                out.writeUTF(column.name);
+                out.writeByte(column.type);
+                out.writeByte(column.scale);
+            }
+
+            Object[][] block = new Object[columns.length][BLOCK_ROWS];
+            int total = 0;
+            int rows = 0;
+            while (rs.next()) {
+                for (int c = 0; c < columns.length; c++) {
+                    block[c][rows] = read(rs, c + 1, columns[c].type);
+                }
+                if (++rows == BLOCK_ROWS) {
+                    writeBlock(out, deflater, columns, block, rows);
+                    total += rows;
+                    rows = 0;
+                }
+            }
+            if (rows > 0) {
+                writeBlock(out, deflater, columns, block, rows);
+                total += rows;
+            }
+            out.writeInt(0);
+            return total;
+        }
+    }
+
+    private static byte typeOf(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return LONG;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return DECIMAL;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.DATE:
+                return DATE;
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            default:
+                return STRING;
+        }
+    }
+
+    private static Object read(ResultSet rs, int index, byte type) throws SQLException {
+        Object value;
+        switch (type) {
+            case LONG:
+                value = rs.getLong(index);
+                break;
+            case DECIMAL:
+                return rs.getBigDecimal(index);
+            case DOUBLE:
+                value = rs.getDouble(index);
+                break;
+            case BOOLEAN:
+                value = rs.getBoolean(index);
+                break;
+            case DATE:
+                return rs.getObject(index, LocalDate.class);
+            case TIMESTAMP:
+                // LocalDateTime keeps the stored wall-clock value whatever the client time zones are
+                return rs.getObject(index, LocalDateTime.class);
+            default:
+                return rs.getString(index);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    private static void writeBlock(DataOutputStream out, Deflater deflater, Column[] columns,
+                                   Object[][] block, int rows) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(rows * columns.length * 4);
+        for (int c = 0; c < columns.length; c++) {
+            Object[] values = block[c];
+            byte[] nulls = new byte[(rows + 7) / 8];
+            for (int r = 0; r < rows; r++) {
+                if (values[r] == null) nulls[r >> 3] |= 1 << (r & 7);
+            }
+            raw.write(nulls);
+
+            long previous = 0;
+            for (int r = 0; r < rows; r++) {
+                Object value = values[r];
+                if (value == null) continue;
+                switch (columns[c].type) {
+                    case STRING:
+                        byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                        writeVarint(raw, bytes.length);
+                        raw.write(bytes);
+                        break;
+                    case DOUBLE:
+                        long bits = Double.doubleToLongBits((Double) value);
+                        for (int shift = 56; shift >= 0; shift -= 8) raw.write((int) (bits >>> shift));
+                        break;
+                    case BOOLEAN:
+                        raw.write((Boolean) value ? 1 : 0);
+                        break;
+                    default:
+                        // Ids, versions and dates are mostly increasing, so deltas keep the varints short
+                        long number = toLong(value, columns[c]);
+                        long delta = number - previous;
+                        writeVarint(raw, (delta << 1) ^ (delta >> 63));
+                        previous = number;
+                        break;
+                }
+            }
+            Arrays.fill(values, 0, rows, null);
+        }
+
+        byte[] bytes = raw.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 3 + 64);
+        byte[] chunk = new byte[1 << 16];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+
+        out.writeInt(rows);
+        out.writeInt(bytes.length);
+        out.writeInt(compressed.size());
+        out.writeInt((int) crc.getValue());
+        compressed.writeTo(out);
+    }
+
+    private static long toLong(Object value, Column column) {
+        switch (column.type) {
+            case DECIMAL:
+                return ((BigDecimal) value).setScale(column.scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+            case DATE:
+                return ((LocalDate) value).toEpochDay();
+            case TIMESTAMP:
+                return ((LocalDateTime) value).toInstant(ZoneOffset.UTC).toEpochMilli();
+            default:
+                return (Long) value;
+        }
+    }
+
+    private static Object fromLong(long number, Column column) {
+        switch (column.type) {
+            case DECIMAL:
+                return BigDecimal.valueOf(number, column.scale);
+            case DATE:
+                return LocalDate.ofEpochDay(number);
+            case TIMESTAMP:
+                return LocalDateTime.ofEpochSecond(Math.floorDiv(number, 1000L),
+                        (int) Math.floorMod(number, 1000L) * 1_000_000, ZoneOffset.UTC);
+            default:
+                return number;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer buf) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private static Object[][] readBlock(DataInputStream in, Inflater inflater, String table,
+                                        Column[] columns, int rows) throws IOException {
+        byte[] raw = new byte[in.readInt()];
+        byte[] compressed = new byte[in.readInt()];
+        int checksum = in.readInt();
+        in.readFully(compressed);
+
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, raw.length - length);
+                if (n == 0 && inflater.needsInput()) break;
+                length += n;
+            }
+            if (length != raw.length) throw new IOException("truncated block in " + table);
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt block in " + table, e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if ((int) crc.getValue() != checksum) throw new IOException("checksum mismatch in a block of " + table);
+
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        Object[][] block = new Object[columns.length][rows];
+        for (int c = 0; c < columns.length; c++) {
+            byte[] nulls = new byte[(rows + 7) / 8];
+            buf.get(nulls);
+            long previous = 0;
+            for (int r = 0; r < rows; r++) {
+                if ((nulls[r >> 3] & (1 << (r & 7))) != 0) continue;
+                switch (columns[c].type) {
+                    case STRING:
+                        byte[] bytes = new byte[(int) readVarint(buf)];
+                        buf.get(bytes);
+                        block[c][r] = new String(bytes, StandardCharsets.UTF_8);
+                        break;
+                    case DOUBLE:
+                        block[c][r] = buf.getDouble();
+                        break;
+                    case BOOLEAN:
+                        block[c][r] = buf.get() != 0;
+                        break;
+                    default:
+                        long zigzag = readVarint(buf);
+                        previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                        block[c][r] = fromLong(previous, columns[c]);
+                        break;
+                }
+            }
+        }
+        return block;
+    }
+
+    private static int loadTable(Connection conn, DataInputStream in, Inflater inflater, String table,
+                                 Column[] columns) throws SQLException, IOException {
+        // Columns the target no longer has are skipped; ones it gained keep their defaults
+        Set<String> targetColumns = columnsOf(conn, table);
+        List<Integer> kept = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int c = 0; c < columns.length; c++) {
+            if (!targetColumns.contains(columns[c].name.toLowerCase(Locale.ROOT))) continue;
+            kept.add(c);
+            names.add(columns[c].name);
+        }
+        String insert = "INSERT INTO " + table + " (" + String.join(", ", names) + ") VALUES ";
+        String row = "(" + SqlSupport.placeholders(kept.size()) + ")";
+        int perInsert = Math.max(1, Math.min(ROWS_PER_INSERT, MAX_PARAMETERS / Math.max(1, kept.size())));
+
+        conn.setAutoCommit(false);
+        try (PreparedStatement full = conn.prepareStatement(insert + String.join(", ", Collections.nCopies(perInsert, row)))) {
+            int total = 0;
+            for (int rows = in.readInt(); rows > 0; rows = in.readInt()) {
+                Object[][] block = readBlock(in, inflater, table, columns, rows);
+                int from = 0;
+                for (; from + perInsert <= rows; from += perInsert) {
+                    bindRows(full, block, kept, from, perInsert);
+                    full.executeUpdate();
+                }
+                if (from < rows) {
+                    try (PreparedStatement rest = conn.prepareStatement(
+                            insert + String.join(", ", Collections.nCopies(rows - from, row)))) {
+                        bindRows(rest, block, kept, from, rows - from);
+                        rest.executeUpdate();
+                    }
+                }
+                conn.commit();
+                total += rows;
+            }
+            return total;
+        } catch (SQLException | IOException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void bindRows(PreparedStatement pstmt, Object[][] block, List<Integer> kept,
+                                 int from, int count) throws SQLException {
+        int index = 1;
+        for (int r = from; r < from + count; r++) {
+            for (int c : kept) {
+                pstmt.setObject(index++, block[c][r]);
+            }
+        }
+    }
+
+    private static Set<String> columnsOf(Connection conn, String table) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        String query = "SELECT column_name FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, table);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) columns.add(rs.getString(1).toLowerCase(Locale.ROOT));
+        }
+        return columns;
+    }
+
+    /** Drops the secondary indexes no foreign key depends on and returns the ALTER clauses that recreate them. */
+    private static List<String> dropSecondaryIndexes(Connection conn, String table) throws SQLException {
+        Set<String> foreignKeyColumns = new HashSet<>();
+        String keys = "SELECT column_name FROM information_schema.key_column_usage " +
+                "WHERE table_schema = DATABASE() AND table_name = ? AND referenced_table_name IS NOT NULL";
+        try (PreparedStatement pstmt = conn.prepareStatement(keys)) {
+            pstmt.setString(1, table);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) foreignKeyColumns.add(rs.getString(1).toLowerCase(Locale.ROOT));
+        }
+
+        Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+        Set<String> unique = new HashSet<>();
+        String statistics = "SELECT index_name, non_unique, column_name, sub_part FROM information_schema.statistics " +
+                "WHERE table_schema = DATABASE() AND table_name = ? AND index_name <> 'PRIMARY' " +
+                "ORDER BY index_name, seq_in_index";
+        try (PreparedStatement pstmt = conn.prepareStatement(statistics)) {
+            pstmt.setString(1, table);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                String index = rs.getString(1);
+                if (rs.getInt(2) == 0) unique.add(index);
+                String column = rs.getString(3);
+                int prefix = rs.getInt(4);
+                if (!rs.wasNull()) column += "(" + prefix + ")";
+                indexColumns.computeIfAbsent(index, k -> new ArrayList<>()).add(column);
+            }
+        }
+
+        List<String> drops = new ArrayList<>();
+        List<String> adds = new ArrayList<>();
+        for (Map.Entry<String, List<String>> index : indexColumns.entrySet()) {
+            String first = index.getValue().get(0).replaceFirst("\\(\\d+\\)$", "").toLowerCase(Locale.ROOT);
+            if (foreignKeyColumns.contains(first)) continue;
+            drops.add("DROP INDEX " + index.getKey());
+            adds.add((unique.contains(index.getKey()) ? "ADD UNIQUE INDEX " : "ADD INDEX ") +
+                    index.getKey() + " (" + String.join(", ", index.getValue()) + ")");
+        }
+        if (!drops.isEmpty()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE " + table + " " + String.join(", ", drops));
+            }
+        }
+        return adds;
+    }
+}
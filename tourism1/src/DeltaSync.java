@@ -0,0 +1,318 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pulls rows changed by other clients since the last poll.
+ *
+ * Every insert and update stamps the row with a version from the sync clock and every delete
+ * leaves a tombstone stamped the same way (see createSchema). The clock has SHARDS rows and each
+ * connection draws from its own (CONNECTION_ID() % SHARDS), so concurrent writers do not queue on
+ * one row lock. A shard's versions stay in its residue class modulo SHARDS, so they never collide,
+ * and follow the server time in microseconds, so the shards advance together.
+ *
+ * A shard row stays locked until the writing transaction commits, so within a shard versions become
+ * visible in increasing order. Across shards they do not, so a poll only takes rows up to a horizon
+ * below which every version has committed: a shard that is not locked can only hand out versions
+ * from the current time on, and a locked one none below the time it was last seen unlocked. An open
+ * write transaction therefore holds back delivery of newer changes until it ends, but not writes.
+ * An idle poll costs one read of the clock rows.
+ */
+class DeltaSync {
+    static final String[] TABLES = {"destinations", "tours", "customers", "bookings"};
+    static final String[] ENTITIES = {"destination", "tour", "customer", "booking"};
+    static final int SHARDS = 16;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final long INTERVAL_MS = Long.getLong("tourism.sync.intervalMs", 2000);
+    // Slack for the server clock stepping back between a poll and a write, in versions (microseconds)
+    private static final long CLOCK_SLACK = 1_000_000;
+    private static final String SHARD = "CONNECTION_ID() % " + SHARDS;
+    private static final String NOW = "FLOOR(UNIX_TIMESTAMP(SYSDATE(6)) * 1000000)";
+
+    interface Listener {
+        // Called on the sync thread; deletions in a delta are older than or unrelated to its upserts, so apply them first
+        void onDelta(Delta delta, Connection conn) throws SQLException;
+    }
+
+    static class Delta {
+        final List<Destination> destinations = new ArrayList<>();
+        final List<Tour> tours = new ArrayList<>();
+        final List<Customer> customers = new ArrayList<>();
+        final List<Booking> bookings = new ArrayList<>();
+        // entity name ("destination", "tour", ...) -> deleted ids
+        final Map<String, List<String>> deleted = new HashMap<>();
+
+        boolean isEmpty() {
+            return destinations.isEmpty() && tours.isEmpty() && customers.isEmpty() &&
+                    bookings.isEmpty() && deleted.isEmpty();
+        }
+    }
+
+    private final Listener listener;
+    private ScheduledExecutorService scheduler;
+    private Connection conn;
+
+    // Per shard, the server time (in versions) at which it was last seen unlocked
+    private final long[] freeAt = new long[SHARDS];
+    private volatile long[] clockSeen;
+    private long horizonSeen = -1;
+    private long destinationsSeen, toursSeen, customersSeen, bookingsSeen, tombstonesSeen;
+
+    DeltaSync(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Creates the sync clock, the tombstone table and the version columns and triggers on the four entity tables. */
+    static void createSchema(Connection conn) throws SQLException {
+        boolean singleRowClock;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS sync_clock (" +
+                    "id TINYINT PRIMARY KEY, " +
+                    "version BIGINT NOT NULL)");
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sync_clock")) {
+                rs.next();
+                singleRowClock = rs.getInt(1) < SHARDS;
+            }
+            StringBuilder shards = new StringBuilder();
+            for (int id = 0; id < SHARDS; id++) shards.append(id == 0 ? "" : ", ").append("(").append(id).append(", 0)");
+            stmt.execute("INSERT IGNORE INTO sync_clock (id, version) VALUES " + shards);
+
+            stmt.execute("CREATE TABLE IF NOT EXISTS sync_tombstones (" +
+                    "entity VARCHAR(20) NOT NULL, " +
+                    "id VARCHAR(10) NOT NULL, " +
+                    "version BIGINT NOT NULL, " +
+                    "deleted_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+                    "PRIMARY KEY (entity, id), " +
+                    "INDEX idx_sync_tombstones_version (version))");
+        }
+        // Triggers of the single-row clock of earlier versions are replaced by the sharded ones
+        if (singleRowClock) dropTriggers(conn);
+
+        String nextVersion = "UPDATE sync_clock SET version = LAST_INSERT_ID(GREATEST(version + " + SHARDS + ", " +
+                NOW + " DIV " + SHARDS + " * " + SHARDS + " + id)) WHERE id = " + SHARD + "; ";
+        for (int i = 0; i < TABLES.length; i++) {
+            String table = TABLES[i];
+            SqlSupport.ensureColumn(conn, table, "version", "BIGINT NOT NULL DEFAULT 0");
+            SqlSupport.ensureColumn(conn, table, "updated_at",
+                    "TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)");
+            SqlSupport.ensureIndex(conn, table, "idx_" + table + "_version", "version");
+
+            SqlSupport.ensureTrigger(conn, "trg_" + table + "_version_insert",
+                    "CREATE TRIGGER trg_" + table + "_version_insert BEFORE INSERT ON " + table + " FOR EACH ROW " +
+                            "BEGIN " + nextVersion + "SET NEW.version = LAST_INSERT_ID(); END");
+            SqlSupport.ensureTrigger(conn, "trg_" + table + "_version_update",
+                    "CREATE TRIGGER trg_" + table + "_version_update BEFORE UPDATE ON " + table + " FOR EACH ROW " +
+                            "BEGIN " + nextVersion + "SET NEW.version = LAST_INSERT_ID(); END");
+            SqlSupport.ensureTrigger(conn, "trg_" + table + "_tombstone",
+                    "CREATE TRIGGER trg_" + table + "_tombstone AFTER DELETE ON " + table + " FOR EACH ROW " +
+                            "BEGIN " + nextVersion +
+                            "INSERT INTO sync_tombstones (entity, id, version) VALUES ('" + ENTITIES[i] + "', OLD.id, LAST_INSERT_ID()) " +
+                            "ON DUPLICATE KEY UPDATE version = VALUES(version), deleted_at = CURRENT_TIMESTAMP(3); END");
+        }
+    }
+
+    /** Drops the version and tombstone triggers of the four entity tables; createSchema puts them back. */
+    static void dropTriggers(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : TABLES) {
+                for (String trigger : new String[]{"_version_insert", "_version_update", "_tombstone"}) {
+                    stmt.execute("DROP TRIGGER IF EXISTS trg_" + table + trigger);
+                }
+            }
+        }
+    }
+
+    /**
+     * Leaves a tombstone for every row of table, for rows that leave the entity's table without a
+     * DELETE (such as an exchanged and dropped partition), so other clients drop them as well.
+     */
+    static int writeTombstones(Connection conn, String entity, String table) throws SQLException {
+        return SqlSupport.inTransaction(conn, c -> {
+            int count;
+            try (Statement stmt = c.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                rs.next();
+                count = rs.getInt(1);
+            }
+            if (count == 0) return 0;
+
+            // One version per row from this connection's shard, as the delete trigger would take
+            long last;
+            try (PreparedStatement pstmt = c.prepareStatement(
+                    "UPDATE sync_clock SET version = LAST_INSERT_ID(GREATEST(version, " +
+                            NOW + " DIV " + SHARDS + " * " + SHARDS + " + id) + ? * " + SHARDS + ") WHERE id = " + SHARD)) {
+                pstmt.setInt(1, count);
+                pstmt.executeUpdate();
+            }
+            try (Statement stmt = c.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT LAST_INSERT_ID()")) {
+                rs.next();
+                last = rs.getLong(1);
+            }
+            try (PreparedStatement pstmt = c.prepareStatement(
+                    "INSERT INTO sync_tombstones (entity, id, version) " +
+                            "SELECT ?, id, ? + ROW_NUMBER() OVER (ORDER BY id) * " + SHARDS + " FROM " + table + " " +
+                            "ON DUPLICATE KEY UPDATE version = VALUES(version), deleted_at = CURRENT_TIMESTAMP(3)")) {
+                pstmt.setString(1, entity);
+                pstmt.setLong(2, last - (long) count * SHARDS);
+                return pstmt.executeUpdate();
+            }
+        });
+    }
+
+    /** The committed version of each clock shard; a connection has seen a change once its shard reaches the change's version. */
+    static long[] clockOf(Connection conn) throws SQLException {
+        long[] clock = new long[SHARDS];
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, version FROM sync_clock WHERE id < " + SHARDS)) {
+            while (rs.next()) clock[rs.getInt(1)] = rs.getLong(2);
+        }
+        return clock;
+    }
+
+    /** True when clock has reached every shard of required; a null requirement is always met. */
+    static boolean covers(long[] clock, long[] required) {
+        if (required == null) return true;
+        for (int s = 0; s < SHARDS; s++) {
+            if (clock[s] < required[s]) return false;
+        }
+        return true;
+    }
+
+    /** The shard-wise maximum of two clocks, either of which may be null. */
+    static long[] latest(long[] a, long[] b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        long[] max = new long[SHARDS];
+        for (int s = 0; s < SHARDS; s++) max[s] = Math.max(a[s], b[s]);
+        return max;
+    }
+
+    /** The clock up to which changes have been delivered to the listener, or null before the first poll. */
+    public long[] seenClock() {
+        return clockSeen;
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "delta-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::pollSafely, 0, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+        closeConnection();
+    }
+
+    private void pollSafely() {
+        try {
+            if (conn == null || !conn.isValid(2)) {
+                closeConnection();
+                conn = Database.connect();
+            }
+            if (horizonSeen < 0) {
+                // Everything up to now is covered by the full loads the UI does when a table is opened
+                horizonSeen = horizon(clockOf(conn));
+                destinationsSeen = toursSeen = customersSeen = bookingsSeen = tombstonesSeen = horizonSeen;
+                return;
+            }
+
+            Delta delta = poll();
+            if (!delta.isEmpty()) {
+                listener.onDelta(delta, conn);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            closeConnection();
+        }
+    }
+
+    private Delta poll() throws SQLException {
+        Delta delta = new Delta();
+        long[] clock = clockOf(conn);
+        long newest = Long.MIN_VALUE;
+        for (long version : clock) newest = Math.max(newest, version);
+        if (newest <= horizonSeen) return delta;
+
+        long horizon = horizon(clock);
+        List<Destination> destinations = Destination.getChangedSince(conn, destinationsSeen, horizon, BATCH_SIZE);
+        delta.destinations.addAll(destinations);
+        destinationsSeen = destinations.size() < BATCH_SIZE ? horizon : destinations.get(BATCH_SIZE - 1).getVersion();
+
+        List<Tour> tours = Tour.getChangedSince(conn, toursSeen, horizon, BATCH_SIZE);
+        delta.tours.addAll(tours);
+        toursSeen = tours.size() < BATCH_SIZE ? horizon : tours.get(BATCH_SIZE - 1).getVersion();
+
+        List<Customer> customers = Customer.getChangedSince(conn, customersSeen, horizon, BATCH_SIZE);
+        delta.customers.addAll(customers);
+        customersSeen = customers.size() < BATCH_SIZE ? horizon : customers.get(BATCH_SIZE - 1).getVersion();
+
+        List<Booking> bookings = Booking.getChangedSince(conn, bookingsSeen, horizon, BATCH_SIZE);
+        delta.bookings.addAll(bookings);
+        bookingsSeen = bookings.size() < BATCH_SIZE ? horizon : bookings.get(BATCH_SIZE - 1).getVersion();
+
+        int tombstones = 0;
+        long lastTombstone = tombstonesSeen;
+        String query = "SELECT entity, id, version FROM sync_tombstones WHERE version > ? AND version <= ? ORDER BY version LIMIT ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setLong(1, tombstonesSeen);
+            pstmt.setLong(2, horizon);
+            pstmt.setInt(3, BATCH_SIZE);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                delta.deleted.computeIfAbsent(rs.getString("entity"), k -> new ArrayList<>()).add(rs.getString("id"));
+                lastTombstone = rs.getLong("version");
+                tombstones++;
+            }
+        }
+        tombstonesSeen = tombstones < BATCH_SIZE ? horizon : lastTombstone;
+
+        // Only mark the horizon as reached once no table had more than one batch pending
+        boolean drained = destinationsSeen == horizon && toursSeen == horizon && customersSeen == horizon &&
+                bookingsSeen == horizon && tombstonesSeen == horizon;
+        if (drained) horizonSeen = horizon;
+        clockSeen = latest(clockSeen, clock);
+        return delta;
+    }
+
+    // The version up to which every change has committed, given the committed clock read just before
+    private long horizon(long[] committed) throws SQLException {
+        // Skips the shards an open write transaction holds; a shared lock on the others is released at once
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, version, " + NOW + " FROM sync_clock WHERE id < " + SHARDS +
+                     " FOR SHARE SKIP LOCKED")) {
+            while (rs.next()) {
+                int shard = rs.getInt(1);
+                committed[shard] = Math.max(committed[shard], rs.getLong(2));
+                freeAt[shard] = rs.getLong(3);
+            }
+        }
+
+        long horizon = Long.MAX_VALUE;
+        for (int s = 0; s < SHARDS; s++) {
+            // The next version of a shard is at least the time it is taken, less one step
+            long next = freeAt[s] == 0 ? 0 : freeAt[s] - SHARDS - CLOCK_SLACK;
+            horizon = Math.min(horizon, Math.max(committed[s], next));
+        }
+        return horizon;
+    }
+
+    private void closeConnection() {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+            }
+            conn = null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import java.sql.Date;
+import java.sql.SQLException;
+
+/** Thrown by Booking.save when the tour has too few seats left on the travel date. */
+class DepartureFullException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final String tourId;
+    private final Date travelDate;
+    private final int seatsLeft;
+
+    DepartureFullException(String tourId, Date travelDate, int seatsLeft) {
+        super("Tour " + tourId + " on " + travelDate + " has " + seatsLeft + " seat(s) left");
+        this.tourId = tourId;
+        this.travelDate = travelDate;
+        this.seatsLeft = seatsLeft;
+    }
+
+    public String getTourId() { return tourId; }
+    public Date getTravelDate() { return travelDate; }
+    public int getSeatsLeft() { return seatsLeft; }
+}
@@ -0,0 +1,72 @@
+/**
+ * One changed row of a domain entity, as published through DomainEvents.
+ *
+ * CREATED and UPDATED events carry the row as it is now (a Destination, Tour, Customer or Booking,
+ * matching entity); subscribers that do not hold the row yet treat UPDATED as an insert, since
+ * changes reported by DeltaSync cannot tell the two apart. DELETED events carry no row.
+ */
+final class DomainEvent {
+    enum Entity {
+        DESTINATION("destination"),
+        TOUR("tour"),
+        CUSTOMER("customer"),
+        BOOKING("booking");
+
+        /** Name used for panels, tables and DeltaSync tombstones. */
+        final String key;
+
+        Entity(String key) {
+            this.key = key;
+        }
+
+        static Entity fromKey(String key) {
+            for (Entity entity : values()) {
+                if (entity.key.equals(key)) return entity;
+            }
+            throw new IllegalArgumentException("Unknown entity: " + key);
+        }
+    }
+
+    enum Change {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    final Entity entity;
+    final String id;
+    final Change change;
+    final Object row;
+
+    DomainEvent(Entity entity, String id, Change change, Object row) {
+        this.entity = entity;
+        this.id = id;
+        this.change = change;
+        this.row = row;
+    }
+
+    static DomainEvent saved(Entity entity, String id, boolean created, Object row) {
+        return new DomainEvent(entity, id, created ? Change.CREATED : Change.UPDATED, row);
+    }
+
+    static DomainEvent deleted(Entity entity, String id) {
+        return new DomainEvent(entity, id, Change.DELETED, null);
+    }
+
+    String key() {
+        return entity.key + ":" + id;
+    }
+
+    /** Coalesces two events for the same row: the later state wins, but a row created meanwhile stays CREATED. */
+    DomainEvent followedBy(DomainEvent later) {
+        if (change == Change.CREATED && later.change == Change.UPDATED) {
+            return new DomainEvent(later.entity, later.id, Change.CREATED, later.row);
+        }
+        return later;
+    }
+
+    @Override
+    public String toString() {
+        return change + " " + key();
+    }
+}
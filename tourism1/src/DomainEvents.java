@@ -0,0 +1,112 @@
+import javax.swing.*;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bus for DomainEvents published by the entity write methods and by DeltaSync.
+ *
+ * Two kinds of subscribers:
+ * - subscribe: called synchronously on the publishing thread, right after the write succeeded.
+ *   For in-memory indexes that must never lag behind a write; they have to be quick.
+ * - subscribeOnEdt: called on the EDT at most once per frame (FRAME_MS) with everything published
+ *   since the last call, coalesced to one event per row. For views, so a burst of a thousand
+ *   changes costs one repaint instead of a thousand.
+ */
+final class DomainEvents {
+    interface Listener {
+        void onEvents(List<DomainEvent> events);
+    }
+
+    private static final int FRAME_MS = 16;
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final List<Listener> EDT_LISTENERS = new CopyOnWriteArrayList<>();
+
+    // Guarded by DomainEvents.class
+    private static final Map<String, DomainEvent> pending = new LinkedHashMap<>();
+    private static Timer frame;
+
+    private DomainEvents() {
+    }
+
+    static void subscribe(Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    static void subscribeOnEdt(Listener listener) {
+        EDT_LISTENERS.add(listener);
+    }
+
+    static void unsubscribe(Listener listener) {
+        LISTENERS.remove(listener);
+        EDT_LISTENERS.remove(listener);
+    }
+
+    static void publish(DomainEvent event) {
+        publish(Collections.singletonList(event));
+    }
+
+    static void publish(List<DomainEvent> events) {
+        if (events.isEmpty()) return;
+        for (Listener listener : LISTENERS) {
+            try {
+                listener.onEvents(events);
+            } catch (RuntimeException e) {
+                // The write itself already succeeded; one broken subscriber must not fail it
+                e.printStackTrace();
+            }
+        }
+        if (EDT_LISTENERS.isEmpty()) return;
+
+        synchronized (DomainEvents.class) {
+            for (DomainEvent event : events) {
+                pending.merge(event.key(), event, DomainEvent::followedBy);
+            }
+            if (frame == null) {
+                frame = new Timer(FRAME_MS, e -> flush());
+                frame.setRepeats(false);
+            }
+            if (!frame.isRunning()) frame.start();
+        }
+    }
+
+    /**
+     * Publishes the deletions of a set-based delete. When fewer rows went than were asked for, the
+     * ones still in the table are looked up so only real deletions are reported.
+     */
+    static void publishDeleted(Connection conn, DomainEvent.Entity entity, String table,
+                               List<String> ids, int deleted) throws SQLException {
+        if (deleted == 0) return;
+        Set<String> kept = deleted == ids.size() ? Collections.emptySet()
+                : new HashSet<>(SqlSupport.selectIds(conn, "SELECT id FROM " + table + " WHERE id IN", ids));
+        List<DomainEvent> events = new ArrayList<>();
+        for (String id : ids) {
+            if (!kept.contains(id)) events.add(DomainEvent.deleted(entity, id));
+        }
+        publish(events);
+    }
+
+    // EDT
+    private static void flush() {
+        List<DomainEvent> batch;
+        synchronized (DomainEvents.class) {
+            batch = Collections.unmodifiableList(new ArrayList<>(pending.values()));
+            pending.clear();
+        }
+        if (batch.isEmpty()) return;
+        for (Listener listener : EDT_LISTENERS) {
+            try {
+                listener.onEvents(batch);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+import java.sql.SQLException;
+
+/** Thrown by Customer.save when another customer already has the same email or phone. */
+class DuplicateCustomerException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final Customer existing;
+
+    DuplicateCustomerException(Customer existing) {
+        super("Customer " + existing.getId() + " (" + existing.getName() + ") has the same email or phone");
+        this.existing = existing;
+    }
+
+    public Customer getExisting() { return existing; }
+}
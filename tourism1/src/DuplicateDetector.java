@@ -0,0 +1,286 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds customers that share a normalized email address or phone number.
+ *
+ * Normalized values are stored in the indexed email_norm / phone_norm columns. A Bloom filter over
+ * all normalized values answers "definitely new" without a round trip for the vast majority of
+ * inserts; only possible matches are confirmed with an indexed lookup. The filter learns about
+ * other clients' customers through DeltaSync, so it can lag by one sync interval.
+ *
+ * The shared filter is built once at startup on a background connection (load). Until that
+ * finishes every value counts as a possible match, so checks fall back to the indexed lookups.
+ */
+class DuplicateDetector {
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 7;
+    private static final String EMAIL = "e:";
+    private static final String PHONE = "p:";
+    // Replaced by load; customers saved meanwhile are covered by the indexed lookups and the load's scan
+    private static DuplicateDetector instance = new DuplicateDetector(0);
+
+    private final BitSet bits;
+    private final int bitCount;
+    private volatile boolean loaded;
+
+    private DuplicateDetector(int expectedEntries) {
+        bitCount = Math.max(1024, expectedEntries * BITS_PER_ENTRY);
+        bits = new BitSet(bitCount);
+    }
+
+    static void createSchema(Connection conn) throws SQLException {
+        SqlSupport.ensureColumn(conn, "customers", "email_norm", "VARCHAR(50)");
+        SqlSupport.ensureColumn(conn, "customers", "phone_norm", "VARCHAR(20)");
+        SqlSupport.ensureIndex(conn, "customers", "idx_customers_email_norm", "email_norm");
+        SqlSupport.ensureIndex(conn, "customers", "idx_customers_phone_norm", "phone_norm");
+
+        // Backfill rows written before the normalized columns existed
+        List<String[]> pending = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, email, phone FROM customers WHERE email_norm IS NULL")) {
+            while (rs.next()) {
+                pending.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3)});
+            }
+        }
+        if (pending.isEmpty()) return;
+
+        SqlSupport.inTransaction(conn, c -> {
+            try (PreparedStatement pstmt = c.prepareStatement(
+                    "UPDATE customers SET email_norm = ?, phone_norm = ? WHERE id = ?")) {
+                for (String[] row : pending) {
+                    pstmt.setString(1, normalizeEmail(row[1]));
+                    pstmt.setString(2, normalizePhone(row[2]));
+                    pstmt.setString(3, row[0]);
+                    pstmt.addBatch();
+                }
+                return pstmt.executeBatch().length;
+            }
+        });
+    }
+
+    /** The shared detector; never queries, so it is safe to call on the event dispatch thread. */
+    static synchronized DuplicateDetector instance() {
+        return instance;
+    }
+
+    /** Feeds customers changed by other clients into the shared detector. */
+    static void observe(List<Customer> customers) {
+        DuplicateDetector detector = instance();
+        for (Customer c : customers) detector.add(c);
+    }
+
+    /**
+     * Builds the shared detector from the customers table, streaming it over conn; meant for a
+     * connection of its own off the event dispatch thread. Customers saved during the scan are
+     * added to the new detector as well.
+     */
+    static DuplicateDetector load(Connection conn) throws SQLException {
+        int count;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM customers")) {
+            rs.next();
+            count = rs.getInt(1);
+        }
+
+        // Two keys per customer, sized for the table to double before the false-positive rate
+        // (about 1% at 10 bits per key) degrades; a full filter only costs extra lookups, never misses
+        DuplicateDetector detector = new DuplicateDetector(2 * (2 * count + 1000));
+        // Published before the scan, so a customer committed after the scan started is still added
+        synchronized (DuplicateDetector.class) {
+            instance = detector;
+        }
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            ResultSet rs = stmt.executeQuery("SELECT email_norm, phone_norm FROM customers");
+            while (rs.next()) {
+                String email = rs.getString(1);
+                String phone = rs.getString(2);
+                synchronized (detector) {
+                    detector.addKey(EMAIL + email);
+                    detector.addKey(PHONE + phone);
+                }
+            }
+        }
+        detector.loaded = true;
+        return detector;
+    }
+
+    static String normalizeEmail(String email) {
+        if (email == null) return "";
+        String value = email.trim().toLowerCase(Locale.ROOT);
+        int at = value.indexOf('@');
+        int plus = value.indexOf('+');
+        // Sub-addresses ("name+tag@host") reach the same mailbox
+        if (plus > 0 && plus < at) {
+            value = value.substring(0, plus) + value.substring(at);
+        }
+        return value;
+    }
+
+    static String normalizePhone(String phone) {
+        if (phone == null) return "";
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < phone.length(); i++) {
+            char ch = phone.charAt(i);
+            if (ch >= '0' && ch <= '9') digits.append(ch);
+        }
+        // Compare the subscriber number only, so "+91 98..." and "098..." match
+        return digits.length() > 10 ? digits.substring(digits.length() - 10) : digits.toString();
+    }
+
+    /** Records a saved customer so later checks see it. */
+    public synchronized void add(Customer customer) {
+        addKey(EMAIL + normalizeEmail(customer.getEmail()));
+        addKey(PHONE + normalizePhone(customer.getPhone()));
+    }
+
+    /** Returns an existing customer with the same email or phone, or null. Most new customers need no query. */
+    public Customer findDuplicate(Connection conn, Customer customer) throws SQLException {
+        String email = normalizeEmail(customer.getEmail());
+        String phone = normalizePhone(customer.getPhone());
+        boolean emailHit;
+        boolean phoneHit;
+        synchronized (this) {
+            emailHit = !email.isEmpty() && (!loaded || mightContain(EMAIL + email));
+            phoneHit = !phone.isEmpty() && (!loaded || mightContain(PHONE + phone));
+        }
+        if (!emailHit && !phoneHit) return null;
+        return Customer.findByNormalizedContact(conn, emailHit ? email : null, phoneHit ? phone : null,
+                customer.getId());
+    }
+
+    /**
+     * Drops the customers of a batch that duplicate an existing customer or an earlier row of the
+     * same batch. Only Bloom filter hits are confirmed, with one indexed IN query per chunk.
+     */
+    public List<Customer> filterNew(Connection conn, List<Customer> batch) throws SQLException {
+        Set<String> seenInBatch = new HashSet<>();
+        List<Customer> unique = new ArrayList<>();
+        List<String> candidateEmails = new ArrayList<>();
+        List<String> candidatePhones = new ArrayList<>();
+
+        for (Customer c : batch) {
+            String email = normalizeEmail(c.getEmail());
+            String phone = normalizePhone(c.getPhone());
+            boolean repeated = !email.isEmpty() && !seenInBatch.add(EMAIL + email);
+            repeated |= !phone.isEmpty() && !seenInBatch.add(PHONE + phone);
+            if (repeated) continue;
+
+            unique.add(c);
+            synchronized (this) {
+                if (!email.isEmpty() && (!loaded || mightContain(EMAIL + email))) candidateEmails.add(email);
+                if (!phone.isEmpty() && (!loaded || mightContain(PHONE + phone))) candidatePhones.add(phone);
+            }
+        }
+
+        Set<String> existing = new HashSet<>();
+        for (String value : selectExisting(conn, "email_norm", candidateEmails)) existing.add(EMAIL + value);
+        for (String value : selectExisting(conn, "phone_norm", candidatePhones)) existing.add(PHONE + value);
+        if (existing.isEmpty()) return unique;
+
+        List<Customer> result = new ArrayList<>();
+        for (Customer c : unique) {
+            if (!existing.contains(EMAIL + normalizeEmail(c.getEmail())) &&
+                    !existing.contains(PHONE + normalizePhone(c.getPhone()))) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> selectExisting(Connection conn, String column, List<String> values) throws SQLException {
+        if (values.isEmpty()) return values;
+        return SqlSupport.selectIds(conn, "SELECT DISTINCT " + column + " FROM customers WHERE " + column + " IN", values);
+    }
+
+    /**
+     * Groups existing customers that share a normalized email, a normalized phone, or the same
+     * name with the same last four phone digits. Only groups of two or more are returned.
+     */
+    public static List<List<Customer>> findClusters(Connection conn) throws SQLException {
+        List<Customer> customers = Customer.getAllCustomers(conn);
+        int[] parent = new int[customers.size()];
+        for (int i = 0; i < parent.length; i++) parent[i] = i;
+
+        Map<String, Integer> firstByKey = new HashMap<>();
+        for (int i = 0; i < customers.size(); i++) {
+            Customer c = customers.get(i);
+            String phone = normalizePhone(c.getPhone());
+            String name = c.getName() == null ? "" : c.getName().trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+
+            String email = normalizeEmail(c.getEmail());
+
+            List<String> keys = new ArrayList<>();
+            if (!email.isEmpty()) keys.add(EMAIL + email);
+            if (!phone.isEmpty()) keys.add(PHONE + phone);
+            if (!name.isEmpty() && phone.length() >= 4) keys.add("n:" + name + "|" + phone.substring(phone.length() - 4));
+
+            for (String key : keys) {
+                Integer first = firstByKey.putIfAbsent(key, i);
+                if (first != null) union(parent, first, i);
+            }
+        }
+
+        Map<Integer, List<Customer>> groups = new HashMap<>();
+        for (int i = 0; i < customers.size(); i++) {
+            groups.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(customers.get(i));
+        }
+
+        List<List<Customer>> clusters = new ArrayList<>();
+        for (List<Customer> group : groups.values()) {
+            if (group.size() > 1) clusters.add(group);
+        }
+        return clusters;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) parent[rootB] = rootA;
+    }
+
+    private void addKey(String key) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            bits.set(Math.floorMod(h1 + i * h2, bitCount));
+        }
+    }
+
+    private boolean mightContain(String key) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            if (!bits.get(Math.floorMod(h1 + i * h2, bitCount))) return false;
+        }
+        return true;
+    }
+
+    // FNV-1a, 64 bit
+    private static long hash64(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,135 @@
+import javax.swing.*;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableColumnModel;
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Table cell values that are formatted once, when the row is built, and the renderers that show them.
+ *
+ * moneyValue, dateValue and numberValue wrap a value together with its display text. The wrappers
+ * still are a Number or a Date, so BackgroundRowSorter sorts them by value, while painting a cell
+ * only sets text that already exists. Prices, dates and counts repeat heavily across bookings, so
+ * equal values share one wrapper; a cache that grows past MAX_ENTRIES is simply cleared.
+ */
+class FastCellRenderers {
+    private static final int MAX_ENTRIES = 20_000;
+
+    private static final ThreadLocal<DecimalFormat> MONEY = ThreadLocal.withInitial(() -> new DecimalFormat("#,##0.00"));
+    private static final Map<Object, Object> MONEY_VALUES = new ConcurrentHashMap<>();
+    private static final Map<Object, Object> DATE_VALUES = new ConcurrentHashMap<>();
+    private static final Map<Object, Object> NUMBER_VALUES = new ConcurrentHashMap<>();
+
+    private FastCellRenderers() {
+    }
+
+    /** Marks a cell value that carries its display text. */
+    private interface Formatted {
+    }
+
+    private static final class FormattedNumber extends Number implements Formatted {
+        private static final long serialVersionUID = 1L;
+
+        private final Number value;
+        private final String text;
+
+        FormattedNumber(Number value, String text) {
+            this.value = value;
+            this.text = text;
+        }
+
+        @Override public int intValue() { return value.intValue(); }
+        @Override public long longValue() { return value.longValue(); }
+        @Override public float floatValue() { return value.floatValue(); }
+        @Override public double doubleValue() { return value.doubleValue(); }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FormattedNumber && value.equals(((FormattedNumber) o).value);
+        }
+
+        @Override
+        public int hashCode() { return value.hashCode(); }
+
+        @Override
+        public String toString() { return text; }
+    }
+
+    private static final class FormattedDate extends java.sql.Date implements Formatted {
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+
+        FormattedDate(java.sql.Date date) {
+            super(date.getTime());
+            this.text = date.toString();
+        }
+
+        @Override
+        public String toString() { return text; }
+    }
+
+    private static final class AlignedRenderer extends DefaultTableCellRenderer {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Function<Object, Object> formatter;
+
+        AlignedRenderer(int alignment, Function<Object, Object> formatter) {
+            this.formatter = formatter;
+            setHorizontalAlignment(alignment);
+        }
+
+        @Override
+        protected void setValue(Object value) {
+            if (value == null) {
+                setText("");
+                return;
+            }
+            // Rows built elsewhere may still hold plain values; those are formatted here
+            setText((value instanceof Formatted ? value : formatter.apply(value)).toString());
+        }
+    }
+
+    /** An amount shown with grouping and two decimals, e.g. "12,480.00". */
+    static Object moneyValue(double amount) {
+        return formatted(MONEY_VALUES, amount, v -> new FormattedNumber((Number) v, MONEY.get().format(v)));
+    }
+
+    /** A date shown as stored (yyyy-MM-dd). */
+    static Object dateValue(java.sql.Date date) {
+        return date == null ? null : formatted(DATE_VALUES, date, v -> new FormattedDate((java.sql.Date) v));
+    }
+
+    /** A whole number. */
+    static Object numberValue(int number) {
+        return formatted(NUMBER_VALUES, number, v -> new FormattedNumber((Number) v, v.toString()));
+    }
+
+    private static Object formatted(Map<Object, Object> values, Object value, Function<Object, Object> wrap) {
+        if (value instanceof Formatted) return value;
+        if (values.size() >= MAX_ENTRIES) values.clear();
+        return values.computeIfAbsent(value, wrap);
+    }
+
+    /** Right-aligned amounts; expects moneyValue cells. */
+    static DefaultTableCellRenderer money() {
+        return new AlignedRenderer(SwingConstants.RIGHT, v -> moneyValue(((Number) v).doubleValue()));
+    }
+
+    /** Right-aligned dates; expects dateValue cells. */
+    static DefaultTableCellRenderer date() {
+        return new AlignedRenderer(SwingConstants.RIGHT, v -> v instanceof java.sql.Date ? dateValue((java.sql.Date) v) : v);
+    }
+
+    /** Right-aligned whole numbers; expects numberValue cells. */
+    static DefaultTableCellRenderer number() {
+        return new AlignedRenderer(SwingConstants.RIGHT, v -> v instanceof Integer ? numberValue((Integer) v) : v);
+    }
+
+    static void install(JTable table, int column, DefaultTableCellRenderer renderer) {
+        TableColumnModel columns = table.getColumnModel();
+        columns.getColumn(column).setCellRenderer(renderer);
+    }
+}
@@ -0,0 +1,162 @@
+import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out primary keys from blocks reserved in the id_sequences table (hi/lo).
+ *
+ * Blocks are reserved on a connection kept open for that purpose, never on the caller's, so a
+ * rollback of the caller's transaction can never give a block back to another client. Ids inside a
+ * block are handed out with a single atomic increment. The id is a one-letter entity prefix followed
+ * by nine zero-padded base-36 digits, so it fits VARCHAR(10) and string order is numeric order.
+ *
+ * Ids sort in allocation order only within one block. Clients draw from their own blocks, so with
+ * several clients a newer row can get a smaller id than an older one, and ids say nothing about
+ * creation time (use the version or date columns for that). Inserts still land within a few open
+ * blocks of the right-hand end of the InnoDB primary key index, which is what the layout is for.
+ */
+class IdAllocator {
+    private static final int BLOCK_SIZE = Integer.getInteger("tourism.ids.blockSize", 100);
+    private static final int DIGITS = 9;
+    private static final Map<String, IdAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+    // Shared by all sequences of this process; reservations are serialized on it
+    private static Connection reserveConnection;
+
+    private static final class Block {
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    private final String sequence;
+    private final char prefix;
+    private volatile Block current;
+
+    private IdAllocator(String sequence, char prefix) {
+        this.sequence = sequence;
+        this.prefix = prefix;
+    }
+
+    static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS id_sequences (" +
+                    "name VARCHAR(20) PRIMARY KEY, " +
+                    "next_hi BIGINT NOT NULL)");
+        }
+    }
+
+    /** Next id for "destination", "tour", "customer" or "booking". */
+    static String nextId(String entity) throws SQLException {
+        return ALLOCATORS.computeIfAbsent(entity,
+                e -> new IdAllocator(e, Character.toUpperCase(e.charAt(0)))).next();
+    }
+
+    String next() throws SQLException {
+        while (true) {
+            Block block = current;
+            if (block != null) {
+                long value = block.next.getAndIncrement();
+                if (value < block.end) return format(value);
+            }
+            refill(block);
+        }
+    }
+
+    private synchronized void refill(Block exhausted) throws SQLException {
+        // Another thread may already have replaced the block we found empty
+        if (current != exhausted) return;
+
+        long hi = reserveHi(sequence, 1);
+        current = new Block(hi * BLOCK_SIZE, (hi + 1) * BLOCK_SIZE);
+    }
+
+    /** The id of the given allocation number, as nextId would hand it out. */
+    static String idOf(String entity, long value) {
+        return format(Character.toUpperCase(entity.charAt(0)), value);
+    }
+
+    /** Moves a sequence past ids 0 .. count - 1 written directly (DatasetGenerator), so nextId never repeats them. */
+    static void reserveThrough(Connection conn, String entity, long count) throws SQLException {
+        long hi = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO id_sequences (name, next_hi) VALUES (?, ?) " +
+                        "ON DUPLICATE KEY UPDATE next_hi = GREATEST(next_hi, VALUES(next_hi))")) {
+            pstmt.setString(1, entity);
+            pstmt.setLong(2, hi);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Moves a sequence past the highest id in the table written in this allocator's format, for rows
+     * that were copied in rather than allocated (DatasetSnapshot.restore), and drops this process's
+     * cached blocks, which may predate them.
+     */
+    static void reservePastExisting(Connection conn, String entity, String table) throws SQLException {
+        char prefix = Character.toUpperCase(entity.charAt(0));
+        // Equal length and upper-case base-36 digits make the string order the numeric order
+        String query = "SELECT MAX(id) FROM " + table + " WHERE id REGEXP ?";
+        String max;
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, "^" + prefix + "[0-9A-Z]{" + DIGITS + "}$");
+            ResultSet rs = pstmt.executeQuery();
+            max = rs.next() ? rs.getString(1) : null;
+        }
+        if (max != null) reserveThrough(conn, entity, Long.parseLong(max.substring(1), 36) + 1);
+        ALLOCATORS.remove(entity);
+    }
+
+    /** Reserves {@code blocks} consecutive hi values and returns the first one. */
+    static synchronized long reserveHi(String sequence, int blocks) throws SQLException {
+        if (reserveConnection == null) reserveConnection = Database.connect();
+        try {
+            return reserveHi(reserveConnection, sequence, blocks);
+        } catch (SQLException e) {
+            try {
+                reserveConnection.close();
+            } catch (SQLException ignored) {
+            }
+            reserveConnection = null;
+            throw e;
+        }
+    }
+
+    private static long reserveHi(Connection conn, String sequence, int blocks) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT IGNORE INTO id_sequences (name, next_hi) VALUES (?, 0)")) {
+            pstmt.setString(1, sequence);
+            pstmt.executeUpdate();
+        }
+        // One transaction rather than LAST_INSERT_ID(), which a reconnect between the statements would lose
+        return SqlSupport.inTransaction(conn, c -> {
+            try (PreparedStatement pstmt = c.prepareStatement(
+                    "UPDATE id_sequences SET next_hi = next_hi + ? WHERE name = ?")) {
+                pstmt.setInt(1, blocks);
+                pstmt.setString(2, sequence);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = c.prepareStatement("SELECT next_hi FROM id_sequences WHERE name = ?")) {
+                pstmt.setString(1, sequence);
+                ResultSet rs = pstmt.executeQuery();
+                rs.next();
+                return rs.getLong(1) - blocks;
+            }
+        });
+    }
+
+    private String format(long value) {
+        return format(prefix, value);
+    }
+
+    private static String format(char prefix, long value) {
+        StringBuilder id = new StringBuilder(DIGITS + 1).append(prefix);
+        String digits = Long.toString(value, 36).toUpperCase();
+        for (int i = digits.length(); i < DIGITS; i++) id.append('0');
+        return id.append(digits).toString();
+    }
+}
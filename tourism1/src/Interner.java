@@ -0,0 +1,39 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances for low-cardinality column values (countries and seasons), and pools for the
+ * tour and customer ids repeated across the rows of one load. Row mappers run every such value
+ * through one of these, so a fully loaded table holds one String per distinct value instead of one
+ * per row.
+ *
+ * The shared pools only take values whose number stays small for the life of the application. Ids
+ * grow with the data, so they go through a pool made for the load (forLoad) that is dropped with it.
+ */
+final class Interner {
+    static final Interner COUNTRIES = new Interner(true);
+    static final Interner SEASONS = new Interner(true);
+    /** Keeps nothing; for rows read one at a time. */
+    static final Interner NONE = new Interner(false);
+
+    private final ConcurrentHashMap<String, String> pool;
+
+    private Interner(boolean pooling) {
+        pool = pooling ? new ConcurrentHashMap<>() : null;
+    }
+
+    /** A pool for the duration of one load; it is garbage once the caller drops it. */
+    static Interner forLoad() {
+        return new Interner(true);
+    }
+
+    String intern(String value) {
+        if (value == null || pool == null) return value;
+
+        String canonical = pool.putIfAbsent(value, value);
+        return canonical != null ? canonical : value;
+    }
+
+    int size() {
+        return pool == null ? 0 : pool.size();
+    }
+}
@@ -0,0 +1,208 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Several tours booked by one customer for one trip, saved all-or-nothing.
+ *
+ * Each leg becomes an ordinary booking carrying the itinerary's id in bookings.itinerary_id. Saving
+ * takes a fixed number of statements however many legs there are: one query prices and locks every
+ * tour, one counts the seats already taken on the departures of tours with a capacity, and one
+ * multi-row INSERT writes all bookings, all in one transaction together with the itinerary row and
+ * the customer's confirmation messages.
+ */
+class Itinerary {
+    /** One tour of the trip. */
+    static final class Leg {
+        final String tourId;
+        final Date travelDate;
+        final int numPeople;
+
+        Leg(String tourId, Date travelDate, int numPeople) {
+            this.tourId = tourId;
+            this.travelDate = travelDate;
+            this.numPeople = numPeople;
+        }
+    }
+
+    // Price and seats of a tour, as locked by save
+    private static final class Terms {
+        final double price;
+        final Integer capacity;
+
+        Terms(double price, Integer capacity) {
+            this.price = price;
+            this.capacity = capacity;
+        }
+    }
+
+    private String id;
+    private final String customerId;
+    private final BookingStatus status;
+    private final List<Leg> legs = new ArrayList<>();
+    private final List<Booking> bookings = new ArrayList<>();
+
+    Itinerary(String customerId, BookingStatus status) {
+        if (!status.isInitial()) {
+            throw new IllegalStateException("A new booking cannot start as " + status);
+        }
+        this.customerId = customerId;
+        this.status = status;
+    }
+
+    public String getId() { return id; }
+    public String getCustomerId() { return customerId; }
+    public List<Leg> getLegs() { return Collections.unmodifiableList(legs); }
+    /** The bookings written by save, in leg order. */
+    public List<Booking> getBookings() { return Collections.unmodifiableList(bookings); }
+
+    public void addLeg(String tourId, Date travelDate, int numPeople) {
+        legs.add(new Leg(tourId, travelDate, numPeople));
+    }
+
+    static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS itineraries (" +
+                    "id VARCHAR(10) PRIMARY KEY, " +
+                    "customer_id VARCHAR(10) NOT NULL, " +
+                    "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "INDEX idx_itineraries_customer (customer_id))");
+        }
+        SqlSupport.ensureColumn(conn, "bookings", "itinerary_id", "VARCHAR(10) NULL");
+        SqlSupport.ensureIndex(conn, "bookings", "idx_bookings_itinerary", "itinerary_id");
+    }
+
+    /**
+     * Writes the itinerary and one booking per leg, or nothing at all. Throws DepartureFullException
+     * for the first leg that does not fit, and SQLException for a tour or customer that no longer exists.
+     */
+    public void save(Connection conn) throws SQLException {
+        if (legs.isEmpty()) throw new IllegalStateException("An itinerary needs at least one tour");
+
+        String itineraryId = IdAllocator.nextId("itinerary");
+        List<Booking> written = SqlSupport.inTransaction(conn, c -> {
+            Map<String, Terms> tours = lockTours(c);
+            // Tours before customers, the order Booking.lockParents takes them in
+            if (!SqlSupport.lockById(c, "customers", customerId)) {
+                throw new SQLException("Customer " + customerId + " no longer exists");
+            }
+            checkSeats(c, tours);
+
+            try (PreparedStatement pstmt = c.prepareStatement("INSERT INTO itineraries (id, customer_id) VALUES (?, ?)")) {
+                pstmt.setString(1, itineraryId);
+                pstmt.setString(2, customerId);
+                pstmt.executeUpdate();
+            }
+
+            Date today = Date.valueOf(LocalDate.now());
+            List<Booking> created = new ArrayList<>(legs.size());
+            for (Leg leg : legs) {
+                double price = leg.numPeople * tours.get(leg.tourId).price;
+                created.add(new Booking(IdAllocator.nextId("booking"), leg.tourId, customerId, today,
+                        leg.travelDate, leg.numPeople, price, status.getLabel()));
+            }
+            insertAll(c, itineraryId, created);
+
+            List<String> ids = new ArrayList<>(created.size());
+            for (Booking b : created) ids.add(b.getId());
+            NotificationOutbox.enqueue(c, ids, status);
+            return created;
+        });
+
+        id = itineraryId;
+        bookings.clear();
+        bookings.addAll(written);
+        List<DomainEvent> events = new ArrayList<>(written.size());
+        for (Booking b : written) events.add(DomainEvent.saved(DomainEvent.Entity.BOOKING, b.getId(), true, b));
+        DomainEvents.publish(events);
+    }
+
+    // Prices every leg and holds the tour rows until commit, which keeps the seat counts valid
+    private Map<String, Terms> lockTours(Connection conn) throws SQLException {
+        Set<String> tourIds = new LinkedHashSet<>();
+        for (Leg leg : legs) tourIds.add(leg.tourId);
+
+        Map<String, Terms> tours = new HashMap<>();
+        String query = "SELECT id, price, capacity FROM tours WHERE id IN (" +
+                SqlSupport.placeholders(tourIds.size()) + ") ORDER BY id FOR UPDATE";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            SqlSupport.bind(pstmt, 1, new ArrayList<>(tourIds));
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                int capacity = rs.getInt(3);
+                tours.put(rs.getString(1), new Terms(rs.getDouble(2), rs.wasNull() ? null : capacity));
+            }
+        }
+        for (String tourId : tourIds) {
+            if (!tours.containsKey(tourId)) throw new SQLException("Tour " + tourId + " no longer exists");
+        }
+        return tours;
+    }
+
+    // Legs on the same departure add up, as they would as separate bookings
+    private void checkSeats(Connection conn, Map<String, Terms> tours) throws SQLException {
+        Map<String, Integer> wanted = new HashMap<>();
+        List<Leg> limited = new ArrayList<>();
+        for (Leg leg : legs) {
+            if (tours.get(leg.tourId).capacity == null) continue;
+            String key = leg.tourId + "|" + leg.travelDate;
+            if (!wanted.containsKey(key)) limited.add(leg);
+            wanted.merge(key, leg.numPeople, Integer::sum);
+        }
+        if (limited.isEmpty()) return;
+
+        StringBuilder query = new StringBuilder("SELECT tour_id, travel_date, SUM(num_people) FROM bookings " +
+                "WHERE status <> ? AND (");
+        for (int i = 0; i < limited.size(); i++) {
+            query.append(i == 0 ? "" : " OR ").append("(tour_id = ? AND travel_date = ?)");
+        }
+        query.append(") GROUP BY tour_id, travel_date");
+
+        Map<String, Integer> taken = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(query.toString())) {
+            int index = 1;
+            pstmt.setString(index++, BookingStatus.CANCELLED.getLabel());
+            for (Leg leg : limited) {
+                pstmt.setString(index++, leg.tourId);
+                pstmt.setDate(index++, leg.travelDate);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) taken.put(rs.getString(1) + "|" + rs.getDate(2), rs.getInt(3));
+        }
+
+        for (Leg leg : limited) {
+            String key = leg.tourId + "|" + leg.travelDate;
+            int left = Math.max(0, tours.get(leg.tourId).capacity - taken.getOrDefault(key, 0));
+            if (wanted.get(key) > left) throw new DepartureFullException(leg.tourId, leg.travelDate, left);
+        }
+    }
+
+    private static void insertAll(Connection conn, String itineraryId, List<Booking> created) throws SQLException {
+        StringBuilder query = new StringBuilder("INSERT INTO bookings (id, tour_id, customer_id, booking_date, " +
+                "travel_date, num_people, total_price, status, itinerary_id) VALUES ");
+        for (int i = 0; i < created.size(); i++) {
+            query.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(query.toString())) {
+            int index = 1;
+            for (Booking b : created) {
+                pstmt.setString(index++, b.getId());
+                pstmt.setString(index++, b.getTourId());
+                pstmt.setString(index++, b.getCustomerId());
+                pstmt.setDate(index++, b.getBookingDate());
+                pstmt.setDate(index++, b.getTravelDate());
+                pstmt.setInt(index++, b.getNumPeople());
+                pstmt.setDouble(index++, b.getTotalPrice());
+                pstmt.setString(index++, b.getStatus());
+                pstmt.setString(index++, itineraryId);
+            }
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact local copy of the reference data and the most recent bookings.
+ * Lets the UI come up before the database answers and keeps it readable when
+ * the database cannot be reached at all.
+ */
+class LocalSnapshot {
+    private static final int MAGIC = 0x544D5353; // "TMSS"
+    // 2: tours carry their capacity
+    private static final int FORMAT_VERSION = 2;
+    private static final int NO_CAPACITY = -1;
+    private static final int RECENT_BOOKINGS = Integer.getInteger("tourism.snapshot.bookings", 5000);
+
+    // Two slots are written alternately so a mapped (and, on Windows, locked) file is never replaced in place
+    private static final Path DIR = Paths.get(System.getProperty("user.home"), ".tourism");
+    private static final Path[] SLOTS = {DIR.resolve("snapshot-0.bin"), DIR.resolve("snapshot-1.bin")};
+
+    private final long takenAt;
+    private final List<Destination> destinations;
+    private final List<Tour> tours;
+    private final List<Customer> customers;
+    private final List<Booking> bookings;
+    private int slot = -1;
+
+    private LocalSnapshot(long takenAt, List<Destination> destinations, List<Tour> tours,
+                          List<Customer> customers, List<Booking> bookings) {
+        this.takenAt = takenAt;
+        this.destinations = destinations;
+        this.tours = tours;
+        this.customers = customers;
+        this.bookings = bookings;
+    }
+
+    public long getTakenAt() { return takenAt; }
+    public List<Destination> getDestinations() { return destinations; }
+    public List<Tour> getTours() { return tours; }
+    public List<Customer> getCustomers() { return customers; }
+    public List<Booking> getBookings() { return bookings; }
+
+    public Map<String, String> destinationNames() {
+        Map<String, String> names = new HashMap<>();
+        for (Destination d : destinations) names.put(d.getId(), d.getName());
+        return names;
+    }
+
+    public Map<String, String> tourNames() {
+        Map<String, String> names = new HashMap<>();
+        for (Tour t : tours) names.put(t.getId(), t.getName());
+        return names;
+    }
+
+    public Map<String, String> customerNames() {
+        Map<String, String> names = new HashMap<>();
+        for (Customer c : customers) names.put(c.getId(), c.getName());
+        return names;
+    }
+
+    public static LocalSnapshot capture(Connection conn) throws SQLException {
+        return new LocalSnapshot(System.currentTimeMillis(),
+                Destination.getAllDestinations(conn),
+                Tour.getAllTours(conn),
+                Customer.getAllCustomers(conn),
+                Booking.getRecentBookings(conn, RECENT_BOOKINGS));
+    }
+
+    /** Loads the newest readable slot, or returns null when there is no usable snapshot. */
+    public static LocalSnapshot load() {
+        LocalSnapshot newest = null;
+        for (int i = 0; i < SLOTS.length; i++) {
+            if (!Files.isRegularFile(SLOTS[i])) continue;
+            try {
+                LocalSnapshot candidate = read(SLOTS[i]);
+                if (newest == null || candidate.takenAt > newest.takenAt) {
+                    candidate.slot = i;
+                    newest = candidate;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring unreadable snapshot " + SLOTS[i] + ": " + e.getMessage());
+            }
+        }
+        return newest;
+    }
+
+    /** Writes this snapshot into the slot that was not loaded last. */
+    public void save(LocalSnapshot previous) throws IOException {
+        slot = previous == null || previous.slot < 0 ? 0 : 1 - previous.slot;
+        Files.createDirectories(DIR);
+        Path tmp = SLOTS[slot].resolveSibling(SLOTS[slot].getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(takenAt);
+
+            out.writeInt(destinations.size());
+            for (Destination d : destinations) {
+                writeString(out, d.getId());
+                writeString(out, d.getName());
+                writeString(out, d.getCountry());
+                writeString(out, d.getDescription());
+                writeString(out, d.getBestSeason());
+            }
+
+            out.writeInt(tours.size());
+            for (Tour t : tours) {
+                writeString(out, t.getId());
+                writeString(out, t.getName());
+                writeString(out, t.getDestinationId());
+                out.writeInt(t.getDurationDays());
+                out.writeDouble(t.getPrice());
+                out.writeBoolean(t.isAvailable());
+                out.writeInt(t.getCapacity() != null ? t.getCapacity() : NO_CAPACITY);
+            }
+
+            out.writeInt(customers.size());
+            for (Customer c : customers) {
+                writeString(out, c.getId());
+                writeString(out, c.getName());
+                writeString(out, c.getEmail());
+                writeString(out, c.getPhone());
+                writeString(out, c.getAddress());
+            }
+
+            out.writeInt(bookings.size());
+            for (Booking b : bookings) {
+                writeString(out, b.getId());
+                writeString(out, b.getTourId());
+                writeString(out, b.getCustomerId());
+                out.writeInt((int) b.getBookingDate().toLocalDate().toEpochDay());
+                out.writeInt((int) b.getTravelDate().toLocalDate().toEpochDay());
+                out.writeInt(b.getNumPeople());
+                out.writeDouble(b.getTotalPrice());
+                writeString(out, b.getStatus());
+            }
+        }
+        Files.move(tmp, SLOTS[slot], StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static LocalSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION) {
+                throw new IOException("not a snapshot file or unsupported format version");
+            }
+            long takenAt = buf.getLong();
+            Interner ids = Interner.forLoad();
+
+            int count = buf.getInt();
+            List<Destination> destinations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                destinations.add(new Destination(readString(buf), readString(buf),
+                        Interner.COUNTRIES.intern(readString(buf)), readString(buf),
+                        Interner.SEASONS.intern(readString(buf))));
+            }
+
+            count = buf.getInt();
+            List<Tour> tours = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Tour tour = new Tour(readString(buf), readString(buf), ids.intern(readString(buf)),
+                        buf.getInt(), buf.getDouble(), buf.get() != 0);
+                int capacity = buf.getInt();
+                if (capacity != NO_CAPACITY) tour.setCapacity(capacity);
+                tours.add(tour);
+            }
+
+            count = buf.getInt();
+            List<Customer> customers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                customers.add(new Customer(readString(buf), readString(buf), readString(buf),
+                        readString(buf), readString(buf)));
+            }
+
+            count = buf.getInt();
+            List<Booking> bookings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                bookings.add(new Booking(readString(buf),
+                        ids.intern(readString(buf)), ids.intern(readString(buf)),
+                        Date.valueOf(LocalDate.ofEpochDay(buf.getInt())),
+                        Date.valueOf(LocalDate.ofEpochDay(buf.getInt())),
+                        buf.getInt(), buf.getDouble(), readString(buf)));
+            }
+            return new LocalSnapshot(takenAt, destinations, tours, customers, bookings);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the messages queued in NotificationOutbox.
+ *
+ * Every poll claims a batch of due messages and hands it to the transport in one call, waiting first
+ * for the token bucket so no more than RATE_PER_SECOND messages leave per second. Messages the
+ * transport reports as failed are retried after an exponential backoff with jitter, and marked
+ * Failed after MAX_ATTEMPTS. The transport receives each message's idempotency key, so a batch
+ * re-sent after a crash between delivery and markSent can be deduplicated by the receiver.
+ *
+ * Without a configured transport the dispatcher is not started, so messages stay Pending in the
+ * outbox and go out once a mail server is configured.
+ */
+class NotificationDispatcher {
+    private static final int BATCH_SIZE = Integer.getInteger("tourism.notifications.batchSize", 50);
+    private static final int POLL_SECONDS = Integer.getInteger("tourism.notifications.pollSeconds", 2);
+    private static final int RATE_PER_SECOND = Integer.getInteger("tourism.notifications.ratePerSecond", 10);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("tourism.notifications.maxAttempts", 8);
+    private static final int LEASE_SECONDS = 300;
+    private static final long BASE_BACKOFF_SECONDS = 30;
+    private static final long MAX_BACKOFF_SECONDS = 6 * 60 * 60;
+
+    /** Delivers one batch of messages. */
+    interface Transport {
+        /**
+         * Returns the messages that could not be delivered, keyed by idempotency key, with the reason.
+         * Throwing fails the whole batch, for instance when the mail server is unreachable.
+         */
+        Map<String, String> send(List<NotificationOutbox.Message> batch) throws IOException;
+    }
+
+    /**
+     * Writes messages to standard output and reports them delivered, for development only; select it
+     * with -Dtourism.notifications.transport=NotificationDispatcher$LogTransport.
+     */
+    static final class LogTransport implements Transport {
+        @Override
+        public Map<String, String> send(List<NotificationOutbox.Message> batch) {
+            for (NotificationOutbox.Message m : batch) {
+                System.out.println("Notification " + m.idempotencyKey + " to " + m.recipient + ": " + m.subject);
+            }
+            return Collections.emptyMap();
+        }
+    }
+
+    private final Transport transport;
+    private ScheduledExecutorService scheduler;
+    private double tokens = RATE_PER_SECOND;
+    private long refilledAt = System.nanoTime();
+
+    NotificationDispatcher(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * The transport named by tourism.notifications.transport (a class with a no-argument constructor),
+     * else SMTP when tourism.smtp.host is set, else null: nothing may be marked Sent that was not.
+     */
+    static Transport configuredTransport() {
+        String className = System.getProperty("tourism.notifications.transport");
+        if (className != null) {
+            try {
+                return (Transport) Class.forName(className).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalStateException("Cannot create notification transport " + className, e);
+            }
+        }
+        if (System.getProperty("tourism.smtp.host") != null) return SmtpTransport.fromProperties();
+        return null;
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notification-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, POLL_SECONDS, POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    private void runSafely() {
+        try (Connection conn = Database.connect()) {
+            // Keep going while full batches come back, so a backlog drains at the rate limit
+            while (dispatchOnce(conn) == BATCH_SIZE) {
+                if (Thread.currentThread().isInterrupted()) return;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Claims and delivers one batch and returns how many messages it held. */
+    public int dispatchOnce(Connection conn) throws SQLException, InterruptedException {
+        List<NotificationOutbox.Message> batch = NotificationOutbox.claimDue(conn, BATCH_SIZE, LEASE_SECONDS);
+        if (batch.isEmpty()) return 0;
+
+        acquire(batch.size());
+        Map<String, String> failures;
+        try {
+            failures = transport.send(batch);
+        } catch (IOException | RuntimeException e) {
+            String reason = e.getClass().getSimpleName() + ": " + e.getMessage();
+            for (NotificationOutbox.Message m : batch) NotificationOutbox.markFailed(conn, m, reason, backoff(m));
+            return batch.size();
+        }
+
+        List<NotificationOutbox.Message> sent = new ArrayList<>();
+        for (NotificationOutbox.Message m : batch) {
+            String reason = failures.get(m.idempotencyKey);
+            if (reason == null) {
+                sent.add(m);
+            } else {
+                NotificationOutbox.markFailed(conn, m, reason, backoff(m));
+            }
+        }
+        NotificationOutbox.markSent(conn, sent);
+        return batch.size();
+    }
+
+    // 30s, 1m, 2m, ... capped at 6h, each randomized to 50-100% so retries from many messages spread out;
+    // -1 once the attempt being recorded is the last one allowed
+    private static long backoff(NotificationOutbox.Message m) {
+        int attempt = m.attempts + 1;
+        if (attempt >= MAX_ATTEMPTS) return -1;
+        long delay = Math.min(MAX_BACKOFF_SECONDS, BASE_BACKOFF_SECONDS << Math.min(attempt - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    // Token bucket holding at most one second's worth of messages
+    private void acquire(int permits) throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            tokens = Math.min(RATE_PER_SECOND, tokens + (now - refilledAt) / 1e9 * RATE_PER_SECOND);
+            refilledAt = now;
+            // A batch larger than the bucket waits for a full bucket and then overdraws it
+            double needed = Math.min(permits, RATE_PER_SECOND);
+            if (tokens >= needed) {
+                tokens -= permits;
+                return;
+            }
+            TimeUnit.NANOSECONDS.sleep((long) ((needed - tokens) / RATE_PER_SECOND * 1e9));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs SmtpTransport against an in-process SMTP stand-in that accepts, rejects recipients or drops
+ * the connection, and checks that only accepted messages count as delivered and that no transport
+ * is configured without a mail server.
+ *
+ * Needs no mail server: java NotificationDispatcherCheck (exits with status 1 when a check fails)
+ */
+class NotificationDispatcherCheck {
+    /** Minimal SMTP server for one session: rejects recipients containing "reject", hangs up on "drop". */
+    private static final class StandInServer implements Runnable {
+        final ServerSocket socket;
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        final Thread thread;
+
+        StandInServer() throws IOException {
+            socket = new ServerSocket(0);
+            thread = new Thread(this, "smtp-stand-in");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try (ServerSocket server = socket; Socket client = server.accept()) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = client.getOutputStream();
+                reply(out, "220 stand-in ready");
+                boolean data = false;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    received.add(line);
+                    if (data) {
+                        if (line.equals(".")) {
+                            data = false;
+                            reply(out, "250 queued");
+                        }
+                    } else if (line.startsWith("HELO")) {
+                        reply(out, "250-stand-in\r\n250 ok");
+                    } else if (line.startsWith("RCPT") && line.contains("drop")) {
+                        return;
+                    } else if (line.startsWith("RCPT") && line.contains("reject")) {
+                        reply(out, "550 no such user");
+                    } else if (line.startsWith("DATA")) {
+                        data = true;
+                        reply(out, "354 end with .");
+                    } else if (line.startsWith("QUIT")) {
+                        reply(out, "221 bye");
+                        return;
+                    } else {
+                        reply(out, "250 ok");
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private static void reply(OutputStream out, String text) throws IOException {
+            out.write((text + "\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        SmtpTransport transport() {
+            return new SmtpTransport("localhost", socket.getLocalPort(), "bookings@tourism.local");
+        }
+    }
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        deliversAcceptedMessages();
+        reportsRejectedRecipients();
+        failsBatchOnLostConnection();
+        check("no transport without a mail server", NotificationDispatcher.configuredTransport() == null);
+        System.out.println(failures == 0 ? "All checks passed" : failures + " check(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static void deliversAcceptedMessages() throws Exception {
+        StandInServer server = new StandInServer();
+        Map<String, String> failed = server.transport().send(List.of(
+                message(1, "booking:B1:Confirmed", "ann@example.com", "first line\n.\nlast line")));
+        server.thread.join(5000);
+        check("accepted message is delivered", failed.isEmpty());
+        check("idempotency key is the Message-ID", server.received.contains("Message-ID: <booking.B1.Confirmed@tourism.local>"));
+        check("body line of a single dot is stuffed", server.received.contains(".."));
+    }
+
+    private static void reportsRejectedRecipients() throws Exception {
+        StandInServer server = new StandInServer();
+        Map<String, String> failed = server.transport().send(List.of(
+                message(1, "booking:B1:Confirmed", "ann@example.com", "a"),
+                message(2, "booking:B2:Confirmed", "reject@example.com", "b"),
+                message(3, "booking:B3:Cancelled", "bob@example.com", "c")));
+        server.thread.join(5000);
+        check("rejected recipient fails only its message",
+                failed.keySet().equals(Collections.singleton("booking:B2:Confirmed")) && failed.get("booking:B2:Confirmed").startsWith("550"));
+        check("session is reset after a rejection", server.received.contains("RSET"));
+        check("messages after a rejection are delivered", server.received.contains("RCPT TO:<bob@example.com>"));
+    }
+
+    private static void failsBatchOnLostConnection() throws Exception {
+        StandInServer server = new StandInServer();
+        boolean threw = false;
+        try {
+            server.transport().send(List.of(
+                    message(1, "booking:B1:Confirmed", "ann@example.com", "a"),
+                    message(2, "booking:B2:Confirmed", "drop@example.com", "b")));
+        } catch (IOException e) {
+            threw = true;
+        }
+        server.thread.join(5000);
+        check("lost connection fails the whole batch", threw);
+    }
+
+    private static NotificationOutbox.Message message(long id, String key, String recipient, String body) {
+        return new NotificationOutbox.Message(id, key, recipient, "Booking " + id, body, 0);
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println((passed ? "ok    " : "FAIL  ") + name);
+        if (!passed) failures++;
+    }
+}
@@ -0,0 +1,176 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Customer notifications waiting to be delivered, stored in the notification_outbox table.
+ *
+ * Rows are written by the booking status changes themselves, in the same transaction, so a message
+ * exists exactly when the change committed; NotificationDispatcher delivers them in the background.
+ * Each row carries an idempotency key, "booking:&lt;id&gt;:&lt;status&gt;", which is unique in the table (a
+ * booking is confirmed or cancelled at most once) and is passed on to the transport so a message
+ * delivered twice after a crash can be recognized as the same message.
+ */
+class NotificationOutbox {
+    static final String PENDING = "Pending";
+    static final String SENT = "Sent";
+    static final String FAILED = "Failed";
+
+    /** One message as claimed by the dispatcher. */
+    static final class Message {
+        final long id;
+        final String idempotencyKey;
+        final String recipient;
+        final String subject;
+        final String body;
+        final int attempts;
+
+        Message(long id, String idempotencyKey, String recipient, String subject, String body, int attempts) {
+            this.id = id;
+            this.idempotencyKey = idempotencyKey;
+            this.recipient = recipient;
+            this.subject = subject;
+            this.body = body;
+            this.attempts = attempts;
+        }
+    }
+
+    private NotificationOutbox() {
+    }
+
+    static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS notification_outbox (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "idempotency_key VARCHAR(64) NOT NULL, " +
+                    "booking_id VARCHAR(10) NOT NULL, " +
+                    "recipient VARCHAR(50) NOT NULL, " +
+                    "subject VARCHAR(200) NOT NULL, " +
+                    "body TEXT NOT NULL, " +
+                    "status VARCHAR(10) NOT NULL DEFAULT 'Pending', " +
+                    "attempts INT NOT NULL DEFAULT 0, " +
+                    "next_attempt_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+                    "last_error VARCHAR(255), " +
+                    "created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+                    "sent_at TIMESTAMP(3) NULL, " +
+                    "UNIQUE KEY uk_notification_outbox_key (idempotency_key), " +
+                    "INDEX idx_notification_outbox_due (status, next_attempt_at))");
+        }
+    }
+
+    /** Whether customers hear about bookings reaching this status. */
+    static boolean notifies(BookingStatus status) {
+        return status == BookingStatus.CONFIRMED || status == BookingStatus.CANCELLED;
+    }
+
+    /**
+     * Queues a message for each of the bookings that now has the given status. Call it inside the
+     * transaction that made the change; messages already queued for a booking and status are kept.
+     */
+    static int enqueue(Connection conn, List<String> bookingIds, BookingStatus status) throws SQLException {
+        if (!notifies(status) || bookingIds.isEmpty()) return 0;
+
+        // The label comes from the enum, so it can be part of the statement text
+        String query = "SELECT b.id, b.travel_date, b.num_people, b.total_price, c.name, c.email, t.name " +
+                "FROM bookings b " +
+                "JOIN customers c ON c.id = b.customer_id " +
+                "JOIN tours t ON t.id = b.tour_id " +
+                "WHERE b.status = '" + status.getLabel() + "' AND b.id IN";
+        List<Object[]> rows = SqlSupport.selectByIds(conn, query, bookingIds, rs -> new Object[]{
+                rs.getString(1), rs.getDate(2), rs.getInt(3), rs.getDouble(4),
+                rs.getString(5), rs.getString(6), rs.getString(7)});
+        if (rows.isEmpty()) return 0;
+
+        String insert = "INSERT IGNORE INTO notification_outbox (idempotency_key, booking_id, recipient, subject, body) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(insert)) {
+            for (Object[] row : rows) {
+                String bookingId = (String) row[0];
+                pstmt.setString(1, "booking:" + bookingId + ":" + status.getLabel());
+                pstmt.setString(2, bookingId);
+                pstmt.setString(3, (String) row[5]);
+                pstmt.setString(4, subject(status, bookingId, (String) row[6]));
+                pstmt.setString(5, body(status, row));
+                pstmt.addBatch();
+            }
+            int queued = 0;
+            for (int count : pstmt.executeBatch()) {
+                if (count > 0 || count == Statement.SUCCESS_NO_INFO) queued++;
+            }
+            return queued;
+        }
+    }
+
+    private static String subject(BookingStatus status, String bookingId, String tourName) {
+        return (status == BookingStatus.CONFIRMED ? "Booking confirmed: " : "Booking cancelled: ") +
+                tourName + " (" + bookingId + ")";
+    }
+
+    private static String body(BookingStatus status, Object[] row) {
+        StringBuilder body = new StringBuilder();
+        body.append("Dear ").append(row[4]).append(",\n\n");
+        if (status == BookingStatus.CONFIRMED) {
+            body.append("Your booking ").append(row[0]).append(" for ").append(row[6])
+                    .append(" is confirmed.\n\n")
+                    .append("Travel date: ").append(row[1]).append('\n')
+                    .append("Travellers:  ").append(row[2]).append('\n')
+                    .append(String.format("Total:       %,.2f%n", (Double) row[3]));
+        } else {
+            body.append("Your booking ").append(row[0]).append(" for ").append(row[6])
+                    .append(" on ").append(row[1]).append(" has been cancelled.\n");
+        }
+        return body.append("\nTourism Management System\n").toString();
+    }
+
+    /**
+     * Claims up to limit due messages for delivery: they are pushed leaseSeconds into the future
+     * first, so a dispatcher that dies mid-delivery leaves them to be retried rather than lost.
+     * SKIP LOCKED lets several clients' dispatchers claim disjoint batches.
+     */
+    static List<Message> claimDue(Connection conn, int limit, int leaseSeconds) throws SQLException {
+        return SqlSupport.inTransaction(conn, c -> {
+            List<Message> messages = new ArrayList<>();
+            String query = "SELECT id, idempotency_key, recipient, subject, body, attempts FROM notification_outbox " +
+                    "WHERE status = ? AND next_attempt_at <= CURRENT_TIMESTAMP(3) " +
+                    "ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED";
+            try (PreparedStatement pstmt = c.prepareStatement(query)) {
+                pstmt.setString(1, PENDING);
+                pstmt.setInt(2, limit);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    messages.add(new Message(rs.getLong(1), rs.getString(2), rs.getString(3),
+                            rs.getString(4), rs.getString(5), rs.getInt(6)));
+                }
+            }
+            if (messages.isEmpty()) return messages;
+
+            List<String> ids = new ArrayList<>();
+            for (Message m : messages) ids.add(Long.toString(m.id));
+            SqlSupport.updateByIds(c, "UPDATE notification_outbox " +
+                    "SET next_attempt_at = CURRENT_TIMESTAMP(3) + INTERVAL " + leaseSeconds + " SECOND WHERE id IN", ids);
+            return messages;
+        });
+    }
+
+    static void markSent(Connection conn, List<Message> messages) throws SQLException {
+        if (messages.isEmpty()) return;
+        List<String> ids = new ArrayList<>();
+        for (Message m : messages) ids.add(Long.toString(m.id));
+        SqlSupport.updateByIds(conn, "UPDATE notification_outbox " +
+                "SET status = '" + SENT + "', attempts = attempts + 1, sent_at = CURRENT_TIMESTAMP(3), last_error = NULL " +
+                "WHERE id IN", ids);
+    }
+
+    /** Schedules another attempt after delaySeconds, or gives up when delaySeconds is negative. */
+    static void markFailed(Connection conn, Message message, String error, long delaySeconds) throws SQLException {
+        String query = "UPDATE notification_outbox SET status = ?, attempts = attempts + 1, last_error = ?, " +
+                "next_attempt_at = CURRENT_TIMESTAMP(3) + INTERVAL ? SECOND WHERE id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, delaySeconds < 0 ? FAILED : PENDING);
+            pstmt.setString(2, error == null ? null : error.substring(0, Math.min(255, error.length())));
+            pstmt.setLong(3, Math.max(0, delaySeconds));
+            pstmt.setLong(4, message.id);
+            pstmt.executeUpdate();
+        }
+    }
+}
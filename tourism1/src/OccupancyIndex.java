@@ -0,0 +1,180 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Seats booked per tour per day over a fixed span of days, for the occupancy calendar.
+ *
+ * A booking of n people on a tour of d days occupies [travel_date, travel_date + d). Each tour keeps
+ * a Fenwick tree over the span holding +n at the first day and -n the day after the last, so the
+ * seats on a day are a prefix sum: O(log days) per cell, and adding a booking is two updates.
+ * The whole span is built from one range query; moving the visible window inside the span needs no
+ * database access at all.
+ *
+ * The index also remembers what each booking in the span holds, so a changed or deleted booking is
+ * patched in with patch (take the old seats out, put the new ones in) instead of reloading the span.
+ * Only a tour change that alters the calendar rows (see isCurrent) needs a reload.
+ */
+class OccupancyIndex {
+    /** Tour shown as a calendar row. */
+    static final class TourRow {
+        final String id;
+        final String name;
+        final int durationDays;
+
+        TourRow(String id, String name, int durationDays) {
+            this.id = id;
+            this.name = name;
+            this.durationDays = durationDays;
+        }
+    }
+
+    /** The seats one booking holds in the index. */
+    private static final class Held {
+        final String tourId;
+        final LocalDate travelDate;
+        final int people;
+
+        Held(String tourId, LocalDate travelDate, int people) {
+            this.tourId = tourId;
+            this.travelDate = travelDate;
+            this.people = people;
+        }
+    }
+
+    private final LocalDate from;
+    private final int days;
+    private final List<TourRow> tours;
+    private final Map<String, TourRow> toursById = new HashMap<>();
+    private final Map<String, long[]> trees = new HashMap<>();
+    private final Map<String, Held> held = new HashMap<>();
+
+    OccupancyIndex(LocalDate from, LocalDate to, List<TourRow> tours) {
+        this.from = from;
+        this.days = (int) ChronoUnit.DAYS.between(from, to);
+        this.tours = Collections.unmodifiableList(new ArrayList<>(tours));
+        for (TourRow tour : tours) toursById.put(tour.id, tour);
+    }
+
+    /** Loads every tour and the non-cancelled bookings that overlap [from, to). */
+    static OccupancyIndex load(Connection conn, LocalDate from, LocalDate to) throws SQLException {
+        List<TourRow> tours = new ArrayList<>();
+        int longest = 1;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, name, duration_days FROM tours ORDER BY name, id")) {
+            while (rs.next()) {
+                TourRow tour = new TourRow(rs.getString("id"), rs.getString("name"), rs.getInt("duration_days"));
+                tours.add(tour);
+                longest = Math.max(longest, tour.durationDays);
+            }
+        }
+
+        OccupancyIndex index = new OccupancyIndex(from, to, tours);
+        // Bookings that started up to one tour length before the span still occupy its first days.
+        // Plain bounds on travel_date keep the scan to the matching monthly partitions. Rows come
+        // one per booking, since patch needs to know what each of them holds.
+        String query = "SELECT id, tour_id, travel_date, num_people FROM bookings " +
+                "WHERE travel_date >= ? AND travel_date < ? AND status <> ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE makes Connector/J stream rows instead of buffering the full result
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+            pstmt.setDate(1, Date.valueOf(from.minusDays(longest - 1)));
+            pstmt.setDate(2, Date.valueOf(to));
+            pstmt.setString(3, BookingStatus.CANCELLED.getLabel());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                Interner ids = Interner.forLoad();
+                while (rs.next()) {
+                    index.hold(rs.getString(1), ids.intern(rs.getString(2)), rs.getDate(3).toLocalDate(), rs.getInt(4));
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Replaces the seats the booking holds with those of its new row; null (deleted) and cancelled
+     * rows hold none. Returns false when the row's tour has no calendar row, so the index must be
+     * reloaded.
+     */
+    boolean patch(String bookingId, Booking row) {
+        Held previous = held.remove(bookingId);
+        if (previous != null) {
+            add(previous.tourId, previous.travelDate, toursById.get(previous.tourId).durationDays, -previous.people);
+        }
+        if (row == null || row.getBookingStatus() == BookingStatus.CANCELLED) return true;
+        if (!toursById.containsKey(row.getTourId())) return false;
+        hold(bookingId, row.getTourId(), row.getTravelDate().toLocalDate(), row.getNumPeople());
+        return true;
+    }
+
+    /** True when the tour's calendar row still matches it; a new, renamed or resized tour needs a reload. */
+    boolean isCurrent(Tour tour) {
+        TourRow row = toursById.get(tour.getId());
+        return row != null && row.name.equals(tour.getName()) && row.durationDays == tour.getDurationDays();
+    }
+
+    boolean hasTour(String tourId) {
+        return toursById.containsKey(tourId);
+    }
+
+    // Bookings of tours without a calendar row, or outside the span, are not kept
+    private void hold(String bookingId, String tourId, LocalDate travelDate, int people) {
+        TourRow tour = toursById.get(tourId);
+        if (tour != null && add(tourId, travelDate, tour.durationDays, people)) {
+            held.put(bookingId, new Held(tourId, travelDate, people));
+        }
+    }
+
+    /** Adds people to the tour for each day of [start, start + durationDays) in the span; false when there is none. */
+    private boolean add(String tourId, LocalDate start, int durationDays, long people) {
+        int first = (int) ChronoUnit.DAYS.between(from, start);
+        int end = first + Math.max(1, durationDays);
+        first = Math.max(0, first);
+        end = Math.min(days, end);
+        if (first >= end) return false;
+
+        long[] tree = trees.computeIfAbsent(tourId, id -> new long[days + 1]);
+        update(tree, first, people);
+        if (end < days) update(tree, end, -people);
+        return true;
+    }
+
+    /** Seats booked on the tour that day; 0 outside the span. */
+    long seatsOn(String tourId, LocalDate day) {
+        long[] tree = trees.get(tourId);
+        if (tree == null) return 0;
+        int position = (int) ChronoUnit.DAYS.between(from, day);
+        if (position < 0 || position >= days) return 0;
+
+        long sum = 0;
+        for (int i = position + 1; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+
+    /** Largest seatsOn over all tours for the days of [windowFrom, windowTo). */
+    long maxSeats(LocalDate windowFrom, LocalDate windowTo) {
+        long max = 0;
+        for (String tourId : trees.keySet()) {
+            for (LocalDate day = windowFrom; day.isBefore(windowTo); day = day.plusDays(1)) {
+                max = Math.max(max, seatsOn(tourId, day));
+            }
+        }
+        return max;
+    }
+
+    /** True when [windowFrom, windowTo) lies inside the loaded span. */
+    boolean covers(LocalDate windowFrom, LocalDate windowTo) {
+        return !windowFrom.isBefore(from) && !windowTo.isAfter(from.plusDays(days));
+    }
+
+    List<TourRow> getTours() { return tours; }
+
+    private static void update(long[] tree, int position, long delta) {
+        for (int i = position + 1; i < tree.length; i += i & -i) tree[i] += delta;
+    }
+}
@@ -0,0 +1,96 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Occupancy calendar: one row per tour, one column per day of the visible window. Cells are read
+ * straight from the OccupancyIndex when painted, so moving the window only changes the headers.
+ */
+class OccupancyTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    static final int WINDOW_DAYS = 28;
+    private static final DateTimeFormatter HEADER = DateTimeFormatter.ofPattern("EEE d MMM");
+
+    private OccupancyIndex index;
+    private List<OccupancyIndex.TourRow> tours = Collections.emptyList();
+    private LocalDate windowFrom = LocalDate.now();
+    private long maxSeats;
+
+    /** Shows the window of WINDOW_DAYS days starting at windowFrom; the index must cover it. */
+    void show(OccupancyIndex index, LocalDate windowFrom) {
+        this.index = index;
+        this.tours = index.getTours();
+        this.windowFrom = windowFrom;
+        this.maxSeats = index.maxSeats(windowFrom, windowTo());
+        fireTableStructureChanged();
+    }
+
+    LocalDate getWindowFrom() { return windowFrom; }
+
+    LocalDate windowTo() { return windowFrom.plusDays(WINDOW_DAYS); }
+
+    long getMaxSeats() { return maxSeats; }
+
+    @Override
+    public int getRowCount() { return tours.size(); }
+
+    @Override
+    public int getColumnCount() { return WINDOW_DAYS + 1; }
+
+    @Override
+    public String getColumnName(int column) {
+        return column == 0 ? "Tour" : HEADER.format(windowFrom.plusDays(column - 1));
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 ? String.class : Long.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        OccupancyIndex.TourRow tour = tours.get(row);
+        if (column == 0) return tour.name;
+        return index.seatsOn(tour.id, windowFrom.plusDays(column - 1));
+    }
+
+    /** Shades day cells from white to red by seats relative to the busiest cell in the window. */
+    static final class HeatRenderer extends DefaultTableCellRenderer {
+        private static final long serialVersionUID = 1L;
+
+        private static final Color EMPTY = Color.WHITE;
+        private static final Color FULL = new Color(192, 57, 43);
+
+        HeatRenderer() {
+            setHorizontalAlignment(SwingConstants.CENTER);
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+            long seats = value == null ? 0 : (Long) value;
+            long max = ((OccupancyTableModel) table.getModel()).getMaxSeats();
+            float ratio = max == 0 ? 0 : (float) seats / max;
+            if (!isSelected) {
+                setBackground(blend(EMPTY, FULL, ratio));
+                setForeground(ratio > 0.6f ? Color.WHITE : Color.BLACK);
+            }
+            setText(seats == 0 ? "" : Long.toString(seats));
+            return this;
+        }
+
+        private static Color blend(Color from, Color to, float ratio) {
+            return new Color(
+                    Math.round(from.getRed() + (to.getRed() - from.getRed()) * ratio),
+                    Math.round(from.getGreen() + (to.getGreen() - from.getGreen()) * ratio),
+                    Math.round(from.getBlue() + (to.getBlue() - from.getBlue()) * ratio));
+        }
+    }
+}
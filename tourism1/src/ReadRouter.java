@@ -0,0 +1,177 @@
+import javax.swing.SwingUtilities;
+import java.sql.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Picks the connection for read-only queries: the replica when one is configured and fresh enough,
+ * otherwise the primary. Writes always go to the primary connection.
+ *
+ * The primary connection the router is built with belongs to the event dispatch thread. Background
+ * workers that fall back to the primary get a primary connection of their own, opened by the first
+ * worker that needs it, so a worker's query never interleaves with the UI's statements or
+ * transactions on one session.
+ *
+ * Freshness is measured with the replicated sync clock (see DeltaSync), shard by shard. After a
+ * local write the primary's clock becomes a floor, so this client keeps reading from the primary
+ * until the replica has applied its own changes (read-your-writes). The replica is also bypassed
+ * when it is unreachable or has not caught up with the primary as it was MAX_LAG_MS ago.
+ *
+ * Connecting and measuring happen on a background thread with connections of its own, so forRead
+ * never waits on the network on the event dispatch thread and an unreachable replica cannot stall
+ * the UI. The event dispatch
+ * thread and background workers read through separate replica connections, so a long report on a
+ * worker does not hold up a table load on the UI.
+ */
+class ReadRouter {
+    private static final long CHECK_INTERVAL_MS = Long.getLong("tourism.db.replicaCheckMs", 1000);
+    private static final long MAX_LAG_MS = Long.getLong("tourism.db.replicaMaxLagMs", 5000);
+    private static final long RETRY_MS = 30_000;
+
+    private final Connection primary;
+    private final AtomicReference<long[]> requiredClock = new AtomicReference<>();
+    private final AtomicBoolean recheckQueued = new AtomicBoolean();
+    private ScheduledExecutorService monitor;
+    // Guarded by this
+    private Connection workerPrimary;
+    private boolean closed;
+
+    // Used only on the monitor thread
+    private Connection replicaProbe;
+    private Connection primaryProbe;
+    private long retryAt;
+    // The primary's clock at the previous check and when it was read
+    private long[] previousPrimary;
+    private long previousAt;
+
+    // Published by the monitor thread
+    private volatile Connection edtReplica;
+    private volatile Connection workerReplica;
+    private volatile long[] replicaClock;
+    // When the replica last held everything the primary had committed
+    private volatile long caughtUpAt;
+
+    ReadRouter(Connection primary) {
+        this.primary = primary;
+        if (!Database.hasReplica()) return;
+
+        monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        monitor.scheduleWithFixedDelay(this::check, 0, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection forRead() throws SQLException {
+        return forRead(null);
+    }
+
+    /** Connection for reads that must include every change up to minClock (and this client's own writes). */
+    public Connection forRead(long[] minClock) throws SQLException {
+        boolean edt = SwingUtilities.isEventDispatchThread();
+        if (monitor == null) return edt ? primary : workerPrimary();
+
+        Connection replica = edt ? edtReplica : workerReplica;
+        long[] seen = replicaClock;
+        if (replica == null || seen == null || System.currentTimeMillis() - caughtUpAt > MAX_LAG_MS) {
+            return edt ? primary : workerPrimary();
+        }
+        if (!DeltaSync.covers(seen, minClock) || !DeltaSync.covers(seen, requiredClock.get())) {
+            // A cached version that is behind the floor may just be old; look again without waiting for it
+            if (recheckQueued.compareAndSet(false, true)) {
+                monitor.execute(() -> {
+                    recheckQueued.set(false);
+                    check();
+                });
+            }
+            return edt ? primary : workerPrimary();
+        }
+        return replica;
+    }
+
+    private synchronized Connection workerPrimary() throws SQLException {
+        if (closed) throw new SQLException("The read router is closed");
+        if (workerPrimary == null) workerPrimary = Database.connect();
+        return workerPrimary;
+    }
+
+    /** Call after committing a write on the primary so later reads see it. */
+    public void noteWrite() throws SQLException {
+        long[] clock = DeltaSync.clockOf(primary);
+        requiredClock.accumulateAndGet(clock, DeltaSync::latest);
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (workerPrimary != null) {
+                try {
+                    workerPrimary.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                workerPrimary = null;
+            }
+        }
+        if (monitor == null) return;
+        // Runs after any check in progress, so no connection is opened after it
+        monitor.execute(this::closeReplica);
+        monitor.shutdown();
+    }
+
+    private void check() {
+        long now = System.currentTimeMillis();
+        if (now < retryAt) return;
+        try {
+            if (replicaProbe == null || !replicaProbe.isValid(2)) {
+                closeReplica();
+                replicaProbe = openReplica();
+                primaryProbe = Database.connect();
+                edtReplica = openReplica();
+                workerReplica = openReplica();
+            }
+            long[] primaryAt = DeltaSync.clockOf(primaryProbe);
+            long[] replicaAt = DeltaSync.clockOf(replicaProbe);
+            if (DeltaSync.covers(replicaAt, primaryAt)) {
+                caughtUpAt = now;
+            } else if (previousPrimary != null && DeltaSync.covers(replicaAt, previousPrimary)) {
+                caughtUpAt = Math.max(caughtUpAt, previousAt);
+            }
+            previousPrimary = primaryAt;
+            previousAt = now;
+            replicaClock = replicaAt;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            closeReplica();
+            retryAt = now + RETRY_MS;
+        }
+    }
+
+    private static Connection openReplica() throws SQLException {
+        Connection conn = Database.connectReplica();
+        conn.setReadOnly(true);
+        return conn;
+    }
+
+    private void closeReplica() {
+        replicaClock = null;
+        previousPrimary = null;
+        Connection[] open = {edtReplica, workerReplica, replicaProbe, primaryProbe};
+        edtReplica = null;
+        workerReplica = null;
+        replicaProbe = null;
+        primaryProbe = null;
+        for (Connection conn : open) {
+            if (conn == null) continue;
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
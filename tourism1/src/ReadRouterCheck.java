@@ -0,0 +1,44 @@
+import javax.swing.SwingUtilities;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Checks that ReadRouter.forRead answers at once on the event dispatch thread while the replica is
+ * unreachable, falling back to the primary, instead of waiting for the connect to time out.
+ *
+ * Needs no database: java ReadRouterCheck [unreachable replica url]
+ */
+class ReadRouterCheck {
+    private static final long MAX_WAIT_MS = 50;
+
+    public static void main(String[] args) throws Exception {
+        // A non-routable address, so the monitor's connect hangs until tourism.db.connectTimeoutMs
+        System.setProperty("tourism.db.replicaUrl", args.length > 0 ? args[0] : "jdbc:mysql://10.255.255.1:3306/tourism_db");
+        Connection primary = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (self, method, a) -> null);
+        ReadRouter router = new ReadRouter(primary);
+
+        boolean[] passed = {true};
+        for (int i = 0; i < 20; i++) {
+            SwingUtilities.invokeAndWait(() -> {
+                long start = System.nanoTime();
+                Connection conn;
+                try {
+                    conn = router.forRead();
+                } catch (SQLException e) {
+                    conn = null;
+                }
+                long waitedMs = (System.nanoTime() - start) / 1_000_000;
+                if (conn != primary || waitedMs > MAX_WAIT_MS) {
+                    System.out.println("FAIL  forRead waited " + waitedMs + " ms or did not fall back to the primary");
+                    passed[0] = false;
+                }
+            });
+            Thread.sleep(100);
+        }
+        router.close();
+        System.out.println(passed[0] ? "ok    forRead does not wait for an unreachable replica" : "Check failed");
+        System.exit(passed[0] ? 0 : 1);
+    }
+}
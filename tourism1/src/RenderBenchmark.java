@@ -0,0 +1,148 @@
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures full-window repaint time of a booking module with a large table while it is scrolled
+ * and resized, once with the previous rendering (gradient rebuilt per paint, default renderers)
+ * and once with the cached gradient and rows preformatted for FastCellRenderers. A frame budget of
+ * 16.7 ms is 60 Hz.
+ *
+ * Needs no database and runs headless: java -Djava.awt.headless=true RenderBenchmark [rows]
+ */
+class RenderBenchmark {
+    private static final int FRAMES = 300;
+    private static final double BUDGET_MS = 1000.0 / 60;
+
+    // GradientPanel before the background cache: a new GradientPaint filling the panel on every paint
+    private static final class LegacyGradientPanel extends JPanel {
+        private static final long serialVersionUID = 1L;
+
+        private final Color color1;
+        private final Color color2;
+
+        LegacyGradientPanel(Color color1, Color color2) {
+            this.color1 = color1;
+            this.color2 = color2;
+            setOpaque(false);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.setPaint(new GradientPaint(0, 0, color1, getWidth(), getHeight(), color2));
+            g2d.fillRect(0, 0, getWidth(), getHeight());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        DefaultTableModel plain = bookingModel(rows, false);
+        DefaultTableModel preformatted = bookingModel(rows, true);
+
+        SwingUtilities.invokeAndWait(() -> {
+            // Warm up both paths so JIT compilation does not count against the first one
+            run(plain, false, FRAMES / 3);
+            run(preformatted, true, FRAMES / 3);
+
+            System.out.printf("Booking rows:  %,d, frames per run: %d, budget: %.1f ms%n", rows, FRAMES, BUDGET_MS);
+            report("Previous rendering", run(plain, false, FRAMES));
+            report("Cached rendering  ", run(preformatted, true, FRAMES));
+        });
+    }
+
+    /** Booking rows with plain values, or with the values preformatted the way bookingRow builds them. */
+    private static DefaultTableModel bookingModel(int rows, boolean preformatted) {
+        String[] columns = {"ID", "Tour", "Customer", "Booking Date", "Travel Date", "People", "Total Price", "Status"};
+        DefaultTableModel model = new DefaultTableModel(columns, 0);
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        String[] statuses = BookingStatus.labels();
+        for (int i = 0; i < rows; i++) {
+            LocalDate booked = start.plusDays(random.nextInt(700));
+            Date bookingDate = Date.valueOf(booked);
+            Date travelDate = Date.valueOf(booked.plusDays(7 + random.nextInt(120)));
+            int people = 1 + random.nextInt(8);
+            double price = (50 + random.nextInt(5000)) * 1.25;
+            model.addRow(new Object[]{
+                    String.format("B%09d", i),
+                    "Tour " + random.nextInt(200),
+                    "Customer " + random.nextInt(20_000),
+                    preformatted ? FastCellRenderers.dateValue(bookingDate) : bookingDate,
+                    preformatted ? FastCellRenderers.dateValue(travelDate) : travelDate,
+                    preformatted ? FastCellRenderers.numberValue(people) : people,
+                    preformatted ? FastCellRenderers.moneyValue(price) : price,
+                    statuses[random.nextInt(statuses.length)]
+            });
+        }
+        return model;
+    }
+
+    /** Paints FRAMES frames, alternating scroll steps with resizes, and returns each frame's time in ms. */
+    private static double[] run(DefaultTableModel model, boolean cached, int frames) {
+        Color top = new Color(230, 126, 34);
+        Color bottom = new Color(211, 84, 0);
+        JPanel panel = cached ? new GradientPanel(top, bottom) : new LegacyGradientPanel(top, bottom);
+        panel.setLayout(new BorderLayout());
+
+        JTable table = new JTable(model);
+        if (cached) {
+            FastCellRenderers.install(table, 3, FastCellRenderers.date());
+            FastCellRenderers.install(table, 4, FastCellRenderers.date());
+            FastCellRenderers.install(table, 5, FastCellRenderers.number());
+            FastCellRenderers.install(table, 6, FastCellRenderers.money());
+        }
+        JScrollPane scroll = new JScrollPane(table);
+        JPanel content = new JPanel(new BorderLayout());
+        content.setOpaque(false);
+        content.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        content.add(scroll, BorderLayout.CENTER);
+        panel.add(content, BorderLayout.CENTER);
+
+        int[] widths = {1280, 1366, 1440, 1600, 1920};
+        int[] heights = {720, 768, 900, 1050};
+        BufferedImage frame = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        double[] times = new double[frames];
+        int rowHeight = table.getRowHeight();
+
+        for (int i = 0; i < frames; i++) {
+            if (i % 10 == 0) {
+                panel.setSize(widths[(i / 10) % widths.length], heights[(i / 10) % heights.length]);
+                layout(panel);
+            }
+            int maxY = Math.max(0, table.getHeight() - scroll.getViewport().getHeight());
+            scroll.getViewport().setViewPosition(new Point(0, (int) ((long) i * 37 * rowHeight % (maxY + 1))));
+
+            Graphics2D g = frame.createGraphics();
+            long start = System.nanoTime();
+            panel.paint(g);
+            times[i] = (System.nanoTime() - start) / 1e6;
+            g.dispose();
+        }
+        return times;
+    }
+
+    private static void layout(Component component) {
+        component.doLayout();
+        if (component instanceof Container) {
+            for (Component child : ((Container) component).getComponents()) layout(child);
+        }
+    }
+
+    private static void report(String label, double[] times) {
+        double[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(times).average().orElse(0);
+        double p99 = sorted[(int) Math.min(sorted.length - 1, Math.round(sorted.length * 0.99))];
+        long overBudget = Arrays.stream(times).filter(t -> t > BUDGET_MS).count();
+        System.out.printf("%s  mean %6.2f ms  p50 %6.2f ms  p99 %6.2f ms  over budget %d/%d%n",
+                label, mean, sorted[sorted.length / 2], p99, overBudget, times.length);
+    }
+}
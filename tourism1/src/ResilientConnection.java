@@ -0,0 +1,420 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Connection proxy that keeps a long-lived connection usable across database hiccups.
+ *
+ * - Every statement gets a query timeout (tourism.db.queryTimeoutSeconds); callers can still change it.
+ * - A connection that failed with a connection-level error, or that was idle for a while and no
+ *   longer answers a ping, is replaced on the next call. A connection lost in the middle of a
+ *   transaction is not replaced silently: calls fail until the caller rolls back.
+ * - Plain SELECTs in autocommit mode that do not depend on session state are retried on a fresh
+ *   connection, up to tourism.db.retries times with a growing pause.
+ * - Statements currently executing, or whose result set is still being read, can be cancelled from
+ *   another thread with cancelRunning.
+ * - A circuit breaker per database URL opens after BREAKER_THRESHOLD consecutive connection-level
+ *   failures; while it is open, calls fail immediately instead of waiting on connect timeouts.
+ */
+class ResilientConnection implements InvocationHandler {
+    private static final int QUERY_TIMEOUT_SECONDS = Integer.getInteger("tourism.db.queryTimeoutSeconds", 30);
+    private static final int RETRIES = Integer.getInteger("tourism.db.retries", 2);
+    private static final long RETRY_PAUSE_MS = 200;
+    private static final long VALIDATE_AFTER_IDLE_MS = Long.getLong("tourism.db.validateAfterIdleMs", 30_000);
+    private static final int BREAKER_THRESHOLD = Integer.getInteger("tourism.db.breakerThreshold", 3);
+    private static final long BREAKER_OPEN_MS = Long.getLong("tourism.db.breakerOpenMs", 10_000);
+
+    // Results of these depend on the session, so running them again on a new connection could lie
+    private static final Pattern SESSION_STATE = Pattern.compile(
+            "LAST_INSERT_ID|FOUND_ROWS|ROW_COUNT|GET_LOCK|RELEASE_LOCK|IS_USED_LOCK|@|FOR UPDATE|LOCK IN SHARE MODE",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Map<String, Breaker> BREAKERS = new ConcurrentHashMap<>();
+
+    interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    /** Consecutive-failure circuit breaker shared by all connections to one database. */
+    private static final class Breaker {
+        private int failures;
+        private long openUntil;
+
+        synchronized void check() throws SQLException {
+            long now = System.currentTimeMillis();
+            if (failures >= BREAKER_THRESHOLD && now < openUntil) {
+                throw new SQLTransientConnectionException("Database unavailable, retrying in " +
+                        ((openUntil - now + 999) / 1000) + " s", "08001");
+            }
+        }
+
+        synchronized void success() {
+            failures = 0;
+        }
+
+        synchronized void failure() {
+            // After the open period a single attempt is let through; failing it opens the breaker again
+            if (++failures >= BREAKER_THRESHOLD) {
+                openUntil = System.currentTimeMillis() + BREAKER_OPEN_MS;
+            }
+        }
+    }
+
+    private final Opener opener;
+    private final Breaker breaker;
+    private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+    // Statements whose execute returned a result set that is still open; streaming loads spend most
+    // of their time here, where Statement.cancel no longer reaches them
+    private final Set<StatementHandler> reading = ConcurrentHashMap.newKeySet();
+    private volatile long sessionId;
+    private Connection proxy;
+    private Connection delegate;
+    private long lastUsed;
+    private boolean closed;
+    private boolean lostTransaction;
+    private boolean autoCommit = true;
+    private boolean readOnly;
+
+    private ResilientConnection(String url, Opener opener) {
+        this.opener = opener;
+        this.breaker = BREAKERS.computeIfAbsent(url, u -> new Breaker());
+    }
+
+    static Connection open(String url, Opener opener) throws SQLException {
+        ResilientConnection handler = new ResilientConnection(url, opener);
+        handler.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+        handler.delegate();
+        return handler.proxy;
+    }
+
+    /**
+     * Cancels the statements currently executing on a connection from open(), and those whose result
+     * set is still being read; returns how many.
+     */
+    static int cancelRunning(Connection conn) {
+        if (conn == null || !Proxy.isProxyClass(conn.getClass())) return 0;
+        InvocationHandler handler = Proxy.getInvocationHandler(conn);
+        if (!(handler instanceof ResilientConnection)) return 0;
+        ResilientConnection connection = (ResilientConnection) handler;
+
+        int cancelled = 0;
+        for (Statement stmt : connection.running) {
+            try {
+                stmt.cancel();
+                cancelled++;
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!connection.reading.isEmpty()) {
+            for (StatementHandler stmt : connection.reading) {
+                stmt.cancelled = true;
+                cancelled++;
+            }
+            try {
+                connection.killQuery();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return cancelled;
+    }
+
+    // The driver only cancels a statement while execute runs, so a result that is still streaming is
+    // stopped on the server from a second session, as Statement.cancel itself does
+    private void killQuery() throws SQLException {
+        long session = sessionId;
+        if (session == 0) return;
+        try (Connection conn = opener.open(); Statement stmt = conn.createStatement()) {
+            stmt.execute("KILL QUERY " + session);
+        }
+    }
+
+    @Override
+    public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return self == args[0];
+            case "hashCode":
+                return System.identityHashCode(self);
+            case "toString":
+                return "ResilientConnection[" + delegate + "]";
+            case "close":
+                close();
+                return null;
+            case "isClosed":
+                return closed;
+            case "isValid":
+                return isValid((Integer) args[0]);
+            case "rollback":
+                if (args == null && lostTransaction) {
+                    // The server already discarded the transaction with the old session
+                    lostTransaction = false;
+                    return null;
+                }
+                break;
+            case "setAutoCommit":
+                if (lostTransaction && (Boolean) args[0]) lostTransaction = false;
+                break;
+            default:
+                break;
+        }
+
+        Connection conn = delegate();
+        try {
+            Object result = method.invoke(conn, args);
+            if ("setAutoCommit".equals(method.getName())) autoCommit = (Boolean) args[0];
+            if ("setReadOnly".equals(method.getName())) readOnly = (Boolean) args[0];
+            if (result instanceof Statement) {
+                return wrap((Statement) result, method, args);
+            }
+            return result;
+        } catch (InvocationTargetException e) {
+            throw failed(e.getCause());
+        }
+    }
+
+    private synchronized Connection delegate() throws SQLException {
+        if (closed) throw new SQLNonTransientConnectionException("Connection is closed", "08003");
+        if (lostTransaction) {
+            throw new SQLNonTransientConnectionException(
+                    "Connection lost during a transaction; roll back before continuing", "08003");
+        }
+        breaker.check();
+
+        long now = System.currentTimeMillis();
+        if (delegate != null && now - lastUsed > VALIDATE_AFTER_IDLE_MS && !delegate.isValid(2)) {
+            discard();
+        }
+        if (delegate == null) {
+            try {
+                // Only a statement that completes closes the breaker again; a fresh connect proves little
+                delegate = opener.open();
+                sessionId = sessionId(delegate);
+            } catch (SQLException e) {
+                breaker.failure();
+                discard();
+                throw e;
+            }
+            delegate.setAutoCommit(autoCommit);
+            if (readOnly) delegate.setReadOnly(true);
+        }
+        lastUsed = now;
+        return delegate;
+    }
+
+    private synchronized boolean isValid(int timeoutSeconds) {
+        if (closed || lostTransaction) return false;
+        try {
+            if (delegate != null && delegate.isValid(timeoutSeconds)) {
+                lastUsed = System.currentTimeMillis();
+                return true;
+            }
+            discard();
+            return delegate() != null;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static long sessionId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT CONNECTION_ID()")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private synchronized void close() throws SQLException {
+        closed = true;
+        reading.clear();
+        if (delegate != null) {
+            Connection conn = delegate;
+            delegate = null;
+            conn.close();
+        }
+    }
+
+    // Records the failure and drops the physical connection when the failure was at connection level.
+    // A statement timeout only says that one query was slow, so it leaves the breaker alone
+    private synchronized Throwable failed(Throwable error) {
+        if (isConnectionFailure(error)) {
+            breaker.failure();
+            if (!autoCommit) lostTransaction = true;
+            discard();
+        }
+        return error;
+    }
+
+    private synchronized void discard() {
+        if (delegate == null) return;
+        reading.clear();
+        sessionId = 0;
+        try {
+            delegate.close();
+        } catch (SQLException ignored) {
+            // Already broken; nothing more to release
+        }
+        delegate = null;
+    }
+
+    private static boolean isConnectionFailure(Throwable error) {
+        if (error instanceof SQLRecoverableException || error instanceof SQLNonTransientConnectionException ||
+                error instanceof SQLTransientConnectionException) {
+            return true;
+        }
+        if (error instanceof SQLException) {
+            String state = ((SQLException) error).getSQLState();
+            return state != null && state.startsWith("08");
+        }
+        return false;
+    }
+
+    private Statement wrap(Statement stmt, Method factory, Object[] factoryArgs) throws SQLException {
+        stmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        Class<?> type = stmt instanceof CallableStatement ? CallableStatement.class
+                : stmt instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                new StatementHandler(stmt, factory, factoryArgs));
+    }
+
+    /**
+     * Tracks running executions and open results for cancellation and re-creates the statement for
+     * a retry.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final Method factory;
+        private final Object[] factoryArgs;
+        // Latest call per statement setting and per parameter index, replayed on a re-created statement
+        private final Map<String, Object[]> settings = new LinkedHashMap<>();
+        private Statement stmt;
+        private volatile boolean cancelled;
+
+        StatementHandler(Statement stmt, Method factory, Object[] factoryArgs) {
+            this.stmt = stmt;
+            this.factory = factory;
+            this.factoryArgs = factoryArgs;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "getConnection":
+                    return proxy;
+                case "clearParameters":
+                    settings.keySet().removeIf(key -> key.startsWith("#"));
+                    break;
+                case "close":
+                    reading.remove(this);
+                    break;
+                default:
+                    break;
+            }
+            if (name.startsWith("set")) {
+                // Parameter setters are declared by PreparedStatement and take the parameter index first
+                String key = method.getDeclaringClass() == Statement.class ? name : "#" + args[0];
+                settings.put(key, new Object[]{method, args});
+            }
+
+            if (!name.startsWith("execute")) {
+                try {
+                    Object result = method.invoke(stmt, args);
+                    return "getResultSet".equals(name) && result != null ? results(self, (ResultSet) result) : result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+
+            // Executing again closes the previous result
+            reading.remove(this);
+            cancelled = false;
+            for (int attempt = 0; ; attempt++) {
+                running.add(stmt);
+                try {
+                    Object result = method.invoke(stmt, args);
+                    breaker.success();
+                    return result instanceof ResultSet ? results(self, (ResultSet) result) : result;
+                } catch (InvocationTargetException e) {
+                    Throwable error = failed(e.getCause());
+                    if (attempt >= RETRIES || !isRetryable(name, args, error)) throw error;
+                } finally {
+                    running.remove(stmt);
+                }
+
+                Thread.sleep(RETRY_PAUSE_MS << attempt);
+                recreate();
+            }
+        }
+
+        // Keeps the statement cancellable until its result is read to the end or closed
+        private ResultSet results(Object statement, ResultSet rs) {
+            reading.add(this);
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (self, method, args) -> {
+                        switch (method.getName()) {
+                            case "equals":
+                                return self == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(self);
+                            case "getStatement":
+                                return statement;
+                            case "close":
+                                reading.remove(this);
+                                break;
+                            case "next":
+                                if (cancelled) {
+                                    reading.remove(this);
+                                    throw new SQLException("Statement cancelled while reading its result", "70100");
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                        try {
+                            Object result = method.invoke(rs, args);
+                            if (Boolean.FALSE.equals(result) && "next".equals(method.getName())) reading.remove(this);
+                            return result;
+                        } catch (InvocationTargetException e) {
+                            reading.remove(this);
+                            throw failed(e.getCause());
+                        }
+                    });
+        }
+
+        private boolean isRetryable(String name, Object[] args, Throwable error) {
+            if (!"executeQuery".equals(name) || !autoCommit || !isConnectionFailure(error)) return false;
+            String sql = args != null && args.length > 0 ? (String) args[0]
+                    : factoryArgs != null && factoryArgs.length > 0 ? (String) factoryArgs[0] : null;
+            return sql != null && sql.trim().regionMatches(true, 0, "SELECT", 0, 6) &&
+                    !SESSION_STATE.matcher(sql).find();
+        }
+
+        private void recreate() throws Throwable {
+            try {
+                stmt.close();
+            } catch (SQLException ignored) {
+                // Belonged to the dropped connection
+            }
+            try {
+                stmt = (Statement) factory.invoke(delegate(), factoryArgs);
+                stmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+                for (Object[] setting : settings.values()) {
+                    ((Method) setting[0]).invoke(stmt, (Object[]) setting[1]);
+                }
+            } catch (InvocationTargetException e) {
+                throw failed(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs ResilientConnection against an in-process fake database that drops connections, refuses
+ * connects, times out queries and streams results slowly, and checks retries, transaction loss,
+ * the circuit breaker and cancellation of both a running statement and a result that is still
+ * being read.
+ *
+ * Needs no database: java ResilientConnectionCheck (exits with status 1 when a check fails)
+ */
+class ResilientConnectionCheck {
+    private static final String LOST = "08S01";
+
+    /** Stand-in server: each connect gets a session id, and faults are switched on per scenario. */
+    private static final class FakeDatabase {
+        final AtomicLong sessions = new AtomicLong();
+        final Set<Long> killed = ConcurrentHashMap.newKeySet();
+        final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+        volatile int dropQueries;
+        volatile int timeoutQueries;
+        volatile boolean down;
+        volatile int rows = 1000;
+
+        Connection open() throws SQLException {
+            if (down) throw new SQLNonTransientConnectionException("Connection refused", "08001");
+            long session = sessions.incrementAndGet();
+            return proxy(Connection.class, (self, method, args) -> {
+                switch (method.getName()) {
+                    case "createStatement":
+                        return statement(session, null);
+                    case "prepareStatement":
+                        return statement(session, (String) args[0]);
+                    case "isValid":
+                        return true;
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        private Statement statement(long session, String prepared) {
+            CountDownLatch cancel = new CountDownLatch(1);
+            Class<? extends Statement> type = prepared == null ? Statement.class : PreparedStatement.class;
+            return proxy(type, (self, method, args) -> {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : prepared;
+                switch (method.getName()) {
+                    case "cancel":
+                        cancel.countDown();
+                        return null;
+                    case "execute":
+                    case "executeUpdate":
+                        statements.add(sql);
+                        if (sql.startsWith("KILL QUERY ")) killed.add(Long.parseLong(sql.substring(11)));
+                        return defaultValue(method.getReturnType());
+                    case "executeQuery":
+                        statements.add(sql);
+                        if (sql.equals("SELECT CONNECTION_ID()")) return rows(session, 1, false);
+                        if (dropQueries > 0) {
+                            dropQueries--;
+                            throw new SQLRecoverableException("Communications link failure", LOST);
+                        }
+                        if (timeoutQueries > 0) {
+                            timeoutQueries--;
+                            throw new SQLTimeoutException("Statement cancelled due to timeout or client request");
+                        }
+                        if (sql.startsWith("SELECT SLEEP")) {
+                            if (!cancel.await(5, TimeUnit.SECONDS)) return rows(session, 1, false);
+                            throw new SQLException("Query execution was interrupted", "70100");
+                        }
+                        return rows(session, rows, true);
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        // Slow rows stop with the server's interrupt error once the session's query is killed
+        private ResultSet rows(long session, int count, boolean slow) {
+            int[] position = {0};
+            return proxy(ResultSet.class, (self, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        if (slow) Thread.sleep(2);
+                        if (killed.contains(session)) throw new SQLException("Query execution was interrupted", "70100");
+                        return ++position[0] <= count;
+                    case "getLong":
+                        return session;
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+        }
+    }
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        retriesSelectOnLostConnection();
+        failsTransactionUntilRollback();
+        breakerFailsFast();
+        timeoutsLeaveBreakerClosed();
+        cancelsRunningStatement();
+        cancelsStreamingResult();
+        System.out.println(failures == 0 ? "All checks passed" : failures + " check(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static void retriesSelectOnLostConnection() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        db.rows = 3;
+        try (Connection conn = ResilientConnection.open("fake:retry", db::open);
+             Statement stmt = conn.createStatement()) {
+            db.dropQueries = 1;
+            ResultSet rs = stmt.executeQuery("SELECT id FROM tours");
+            int count = 0;
+            while (rs.next()) count++;
+            check("SELECT is retried on a new connection", count == 3 && db.sessions.get() == 2);
+        }
+    }
+
+    private static void failsTransactionUntilRollback() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        try (Connection conn = ResilientConnection.open("fake:transaction", db::open)) {
+            conn.setAutoCommit(false);
+            db.dropQueries = 1;
+            check("lost transaction is not retried", fails(() -> conn.createStatement().executeQuery("SELECT 1")));
+            check("calls fail until rollback", fails(() -> conn.createStatement().executeQuery("SELECT 1")));
+            conn.rollback();
+            check("connection is usable after rollback", !fails(() -> conn.createStatement().executeQuery("SELECT 1")));
+        }
+    }
+
+    private static void breakerFailsFast() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        try (Connection conn = ResilientConnection.open("fake:breaker", db::open)) {
+            db.down = true;
+            db.dropQueries = Integer.MAX_VALUE;
+            for (int i = 0; i < 3; i++) fails(() -> conn.createStatement().executeQuery("SELECT 1"));
+            int opened = (int) db.sessions.get();
+            boolean failedFast = false;
+            try {
+                conn.createStatement();
+            } catch (SQLTransientConnectionException e) {
+                failedFast = e.getMessage().startsWith("Database unavailable");
+            }
+            check("open breaker fails without connecting", failedFast && db.sessions.get() == opened);
+        }
+    }
+
+    private static void timeoutsLeaveBreakerClosed() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        try (Connection conn = ResilientConnection.open("fake:timeout", db::open)) {
+            db.timeoutQueries = 5;
+            for (int i = 0; i < 5; i++) fails(() -> conn.createStatement().executeQuery("SELECT 1"));
+            check("statement timeouts do not open the breaker",
+                    !fails(() -> conn.createStatement().executeQuery("SELECT 1")) && db.sessions.get() == 1);
+        }
+    }
+
+    private static void cancelsRunningStatement() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        try (Connection conn = ResilientConnection.open("fake:cancel", db::open);
+             Statement stmt = conn.createStatement()) {
+            cancelLater(conn);
+            long start = System.nanoTime();
+            boolean interrupted = fails(() -> stmt.executeQuery("SELECT SLEEP(60)"));
+            check("running statement is cancelled", interrupted && elapsedMs(start) < 2000);
+        }
+    }
+
+    private static void cancelsStreamingResult() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        db.rows = 100_000;
+        try (Connection conn = ResilientConnection.open("fake:stream", db::open);
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT * FROM bookings");
+            cancelLater(conn);
+            long start = System.nanoTime();
+            int read = 0;
+            boolean interrupted = false;
+            try {
+                while (rs.next()) read++;
+            } catch (SQLException e) {
+                interrupted = "70100".equals(e.getSQLState());
+            }
+            check("streaming result is cancelled", interrupted && read < db.rows && elapsedMs(start) < 2000);
+            check("server query is killed", db.statements.contains("KILL QUERY 1"));
+            check("finished result is no longer cancellable", ResilientConnection.cancelRunning(conn) == 0);
+        }
+    }
+
+    private interface Call {
+        void run() throws SQLException;
+    }
+
+    private static boolean fails(Call call) {
+        try {
+            call.run();
+            return false;
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void cancelLater(Connection conn) {
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            ResilientConnection.cancelRunning(conn);
+        }, "check-cancel");
+        canceller.setDaemon(true);
+        canceller.start();
+    }
+
+    private static long elapsedMs(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println((passed ? "ok    " : "FAIL  ") + name);
+        if (!passed) failures++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+    }
+}
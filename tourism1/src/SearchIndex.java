@@ -0,0 +1,365 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index for the dashboard search box.
+ *
+ * Terms are the lower-cased words of destination names and countries, tour names, customer names,
+ * emails and phones (plus the phone as one digit string), and every entity id. They live in a
+ * character trie whose nodes hold the posting set of the term ending there, so a prefix query is a
+ * walk to the prefix node and a union over its subtree. A term that matches a destination also
+ * matches its tours, and one that matches a tour or customer also matches their bookings, so
+ * "smith bali" finds Smith's bookings on tours to Bali: each word is expanded that way and the
+ * results are intersected.
+ *
+ * Built once by streaming the four tables, then kept current from DomainEvents, which carry this
+ * client's writes as they happen and everyone's writes as DeltaSync sees them. Events that arrive
+ * while the tables stream are held back and applied once the load has finished, so a row the
+ * stream reads after it was changed or deleted cannot undo that change.
+ */
+class SearchIndex implements DomainEvents.Listener {
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final List<String> ENTITY_ORDER = List.of("booking", "customer", "tour", "destination");
+
+    /** One search result, labelled with the current names of the related rows. */
+    static final class Hit {
+        final String entity;
+        final String id;
+        final String label;
+
+        Hit(String entity, String id, String label) {
+            this.entity = entity;
+            this.id = id;
+            this.label = label;
+        }
+
+        @Override
+        public String toString() { return label; }
+    }
+
+    private static final class Doc {
+        final String entity;
+        final String id;
+        // name, country / name, destination id / name, email / tour id, customer id, travel date
+        String[] fields;
+        List<String> terms = Collections.emptyList();
+
+        Doc(String entity, String id) {
+            this.entity = entity;
+            this.id = id;
+        }
+    }
+
+    private static final class Node {
+        Map<Character, Node> children;
+        Set<Doc> postings;
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+    private final Map<String, Doc> docs = new HashMap<>();
+    private final Map<String, Set<Doc>> toursByDestination = new HashMap<>();
+    private final Map<String, Set<Doc>> bookingsByTour = new HashMap<>();
+    private final Map<String, Set<Doc>> bookingsByCustomer = new HashMap<>();
+    // Events published while load() runs; null once they have been applied
+    private List<DomainEvent> pending = new ArrayList<>();
+
+    /** Streams all four tables into the index. Subscribe the index to DomainEvents first so no write is missed. */
+    public void load(Connection conn) throws SQLException {
+        stream(conn, "SELECT id, name, country FROM destinations",
+                rs -> putDestination(rs.getString(1), rs.getString(2), rs.getString(3)));
+        stream(conn, "SELECT id, name, destination_id FROM tours",
+                rs -> putTour(rs.getString(1), rs.getString(2), rs.getString(3)));
+        stream(conn, "SELECT id, name, email, phone FROM customers",
+                rs -> putCustomer(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)));
+        stream(conn, "SELECT id, tour_id, customer_id, travel_date FROM bookings",
+                rs -> putBooking(rs.getString(1), rs.getString(2), rs.getString(3), String.valueOf(rs.getDate(4))));
+
+        synchronized (this) {
+            apply(pending);
+            pending = null;
+        }
+    }
+
+    private interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    private static void stream(Connection conn, String query, RowHandler handler) throws SQLException {
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE makes Connector/J stream rows instead of buffering the full result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            ResultSet rs = stmt.executeQuery(query);
+            while (rs.next()) handler.handle(rs);
+        }
+    }
+
+    @Override
+    public void onEvents(List<DomainEvent> events) {
+        synchronized (this) {
+            if (pending != null) {
+                pending.addAll(events);
+                return;
+            }
+        }
+        apply(events);
+    }
+
+    private void apply(List<DomainEvent> events) {
+        for (DomainEvent event : events) {
+            if (event.change == DomainEvent.Change.DELETED) {
+                remove(event.entity.key, event.id);
+            } else {
+                index(event.row);
+            }
+        }
+    }
+
+    private void index(Object entity) {
+        if (entity instanceof Destination) {
+            Destination d = (Destination) entity;
+            putDestination(d.getId(), d.getName(), d.getCountry());
+        } else if (entity instanceof Tour) {
+            Tour t = (Tour) entity;
+            putTour(t.getId(), t.getName(), t.getDestinationId());
+        } else if (entity instanceof Customer) {
+            Customer c = (Customer) entity;
+            putCustomer(c.getId(), c.getName(), c.getEmail(), c.getPhone());
+        } else if (entity instanceof Booking) {
+            Booking b = (Booking) entity;
+            putBooking(b.getId(), b.getTourId(), b.getCustomerId(), String.valueOf(b.getTravelDate()));
+        }
+    }
+
+    void remove(String entity, String id) {
+        lock.writeLock().lock();
+        try {
+            Doc doc = docs.remove(entity + ":" + id);
+            if (doc == null) return;
+            unindex(doc);
+            unlink(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putDestination(String id, String name, String country) {
+        put("destination", id, new String[]{name, country}, name, country);
+    }
+
+    void putTour(String id, String name, String destinationId) {
+        put("tour", id, new String[]{name, destinationId}, name);
+    }
+
+    void putCustomer(String id, String name, String email, String phone) {
+        String digits = phone == null ? "" : phone.replaceAll("\\D", "");
+        put("customer", id, new String[]{name, email}, name, email, phone, digits);
+    }
+
+    void putBooking(String id, String tourId, String customerId, String travelDate) {
+        put("booking", id, new String[]{tourId, customerId, travelDate});
+    }
+
+    private void put(String entity, String id, String[] fields, String... text) {
+        List<String> terms = new ArrayList<>();
+        terms.add(id.toLowerCase(Locale.ROOT));
+        for (String value : text) {
+            if (value == null) continue;
+            for (String word : WORD_SEPARATOR.split(value.toLowerCase(Locale.ROOT))) {
+                if (!word.isEmpty() && !terms.contains(word)) terms.add(word);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            Doc doc = docs.computeIfAbsent(entity + ":" + id, key -> new Doc(entity, id));
+            unindex(doc);
+            if (doc.fields != null) unlink(doc);
+            doc.fields = fields;
+            doc.terms = terms;
+            link(doc);
+            for (String term : terms) {
+                Node node = root;
+                for (int i = 0; i < term.length(); i++) {
+                    if (node.children == null) node.children = new HashMap<>(4);
+                    node = node.children.computeIfAbsent(term.charAt(i), c -> new Node());
+                }
+                if (node.postings == null) node.postings = new HashSet<>(4);
+                node.postings.add(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Emptied trie nodes are left in place; they cost little and are reused when a similar term returns
+    private void unindex(Doc doc) {
+        for (String term : doc.terms) {
+            Node node = find(term);
+            if (node != null && node.postings != null) node.postings.remove(doc);
+        }
+        doc.terms = Collections.emptyList();
+    }
+
+    private void link(Doc doc) {
+        switch (doc.entity) {
+            case "tour":
+                toursByDestination.computeIfAbsent(doc.fields[1], k -> new HashSet<>()).add(doc);
+                break;
+            case "booking":
+                bookingsByTour.computeIfAbsent(doc.fields[0], k -> new HashSet<>()).add(doc);
+                bookingsByCustomer.computeIfAbsent(doc.fields[1], k -> new HashSet<>()).add(doc);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void unlink(Doc doc) {
+        switch (doc.entity) {
+            case "tour":
+                removeLink(toursByDestination, doc.fields[1], doc);
+                break;
+            case "booking":
+                removeLink(bookingsByTour, doc.fields[0], doc);
+                removeLink(bookingsByCustomer, doc.fields[1], doc);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void removeLink(Map<String, Set<Doc>> links, String key, Doc doc) {
+        Set<Doc> set = links.get(key);
+        if (set == null) return;
+        set.remove(doc);
+        if (set.isEmpty()) links.remove(key);
+    }
+
+    /** Entities matching every word of the query as a prefix, bookings first, at most limit of them. */
+    public List<Hit> search(String query, int limit) {
+        String[] words = WORD_SEPARATOR.split(query.trim().toLowerCase(Locale.ROOT));
+        lock.readLock().lock();
+        try {
+            Set<Doc> result = null;
+            for (String word : words) {
+                if (word.isEmpty()) continue;
+                Set<Doc> matches = expand(prefixMatches(word));
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.retainAll(matches);
+                }
+                if (result.isEmpty()) break;
+            }
+            if (result == null || result.isEmpty()) return Collections.emptyList();
+
+            // Keeps the first `limit` hits by entity and id without sorting everything that matched
+            Comparator<Doc> order = Comparator.<Doc>comparingInt(d -> ENTITY_ORDER.indexOf(d.entity))
+                    .thenComparing(d -> d.id);
+            PriorityQueue<Doc> top = new PriorityQueue<>(limit + 1, order.reversed());
+            for (Doc doc : result) {
+                top.add(doc);
+                if (top.size() > limit) top.poll();
+            }
+            List<Doc> sorted = new ArrayList<>(top);
+            sorted.sort(order);
+
+            List<Hit> hits = new ArrayList<>(sorted.size());
+            for (Doc doc : sorted) hits.add(new Hit(doc.entity, doc.id, label(doc)));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children == null ? null : node.children.get(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private Set<Doc> prefixMatches(String prefix) {
+        Set<Doc> matches = new HashSet<>();
+        Node start = find(prefix);
+        if (start == null) return matches;
+
+        List<Node> pending = new ArrayList<>();
+        pending.add(start);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            if (node.postings != null) matches.addAll(node.postings);
+            if (node.children != null) pending.addAll(node.children.values());
+        }
+        return matches;
+    }
+
+    // Destination -> its tours -> their bookings; customer -> its bookings
+    private Set<Doc> expand(Set<Doc> matches) {
+        Set<Doc> expanded = new HashSet<>(matches);
+        for (Doc doc : matches) {
+            switch (doc.entity) {
+                case "destination":
+                    for (Doc tour : toursByDestination.getOrDefault(doc.id, Collections.emptySet())) {
+                        expanded.add(tour);
+                        expanded.addAll(bookingsByTour.getOrDefault(tour.id, Collections.emptySet()));
+                    }
+                    break;
+                case "tour":
+                    expanded.addAll(bookingsByTour.getOrDefault(doc.id, Collections.emptySet()));
+                    break;
+                case "customer":
+                    expanded.addAll(bookingsByCustomer.getOrDefault(doc.id, Collections.emptySet()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return expanded;
+    }
+
+    private String label(Doc doc) {
+        String[] f = doc.fields;
+        switch (doc.entity) {
+            case "destination":
+                return "Destination " + doc.id + ": " + f[0] + ", " + f[1];
+            case "tour":
+                return "Tour " + doc.id + ": " + f[0] + " (" + nameOf("destination", f[1]) + ")";
+            case "customer":
+                return "Customer " + doc.id + ": " + f[0] + " <" + f[1] + ">";
+            default:
+                return "Booking " + doc.id + ": " + nameOf("customer", f[1]) + " → " +
+                        nameOf("tour", f[0]) + ", " + f[2];
+        }
+    }
+
+    private String nameOf(String entity, String id) {
+        Doc doc = docs.get(entity + ":" + id);
+        return doc != null ? doc.fields[0] : id;
+    }
+
+    /** Current name of a destination, tour or customer, or null when it is not indexed. */
+    public String findName(String entity, String id) {
+        lock.readLock().lock();
+        try {
+            Doc doc = docs.get(entity + ":" + id);
+            return doc != null ? doc.fields[0] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Available tours per travel month, cheapest first, for travel-date driven searches.
+ *
+ * Destination.bestSeason is free text. seasonMonths turns it into a 12-bit month set (bit 0 is
+ * January) when a destination is saved, and destinations.season_months stores it, so the index works
+ * from the stored sets and never parses text. A season that is not recognized counts as good all year.
+ * The index keeps one precomputed, price-ordered list per month, so a lookup is an array access
+ * plus a pass that drops tours whose capacity per departure is below the party size; the lists are
+ * rebuilt whenever a tour or destination changes, which costs a sort of the (small) tours table in
+ * memory.
+ */
+class SeasonIndex implements DomainEvents.Listener {
+    static final int ALL_MONTHS = 0xFFF;
+
+    // Northern-hemisphere meteorological seasons, as used by the destination form
+    private static final Map<String, Integer> NAMED = new HashMap<>();
+    static {
+        NAMED.put("spring", months(3, 5));
+        NAMED.put("summer", months(6, 8));
+        NAMED.put("autumn", months(9, 11));
+        NAMED.put("fall", months(9, 11));
+        NAMED.put("winter", months(12, 2));
+        NAMED.put("all year", ALL_MONTHS);
+        NAMED.put("year round", ALL_MONTHS);
+        NAMED.put("year-round", ALL_MONTHS);
+        NAMED.put("any", ALL_MONTHS);
+    }
+    private static final Pattern MONTH_RANGE = Pattern.compile("([a-z]{3,9})(?:\\s*(?:-|–|to|until)\\s*([a-z]{3,9}))?");
+
+    /** A tour that is available in a given month. */
+    static final class Match {
+        final String tourId;
+        final String tourName;
+        final String destinationName;
+        final int durationDays;
+        final double price;
+        // Seats per departure; null when unlimited
+        final Integer capacity;
+
+        Match(String tourId, String tourName, String destinationName, int durationDays, double price,
+              Integer capacity) {
+            this.tourId = tourId;
+            this.tourName = tourName;
+            this.destinationName = destinationName;
+            this.durationDays = durationDays;
+            this.price = price;
+            this.capacity = capacity;
+        }
+    }
+
+    private final Map<String, Destination> destinations = new HashMap<>();
+    private final Map<String, Tour> tours = new HashMap<>();
+    private volatile List<List<Match>> byMonth = Collections.nCopies(12, Collections.emptyList());
+    // Events published while load() runs; null once they have been applied
+    private List<DomainEvent> pending = new ArrayList<>();
+
+    /** Adds destinations.season_months and fills it for rows written before it existed. */
+    static void createSchema(Connection conn) throws SQLException {
+        SqlSupport.ensureColumn(conn, "destinations", "season_months", "SMALLINT");
+
+        Map<String, Integer> pending = new HashMap<>();
+        // Earlier versions stored 0 for a season they did not recognize
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, best_season FROM destinations WHERE season_months IS NULL OR season_months = 0")) {
+            while (rs.next()) pending.put(rs.getString(1), seasonMonths(rs.getString(2)));
+        }
+        if (pending.isEmpty()) return;
+
+        SqlSupport.inTransaction(conn, c -> {
+            try (PreparedStatement pstmt = c.prepareStatement("UPDATE destinations SET season_months = ? WHERE id = ?")) {
+                for (Map.Entry<String, Integer> row : pending.entrySet()) {
+                    pstmt.setInt(1, row.getValue());
+                    pstmt.setString(2, row.getKey());
+                    pstmt.addBatch();
+                }
+                return pstmt.executeBatch().length;
+            }
+        });
+    }
+
+    /**
+     * Month set of a best-season text: a season name ("Summer"), "All Year", a month ("July") or a
+     * month range ("Nov-Mar", "April to June"), or several joined by "," / "and" / "/".
+     * Returns 0 when nothing in the text is recognized.
+     */
+    static int monthMask(String bestSeason) {
+        if (bestSeason == null) return 0;
+        String text = bestSeason.trim().toLowerCase(Locale.ROOT);
+        Integer named = NAMED.get(text);
+        if (named != null) return named;
+
+        int mask = 0;
+        for (String part : text.split("\\s*(?:,|/|&|\\band\\b)\\s*")) {
+            named = NAMED.get(part);
+            if (named != null) {
+                mask |= named;
+                continue;
+            }
+            Matcher m = MONTH_RANGE.matcher(part);
+            if (!m.matches()) return 0;
+            Month from = month(m.group(1));
+            Month to = m.group(2) != null ? month(m.group(2)) : from;
+            if (from == null || to == null) return 0;
+            mask |= months(from.getValue(), to.getValue());
+        }
+        return mask;
+    }
+
+    /** The month set stored and indexed for a best-season text: monthMask, or every month when it is not recognized. */
+    static int seasonMonths(String bestSeason) {
+        int mask = monthMask(bestSeason);
+        return mask == 0 ? ALL_MONTHS : mask;
+    }
+
+    // Inclusive and wrapping: months(11, 2) is November to February
+    private static int months(int from, int to) {
+        int mask = 0;
+        for (int m = from; ; m = m % 12 + 1) {
+            mask |= 1 << (m - 1);
+            if (m == to) return mask;
+        }
+    }
+
+    private static Month month(String word) {
+        for (Month month : Month.values()) {
+            String full = month.getDisplayName(TextStyle.FULL, Locale.ENGLISH).toLowerCase(Locale.ROOT);
+            if (word.length() >= 3 && full.startsWith(word)) return month;
+        }
+        return null;
+    }
+
+    /** Loads tours and destinations. Subscribe the index to DomainEvents first so no write is missed. */
+    public void load(Connection conn) throws SQLException {
+        List<Destination> loadedDestinations = Destination.getAllDestinations(conn);
+        List<Tour> loadedTours = Tour.getAllTours(conn);
+        synchronized (this) {
+            for (Destination d : loadedDestinations) destinations.put(d.getId(), d);
+            for (Tour t : loadedTours) tours.put(t.getId(), t);
+            // Writes that raced the queries above are newer than the rows they returned
+            apply(pending);
+            pending = null;
+            rebuild();
+        }
+    }
+
+    /**
+     * Available tours whose destination is in season in the travel date's month and that take a
+     * party of the given size on one departure, cheapest first.
+     */
+    public List<Match> lookup(LocalDate travelDate, int people) {
+        List<Match> inSeason = byMonth.get(travelDate.getMonthValue() - 1);
+        List<Match> matches = new ArrayList<>(inSeason.size());
+        for (Match m : inSeason) {
+            if (m.capacity == null || m.capacity >= people) matches.add(m);
+        }
+        return matches;
+    }
+
+    /** Rebuilds the month lists once per batch, and only when a tour or destination changed. */
+    @Override
+    public synchronized void onEvents(List<DomainEvent> events) {
+        if (pending != null) {
+            pending.addAll(events);
+            return;
+        }
+        if (apply(events)) rebuild();
+    }
+
+    private boolean apply(List<DomainEvent> events) {
+        boolean changed = false;
+        for (DomainEvent event : events) {
+            boolean deleted = event.change == DomainEvent.Change.DELETED;
+            if (event.entity == DomainEvent.Entity.DESTINATION) {
+                if (deleted) destinations.remove(event.id); else destinations.put(event.id, (Destination) event.row);
+            } else if (event.entity == DomainEvent.Entity.TOUR) {
+                if (deleted) tours.remove(event.id); else tours.put(event.id, (Tour) event.row);
+            } else {
+                continue;
+            }
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void rebuild() {
+        List<Match> available = new ArrayList<>();
+        List<Integer> masks = new ArrayList<>();
+        for (Tour t : tours.values()) {
+            Destination d = destinations.get(t.getDestinationId());
+            if (!t.isAvailable() || d == null) continue;
+            available.add(new Match(t.getId(), t.getName(), d.getName(), t.getDurationDays(), t.getPrice(),
+                    t.getCapacity()));
+            masks.add(d.getSeasonMonths());
+        }
+
+        List<List<Match>> months = new ArrayList<>(12);
+        for (int month = 0; month < 12; month++) {
+            List<Match> matches = new ArrayList<>();
+            for (int i = 0; i < available.size(); i++) {
+                if ((masks.get(i) & (1 << month)) != 0) matches.add(available.get(i));
+            }
+            matches.sort(Comparator.<Match>comparingDouble(m -> m.price).thenComparing(m -> m.tourName));
+            months.add(Collections.unmodifiableList(matches));
+        }
+        byMonth = Collections.unmodifiableList(months);
+    }
+}
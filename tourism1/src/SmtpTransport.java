@@ -0,0 +1,123 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain SMTP delivery of notification batches: one connection per batch, one MAIL transaction per
+ * message. A message the server rejects is reported as failed and the session is reset for the next
+ * one; a broken connection fails the rest of the batch by throwing.
+ *
+ * Configured with tourism.smtp.host, tourism.smtp.port (25) and tourism.smtp.from. There is no TLS
+ * or authentication, so it is meant for a local relay or a test SMTP server.
+ */
+class SmtpTransport implements NotificationDispatcher.Transport {
+    private static final int TIMEOUT_MS = 30_000;
+    private static final String LOCAL_NAME = "tourism.local";
+
+    private final String host;
+    private final int port;
+    private final String from;
+
+    SmtpTransport(String host, int port, String from) {
+        this.host = host;
+        this.port = port;
+        this.from = from;
+    }
+
+    static SmtpTransport fromProperties() {
+        return new SmtpTransport(System.getProperty("tourism.smtp.host", "localhost"),
+                Integer.getInteger("tourism.smtp.port", 25),
+                System.getProperty("tourism.smtp.from", "bookings@tourism.local"));
+    }
+
+    @Override
+    public Map<String, String> send(List<NotificationOutbox.Message> batch) throws IOException {
+        Map<String, String> failures = new HashMap<>();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+
+            expect(in, 220);
+            command(in, out, "HELO " + LOCAL_NAME, 250);
+            for (NotificationOutbox.Message m : batch) {
+                String error = deliver(in, out, m);
+                if (error != null) {
+                    failures.put(m.idempotencyKey, error);
+                    command(in, out, "RSET", 250);
+                }
+            }
+            command(in, out, "QUIT", 221);
+        }
+        return failures;
+    }
+
+    // Returns the server's rejection, or null once the message is accepted
+    private String deliver(BufferedReader in, OutputStream out, NotificationOutbox.Message m) throws IOException {
+        String reply = exchange(in, out, "MAIL FROM:<" + from + ">");
+        if (!reply.startsWith("250")) return reply;
+        reply = exchange(in, out, "RCPT TO:<" + m.recipient + ">");
+        if (!reply.startsWith("250") && !reply.startsWith("251")) return reply;
+        reply = exchange(in, out, "DATA");
+        if (!reply.startsWith("354")) return reply;
+
+        StringBuilder data = new StringBuilder();
+        data.append("From: ").append(from).append("\r\n")
+                .append("To: ").append(m.recipient).append("\r\n")
+                .append("Subject: ").append(m.subject.replaceAll("[\r\n]", " ")).append("\r\n")
+                .append("Date: ").append(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now())).append("\r\n")
+                // The idempotency key makes the Message-ID, so a re-sent message is recognizably the same one
+                .append("Message-ID: <").append(m.idempotencyKey.replace(':', '.')).append('@').append(LOCAL_NAME).append(">\r\n")
+                .append("MIME-Version: 1.0\r\n")
+                .append("Content-Type: text/plain; charset=UTF-8\r\n")
+                .append("Content-Transfer-Encoding: 8bit\r\n\r\n");
+        for (String line : m.body.split("\r?\n", -1)) {
+            // Dot-stuffing, so a body line that is a single dot does not end the message
+            if (line.startsWith(".")) data.append('.');
+            data.append(line).append("\r\n");
+        }
+        data.append(".\r\n");
+        out.write(data.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        reply = readReply(in);
+        return reply.startsWith("250") ? null : reply;
+    }
+
+    private static void command(BufferedReader in, OutputStream out, String line, int code) throws IOException {
+        String reply = exchange(in, out, line);
+        if (!reply.startsWith(Integer.toString(code))) {
+            throw new IOException("SMTP " + line.split(" ")[0] + " failed: " + reply);
+        }
+    }
+
+    private static void expect(BufferedReader in, int code) throws IOException {
+        String reply = readReply(in);
+        if (!reply.startsWith(Integer.toString(code))) throw new IOException("SMTP server refused: " + reply);
+    }
+
+    private static String exchange(BufferedReader in, OutputStream out, String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return readReply(in);
+    }
+
+    // Multi-line replies continue with "250-..." and end with "250 ..."; the last line is returned
+    private static String readReply(BufferedReader in) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) throw new IOException("SMTP server closed the connection");
+        } while (line.length() > 3 && line.charAt(3) == '-');
+        return line;
+    }
+}
@@ -0,0 +1,177 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers for set-based statements over id lists and for running work in one transaction.
+ */
+class SqlSupport {
+    // Keeps IN lists well below max_allowed_packet while still covering typical selections in one statement
+    static final int CHUNK_SIZE = 1000;
+
+    interface Work<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    interface IdsFunction<T> {
+        T apply(Connection conn, List<String> ids) throws SQLException;
+    }
+
+    private SqlSupport() {
+    }
+
+    static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    static List<List<String>> chunks(List<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            chunks.add(ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    static int bind(PreparedStatement pstmt, int firstIndex, List<String> ids) throws SQLException {
+        int index = firstIndex;
+        for (String id : ids) {
+            pstmt.setString(index++, id);
+        }
+        return index;
+    }
+
+    static <T> T inTransaction(Connection conn, Work<T> work) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            // Already inside the caller's transaction: join it and let the caller commit
+            return work.run(conn);
+        }
+
+        conn.setAutoCommit(false);
+        try {
+            T result = work.run(conn);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /** Runs "... WHERE id IN (...)" once per chunk inside one transaction and returns the total update count. */
+    static int updateByIds(Connection conn, String sqlPrefix, List<String> ids) throws SQLException {
+        return updateByIds(conn, sqlPrefix, Collections.emptyList(), ids);
+    }
+
+    static int updateByIds(Connection conn, String sqlPrefix, List<Object> leadingParams,
+                           List<String> ids) throws SQLException {
+        if (ids.isEmpty()) return 0;
+
+        return inTransaction(conn, c -> {
+            int updated = 0;
+            for (List<String> chunk : chunks(ids)) {
+                try (PreparedStatement pstmt = c.prepareStatement(sqlPrefix + " (" + placeholders(chunk.size()) + ")")) {
+                    int index = 1;
+                    for (Object param : leadingParams) {
+                        pstmt.setObject(index++, param);
+                    }
+                    bind(pstmt, index, chunk);
+                    updated += pstmt.executeUpdate();
+                }
+            }
+            return updated;
+        });
+    }
+
+    static void ensureIndex(Connection conn, String table, String index, String columns) throws SQLException {
+        String query = "SELECT 1 FROM information_schema.statistics " +
+                "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, index);
+            if (pstmt.executeQuery().next()) return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+        }
+    }
+
+    static void ensureColumn(Connection conn, String table, String column, String definition) throws SQLException {
+        String query = "SELECT 1 FROM information_schema.columns " +
+                "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, column);
+            if (pstmt.executeQuery().next()) return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    static void ensureTrigger(Connection conn, String trigger, String ddl) throws SQLException {
+        String query = "SELECT 1 FROM information_schema.triggers WHERE trigger_schema = DATABASE() AND trigger_name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, trigger);
+            if (pstmt.executeQuery().next()) return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(ddl);
+        }
+    }
+
+    /** Returns the ids for which the given EXISTS-filtered query yields a row. */
+    static List<String> selectIds(Connection conn, String sqlPrefix, List<String> ids) throws SQLException {
+        return selectIds(conn, sqlPrefix, ids, "");
+    }
+
+    /** As above, with a clause after the IN list, e.g. " FOR UPDATE". */
+    static List<String> selectIds(Connection conn, String sqlPrefix, List<String> ids,
+                                  String sqlSuffix) throws SQLException {
+        List<String> found = new ArrayList<>();
+        for (List<String> chunk : chunks(ids)) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    sqlPrefix + " (" + placeholders(chunk.size()) + ")" + sqlSuffix)) {
+                bind(pstmt, 1, chunk);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    found.add(rs.getString(1));
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Locks the row with the given id until commit; false when there is no such row. */
+    static boolean lockById(Connection conn, String table, String id) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM " + table + " WHERE id = ? FOR UPDATE")) {
+            pstmt.setString(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /** Runs "... WHERE id IN (...)" once per chunk and maps every row. */
+    static <T> List<T> selectByIds(Connection conn, String sqlPrefix, List<String> ids,
+                                   RowMapper<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        for (List<String> chunk : chunks(ids)) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlPrefix + " (" + placeholders(chunk.size()) + ")")) {
+                bind(pstmt, 1, chunk);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(mapper.map(rs));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+}
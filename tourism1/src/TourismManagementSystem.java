@@ -1,27 +1,95 @@
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.format.TextStyle;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class TourismManagementSystem extends JFrame {
+    private static final long serialVersionUID = 1L;
+
     private final CardLayout cardLayout = new CardLayout();
     private final JPanel mainPanel = new JPanel(cardLayout);
     private final Map<String, JPanel> panels = new HashMap<>();
 
-    // Database connection details
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/tourism_db";
-    private static final String DB_USER = "root";
-    private static final String DB_PASSWORD = "dbms";
-    private Connection connection;
+    // Panel registry: module panels are built on first navigation and register their table here
+    private final Map<String, Supplier<JPanel>> panelFactories = new HashMap<>();
+    private final Map<String, JTable> tables = new HashMap<>();
+    private final Map<String, JLabel> tileCounts = new HashMap<>();
+    // Entities whose tile count changed since the last count, and the timer that batches the counting
+    private static final int COUNT_INTERVAL_MS = 1000;
+    private final Set<DomainEvent.Entity> staleCounts = EnumSet.noneOf(DomainEvent.Entity.class);
+    private Timer countTimer;
+
+    // -Dtourism.startup.report=true prints how long the login screen took to appear
+    private static final boolean REPORT_STARTUP = Boolean.getBoolean("tourism.startup.report");
+    private static final long LAUNCH_NANOS = System.nanoTime();
+    private boolean startupReported;
+
+    private static final String NEW_ID_PLACEHOLDER = "(assigned on save)";
+
+    private volatile Connection connection;
+    private volatile ReadRouter reads;
+    private BookingLifecycleJob lifecycleJob;
+    private NotificationDispatcher notificationDispatcher;
+    private Waitlist waitlist;
+    private BookingPartitions partitionJob;
+    private DeltaSync deltaSync;
+    private volatile BookingColumnStore bookingStore;
+    // Deltas that arrive while the store is loading, replayed onto it before it is published
+    private final Object bookingStoreLock = new Object();
+    private List<DeltaSync.Delta> bookingStoreBacklog;
+    private volatile SearchIndex searchIndex;
+    private volatile CoBookingIndex coBookings = CoBookingIndex.readSaved();
+    private volatile SeasonIndex seasonIndex;
+    private final OccupancyTableModel occupancyModel = new OccupancyTableModel();
+    private OccupancyIndex occupancyIndex;
+    // EDT only: the latest occupancy load, and the events published since it started (null when idle)
+    private int occupancyLoad;
+    private List<DomainEvent> occupancyBacklog;
+    private JLabel occupancyRange;
+
+    // Local snapshot used until the database answers, or for the whole session in offline mode
+    private LocalSnapshot snapshot;
+    private boolean offline;
+    private final Set<String> loadedPanels = new LinkedHashSet<>();
+    private final List<JLabel> statusLabels = new ArrayList<>();
+    private String statusText;
 
     public TourismManagementSystem() {
-        configureFrame();
+        snapshot = LocalSnapshot.load();
+        // Connect and check the schema in the background while the UI is being built
         initializeDatabase();
+        configureFrame();
         createPanels();
         showLoginScreen();
     }
@@ -35,19 +103,129 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void initializeDatabase() {
+        setStatus(snapshot != null ? "Connecting... (showing local snapshot)" : "Connecting...");
+
+        new SwingWorker<Connection, Void>() {
+            @Override
+            protected Connection doInBackground() throws Exception {
+                // Schema changes can outlast the statement timeout of regular connections
+                try (Connection schema = Database.connectForMaintenance()) {
+                    createTables(schema);
+                }
+                return Database.connect();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    Connection conn = get();
+                    reads = new ReadRouter(conn);
+                    connection = conn;
+                    setStatus(null);
+                    reconcileSnapshot();
+                    startBackgroundJobs();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    cause.printStackTrace();
+                    enterOfflineMode(cause);
+                }
+            }
+        }.execute();
+    }
+
+    private void enterOfflineMode(Throwable cause) {
+        offline = true;
+        setTitle("Tourism Management System [Offline - read-only]");
+
+        String source = snapshot != null
+                ? "showing local snapshot from " + new java.util.Date(snapshot.getTakenAt())
+                : "no local snapshot available";
+        setStatus("Offline (read-only), " + source);
+        JOptionPane.showMessageDialog(this, "Database connection failed: " + cause.getMessage() +
+                        "\nRunning in read-only offline mode, " + source + ".",
+                "Offline", JOptionPane.WARNING_MESSAGE);
+    }
+
+    // Refreshes the tables the user has already opened and rewrites the local snapshot
+    private void reconcileSnapshot() {
+        ReadRouter router = reads;
+        LocalSnapshot previous = snapshot;
+
+        new SwingWorker<LocalSnapshot, Void>() {
+            @Override
+            protected LocalSnapshot doInBackground() throws Exception {
+                LocalSnapshot fresh = LocalSnapshot.capture(router.forRead());
+                fresh.save(previous);
+                return fresh;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    snapshot = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+                for (String panelName : loadedPanels) {
+                    refreshTable(panelName);
+                }
+            }
+        }.execute();
+    }
+
+    private void startBackgroundJobs() {
+        lifecycleJob = new BookingLifecycleJob();
+        lifecycleJob.start();
+        NotificationDispatcher.Transport transport = NotificationDispatcher.configuredTransport();
+        if (transport != null) {
+            notificationDispatcher = new NotificationDispatcher(transport);
+            notificationDispatcher.start();
+        } else {
+            System.err.println("No notification transport configured (tourism.smtp.host); messages stay queued");
+        }
+        waitlist = new Waitlist();
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            createTables();
-        } catch (Exception e) {
+            waitlist.start(connection);
+        } catch (SQLException e) {
             e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Database connection failed: " + e.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
         }
+
+        DomainEvents.subscribeOnEdt(this::applyEvents);
+        refreshTileCounts(EnumSet.allOf(DomainEvent.Entity.class));
+        deltaSync = new DeltaSync(this::applyDelta);
+        deltaSync.start();
+
+        buildSearchIndex();
+        buildCoBookingIndex();
+        buildSeasonIndex();
+        buildDuplicateDetector();
+
+        partitionJob = new BookingPartitions();
+        partitionJob.start();
+    }
+
+    private boolean requireOnline() {
+        if (connection != null) return true;
+
+        String message = offline
+                ? "The database is unreachable. Changes are disabled in offline mode."
+                : "Still connecting to the database, please try again in a moment.";
+        JOptionPane.showMessageDialog(this, message, "Read-only", JOptionPane.WARNING_MESSAGE);
+        return false;
+    }
+
+    private void setStatus(String text) {
+        statusText = text;
+        for (JLabel label : statusLabels) {
+            label.setText(statusLine());
+        }
+    }
+
+    private String statusLine() {
+        return statusText == null ? "Tourism Management System v1.0" : "Tourism Management System v1.0 | " + statusText;
     }
 
-    private void createTables() throws SQLException {
+    static void createTables(Connection connection) throws SQLException {
         try (Statement stmt = connection.createStatement()) {
             // Create destinations table
             stmt.execute("CREATE TABLE IF NOT EXISTS destinations (" +
@@ -77,7 +255,7 @@ public class TourismManagementSystem extends JFrame {
 
             // Create bookings table
             stmt.execute("CREATE TABLE IF NOT EXISTS bookings (" +
-                    "id VARCHAR(10) PRIMARY KEY, " +
+                    "id VARCHAR(10) NOT NULL, " +
                     "tour_id VARCHAR(10) NOT NULL, " +
                     "customer_id VARCHAR(10) NOT NULL, " +
                     "booking_date DATE NOT NULL, " +
@@ -85,26 +263,70 @@ public class TourismManagementSystem extends JFrame {
                     "num_people INT NOT NULL, " +
                     "total_price DECIMAL(10,2) NOT NULL, " +
                     "status VARCHAR(20) DEFAULT 'Confirmed', " +
-                    "FOREIGN KEY (tour_id) REFERENCES tours(id), " +
-                    "FOREIGN KEY (customer_id) REFERENCES customers(id))");
+                    "PRIMARY KEY (id, travel_date), " +
+                    "INDEX idx_bookings_tour (tour_id), " +
+                    "INDEX idx_bookings_customer (customer_id))");
         }
+
+        DeltaSync.createSchema(connection);
+        IdAllocator.createSchema(connection);
+        DuplicateDetector.createSchema(connection);
+        SeasonIndex.createSchema(connection);
+        NotificationOutbox.createSchema(connection);
+        Waitlist.createSchema(connection);
+        Itinerary.createSchema(connection);
+
+        // Indexes for the time-based status transitions of BookingLifecycleJob
+        SqlSupport.ensureIndex(connection, "bookings", "idx_bookings_status_travel", "status, travel_date");
+        SqlSupport.ensureIndex(connection, "bookings", "idx_bookings_status_booked", "status, booking_date");
+
+        BookingPartitions.createSchema(connection);
     }
 
     private void createPanels() {
-        panels.put("login", createLoginPanel());
-        panels.put("dashboard", createDashboardPanel());
-        panels.put("destination", createDestinationPanel());
-        panels.put("tour", createTourPanel());
-        panels.put("customer", createCustomerPanel());
-        panels.put("booking", createBookingPanel());
-
-        for (Map.Entry<String, JPanel> entry : panels.entrySet()) {
-            mainPanel.add(entry.getValue(), entry.getKey());
+        panelFactories.put("login", this::createLoginPanel);
+        panelFactories.put("dashboard", this::createDashboardPanel);
+        panelFactories.put("destination", this::createDestinationPanel);
+        panelFactories.put("tour", this::createTourPanel);
+        panelFactories.put("customer", this::createCustomerPanel);
+        panelFactories.put("booking", this::createBookingPanel);
+        panelFactories.put("occupancy", this::createOccupancyPanel);
+
+        ensurePanel("login");
+    }
+
+    private JPanel ensurePanel(String panelName) {
+        JPanel panel = panels.get(panelName);
+        if (panel == null) {
+            panel = panelFactories.get(panelName).get();
+            panels.put(panelName, panel);
+            mainPanel.add(panel, panelName);
         }
+        return panel;
+    }
+
+    private void showPanel(String panelName) {
+        ensurePanel(panelName);
+        cardLayout.show(mainPanel, panelName);
+    }
+
+    private void reportStartupTime() {
+        if (!REPORT_STARTUP || startupReported) return;
+        startupReported = true;
+
+        long sinceMain = (System.nanoTime() - LAUNCH_NANOS) / 1_000_000;
+        long sinceJvmStart = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.println("Login screen ready in " + sinceMain + " ms (" + sinceJvmStart + " ms since JVM start)");
     }
 
     private JPanel createLoginPanel() {
-        JPanel panel = new GradientPanel(new Color(44, 62, 80), new Color(52, 73, 94));
+        JPanel panel = new GradientPanel(new Color(44, 62, 80), new Color(52, 73, 94)) {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                reportStartupTime();
+            }
+        };
         panel.setLayout(new GridBagLayout());
 
         GridBagConstraints gbc = new GridBagConstraints();
@@ -132,7 +354,7 @@ public class TourismManagementSystem extends JFrame {
 
         loginBtn.addActionListener(e -> {
             if ("admin".equals(username.getText()) && "admin123".equals(new String(password.getPassword()))) {
-                cardLayout.show(mainPanel, "dashboard");
+                showPanel("dashboard");
             } else {
                 JOptionPane.showMessageDialog(panel, "Invalid credentials", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -154,26 +376,27 @@ public class TourismManagementSystem extends JFrame {
         title.setFont(new Font("Segoe UI", Font.BOLD, 24));
         title.setForeground(Color.WHITE);
         header.add(title, BorderLayout.WEST);
+        header.add(createSearchBox(), BorderLayout.CENTER);
 
         JButton logout = new JButton("Logout");
-        logout.addActionListener(e -> cardLayout.show(mainPanel, "login"));
+        logout.addActionListener(e -> showPanel("login"));
         header.add(logout, BorderLayout.EAST);
 
         panel.add(header, BorderLayout.NORTH);
 
-        JPanel cards = new JPanel(new GridLayout(2, 2, 20, 20));
+        JPanel cards = new JPanel(new GridLayout(2, 3, 20, 20));
         cards.setOpaque(false);
         cards.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
-        String[] modules = {"Destination", "Tour", "Customer", "Booking"};
-        String[] icons = {"🌍", "✈️", "👤", "📅"};
+        String[] modules = {"Destination", "Tour", "Customer", "Booking", "Occupancy"};
+        String[] icons = {"🌍", "✈️", "👤", "📅", "📊"};
 
         for (int i = 0; i < modules.length; i++) {
             JPanel card = createCard(modules[i], icons[i]);
             final String panelName = modules[i].toLowerCase();
             card.addMouseListener(new MouseAdapter() {
                 public void mouseClicked(MouseEvent e) {
-                    cardLayout.show(mainPanel, panelName);
+                    showPanel(panelName);
                     refreshTable(panelName);
                 }
             });
@@ -184,6 +407,216 @@ public class TourismManagementSystem extends JFrame {
         return panel;
     }
 
+    private JPanel createSearchBox() {
+        JPanel box = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        box.setOpaque(false);
+
+        JLabel label = new JLabel("Search:");
+        label.setForeground(Color.WHITE);
+        box.add(label);
+
+        JTextField field = new JTextField(30);
+        field.setToolTipText("Destinations, tours, customers (name, email, phone) and booking ids");
+        box.add(field);
+
+        DefaultListModel<SearchIndex.Hit> hits = new DefaultListModel<>();
+        JList<SearchIndex.Hit> list = new JList<>(hits);
+        list.setVisibleRowCount(12);
+        JPopupMenu popup = new JPopupMenu();
+        // Keeps the caret in the field while the results are open
+        popup.setFocusable(false);
+        popup.add(new JScrollPane(list));
+
+        Runnable search = () -> {
+            SearchIndex index = searchIndex;
+            hits.clear();
+            if (index != null && !field.getText().trim().isEmpty()) {
+                for (SearchIndex.Hit hit : index.search(field.getText(), 50)) hits.addElement(hit);
+            }
+            if (hits.isEmpty()) {
+                popup.setVisible(false);
+                return;
+            }
+            list.setSelectedIndex(0);
+            popup.setPopupSize(Math.max(field.getWidth(), 450), Math.min(12, hits.size()) * 20 + 8);
+            if (!popup.isVisible()) popup.show(field, 0, field.getHeight());
+            field.requestFocusInWindow();
+        };
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { search.run(); }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) { search.run(); }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) { search.run(); }
+        });
+
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) return;
+                int selected = list.getSelectedIndex();
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        list.setSelectedIndex(Math.min(hits.size() - 1, selected + 1));
+                        list.ensureIndexIsVisible(list.getSelectedIndex());
+                        break;
+                    case KeyEvent.VK_UP:
+                        list.setSelectedIndex(Math.max(0, selected - 1));
+                        list.ensureIndexIsVisible(list.getSelectedIndex());
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        if (list.getSelectedValue() != null) {
+                            popup.setVisible(false);
+                            openSearchHit(list.getSelectedValue());
+                        }
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        popup.setVisible(false);
+                        break;
+                    default:
+                        return;
+                }
+                e.consume();
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                SearchIndex.Hit hit = list.getSelectedValue();
+                if (hit != null) {
+                    popup.setVisible(false);
+                    openSearchHit(hit);
+                }
+            }
+        });
+        return box;
+    }
+
+    private void openSearchHit(SearchIndex.Hit hit) {
+        showPanel(hit.entity);
+        refreshTable(hit.entity);
+
+        JTable table = tables.get(hit.entity);
+        if (table == null) return;
+        TableModel model = table.getModel();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            if (!hit.id.equals(model.getValueAt(row, 0))) continue;
+            int view = table.convertRowIndexToView(row);
+            if (view >= 0) {
+                table.setRowSelectionInterval(view, view);
+                table.scrollRectToVisible(table.getCellRect(view, 0, true));
+            }
+            return;
+        }
+    }
+
+    // Streams all four tables on its own connection: a streaming result would block the shared one
+    private void buildSearchIndex() {
+        new SwingWorker<SearchIndex, Void>() {
+            @Override
+            protected SearchIndex doInBackground() throws SQLException {
+                SearchIndex index = new SearchIndex();
+                // Listening from the start means writes made while loading are not lost
+                DomainEvents.subscribe(index);
+                try (Connection conn = Database.connect()) {
+                    index.load(conn);
+                    return index;
+                } catch (SQLException e) {
+                    DomainEvents.unsubscribe(index);
+                    throw e;
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    searchIndex = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    // Until the load finishes, suggestions come from the matrix saved by the previous session
+    private void buildCoBookingIndex() {
+        new SwingWorker<CoBookingIndex, Void>() {
+            @Override
+            protected CoBookingIndex doInBackground() throws SQLException, IOException {
+                CoBookingIndex index = new CoBookingIndex();
+                DomainEvents.subscribe(index);
+                try (Connection conn = Database.connect()) {
+                    index.load(conn);
+                } catch (SQLException e) {
+                    DomainEvents.unsubscribe(index);
+                    throw e;
+                }
+                index.save();
+                return index;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    coBookings = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    private void buildSeasonIndex() {
+        new SwingWorker<SeasonIndex, Void>() {
+            @Override
+            protected SeasonIndex doInBackground() throws SQLException {
+                SeasonIndex index = new SeasonIndex();
+                DomainEvents.subscribe(index);
+                try (Connection conn = Database.connect()) {
+                    index.load(conn);
+                    return index;
+                } catch (SQLException e) {
+                    DomainEvents.unsubscribe(index);
+                    throw e;
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    seasonIndex = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    // Customer saves check with indexed lookups until the filter is built
+    private void buildDuplicateDetector() {
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws SQLException {
+                try (Connection conn = Database.connect()) {
+                    DuplicateDetector.load(conn);
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
     private JPanel createCard(String title, String icon) {
         JPanel card = new JPanel(new BorderLayout());
         card.setBackground(new Color(255, 255, 255, 150));
@@ -196,8 +629,19 @@ public class TourismManagementSystem extends JFrame {
         titleLbl.setFont(new Font("Segoe UI", Font.BOLD, 18));
         titleLbl.setForeground(new Color(44, 62, 80));
 
+        // Filled in once connected and kept current from DomainEvents
+        JLabel countLbl = new JLabel(" ", SwingConstants.CENTER);
+        countLbl.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        countLbl.setForeground(new Color(44, 62, 80));
+        tileCounts.put(title.toLowerCase(), countLbl);
+
+        JPanel caption = new JPanel(new GridLayout(2, 1));
+        caption.setOpaque(false);
+        caption.add(titleLbl);
+        caption.add(countLbl);
+
         card.add(iconLbl, BorderLayout.CENTER);
-        card.add(titleLbl, BorderLayout.SOUTH);
+        card.add(caption, BorderLayout.SOUTH);
         return card;
     }
 
@@ -242,7 +686,10 @@ public class TourismManagementSystem extends JFrame {
 
         JTable table = new JTable(model);
         table.setFillsViewportHeight(true);
-        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        tables.put("destination", table);
+        toolbar.add(createFilterLabel());
+        toolbar.add(createFilterField(table));
 
         table.addMouseListener(new MouseAdapter() {
             @Override
@@ -260,8 +707,34 @@ public class TourismManagementSystem extends JFrame {
         return panel;
     }
 
+    private static JLabel createFilterLabel() {
+        JLabel label = new JLabel("  Filter:");
+        label.setForeground(Color.WHITE);
+        return label;
+    }
+
+    // Column sorting and filtering run on a background thread, see BackgroundRowSorter
+    private static JTextField createFilterField(JTable table) {
+        BackgroundRowSorter<TableModel> sorter = new BackgroundRowSorter<>(table.getModel());
+        table.setRowSorter(sorter);
+
+        JTextField field = new JTextField(15);
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { sorter.setFilterText(field.getText()); }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) { sorter.setFilterText(field.getText()); }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) { sorter.setFilterText(field.getText()); }
+        });
+        return field;
+    }
+
     private void editSelectedDestination() {
-        JTable table = getTableFromPanel(panels.get("destination"));
+        if (!requireOnline()) return;
+        JTable table = tables.get("destination");
         if (table != null) {
             int row = table.getSelectedRow();
             if (row >= 0) {
@@ -282,51 +755,7 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void deleteSelectedDestination() {
-        JTable table = getTableFromPanel(panels.get("destination"));
-        if (table != null) {
-            int row = table.getSelectedRow();
-            if (row >= 0) {
-                String destinationId = (String) table.getValueAt(row, 0);
-                String destinationName = (String) table.getValueAt(row, 1);
-
-                try {
-                    // Check if destination is referenced in tours
-                    if (isDestinationReferenced(destinationId)) {
-                        JOptionPane.showMessageDialog(this,
-                                "Cannot delete destination. It is referenced in tour records.",
-                                "Error", JOptionPane.ERROR_MESSAGE);
-                        return;
-                    }
-
-                    int confirm = JOptionPane.showConfirmDialog(this,
-                            "Are you sure you want to delete destination " + destinationName + "?",
-                            "Confirm Delete", JOptionPane.YES_NO_OPTION);
-
-                    if (confirm == JOptionPane.YES_OPTION) {
-                        if (Destination.delete(connection, destinationId)) {
-                            refreshTable("destination");
-                        } else {
-                            JOptionPane.showMessageDialog(this, "Failed to delete destination", "Error", JOptionPane.ERROR_MESSAGE);
-                        }
-                    }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                    JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                }
-            } else {
-                JOptionPane.showMessageDialog(this, "Please select a destination to delete", "No Selection", JOptionPane.WARNING_MESSAGE);
-            }
-        }
-    }
-
-    private boolean isDestinationReferenced(String destinationId) throws SQLException {
-        String query = "SELECT COUNT(*) FROM tours WHERE destination_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, destinationId);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next() && rs.getInt(1) > 0) return true;
-        }
-        return false;
+        deleteSelectedRows("destination", "destination", "destination ", "tour", Destination::findReferenced, Destination::deleteAll);
     }
 
     private JPanel createTourPanel() {
@@ -354,6 +783,14 @@ public class TourismManagementSystem extends JFrame {
         deleteBtn.addActionListener(e -> deleteSelectedTour());
         toolbar.add(deleteBtn);
 
+        JButton availabilityBtn = new JButton("Set Availability");
+        availabilityBtn.addActionListener(e -> changeSelectedTourAvailability());
+        toolbar.add(availabilityBtn);
+
+        JButton byDateBtn = new JButton("Find by Travel Date");
+        byDateBtn.addActionListener(e -> showToursByTravelDate());
+        toolbar.add(byDateBtn);
+
         JButton refreshBtn = new JButton("Refresh");
         refreshBtn.addActionListener(e -> refreshTable("tour"));
         toolbar.add(refreshBtn);
@@ -370,7 +807,12 @@ public class TourismManagementSystem extends JFrame {
 
         JTable table = new JTable(model);
         table.setFillsViewportHeight(true);
-        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        tables.put("tour", table);
+        FastCellRenderers.install(table, 3, FastCellRenderers.number());
+        FastCellRenderers.install(table, 4, FastCellRenderers.money());
+        toolbar.add(createFilterLabel());
+        toolbar.add(createFilterField(table));
 
         table.addMouseListener(new MouseAdapter() {
             @Override
@@ -389,7 +831,8 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void editSelectedTour() {
-        JTable table = getTableFromPanel(panels.get("tour"));
+        if (!requireOnline()) return;
+        JTable table = tables.get("tour");
         if (table != null) {
             int row = table.getSelectedRow();
             if (row >= 0) {
@@ -410,51 +853,7 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void deleteSelectedTour() {
-        JTable table = getTableFromPanel(panels.get("tour"));
-        if (table != null) {
-            int row = table.getSelectedRow();
-            if (row >= 0) {
-                String tourId = (String) table.getValueAt(row, 0);
-                String tourName = (String) table.getValueAt(row, 1);
-
-                try {
-                    // Check if tour is referenced in bookings
-                    if (isTourReferenced(tourId)) {
-                        JOptionPane.showMessageDialog(this,
-                                "Cannot delete tour. It is referenced in booking records.",
-                                "Error", JOptionPane.ERROR_MESSAGE);
-                        return;
-                    }
-
-                    int confirm = JOptionPane.showConfirmDialog(this,
-                            "Are you sure you want to delete tour " + tourName + "?",
-                            "Confirm Delete", JOptionPane.YES_NO_OPTION);
-
-                    if (confirm == JOptionPane.YES_OPTION) {
-                        if (Tour.delete(connection, tourId)) {
-                            refreshTable("tour");
-                        } else {
-                            JOptionPane.showMessageDialog(this, "Failed to delete tour", "Error", JOptionPane.ERROR_MESSAGE);
-                        }
-                    }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                    JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                }
-            } else {
-                JOptionPane.showMessageDialog(this, "Please select a tour to delete", "No Selection", JOptionPane.WARNING_MESSAGE);
-            }
-        }
-    }
-
-    private boolean isTourReferenced(String tourId) throws SQLException {
-        String query = "SELECT COUNT(*) FROM bookings WHERE tour_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, tourId);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next() && rs.getInt(1) > 0) return true;
-        }
-        return false;
+        deleteSelectedRows("tour", "tour", "tour ", "booking", Tour::findReferenced, Tour::deleteAll);
     }
 
     private JPanel createCustomerPanel() {
@@ -482,6 +881,10 @@ public class TourismManagementSystem extends JFrame {
         deleteBtn.addActionListener(e -> deleteSelectedCustomer());
         toolbar.add(deleteBtn);
 
+        JButton duplicatesBtn = new JButton("Find Duplicates");
+        duplicatesBtn.addActionListener(e -> showDuplicateCustomers());
+        toolbar.add(duplicatesBtn);
+
         JButton refreshBtn = new JButton("Refresh");
         refreshBtn.addActionListener(e -> refreshTable("customer"));
         toolbar.add(refreshBtn);
@@ -498,7 +901,10 @@ public class TourismManagementSystem extends JFrame {
 
         JTable table = new JTable(model);
         table.setFillsViewportHeight(true);
-        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        tables.put("customer", table);
+        toolbar.add(createFilterLabel());
+        toolbar.add(createFilterField(table));
 
         table.addMouseListener(new MouseAdapter() {
             @Override
@@ -517,7 +923,8 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void editSelectedCustomer() {
-        JTable table = getTableFromPanel(panels.get("customer"));
+        if (!requireOnline()) return;
+        JTable table = tables.get("customer");
         if (table != null) {
             int row = table.getSelectedRow();
             if (row >= 0) {
@@ -538,51 +945,60 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void deleteSelectedCustomer() {
-        JTable table = getTableFromPanel(panels.get("customer"));
-        if (table != null) {
-            int row = table.getSelectedRow();
-            if (row >= 0) {
-                String customerId = (String) table.getValueAt(row, 0);
-                String customerName = (String) table.getValueAt(row, 1);
+        deleteSelectedRows("customer", "customer", "customer ", "booking", Customer::findReferenced, Customer::deleteAll);
+    }
 
-                try {
-                    // Check if customer is referenced in bookings
-                    if (isCustomerReferenced(customerId)) {
-                        JOptionPane.showMessageDialog(this,
-                                "Cannot delete customer. It is referenced in booking records.",
-                                "Error", JOptionPane.ERROR_MESSAGE);
-                        return;
-                    }
+    private void showDuplicateCustomers() {
+        if (!requireOnline()) return;
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
-                    int confirm = JOptionPane.showConfirmDialog(this,
-                            "Are you sure you want to delete customer " + customerName + "?",
-                            "Confirm Delete", JOptionPane.YES_NO_OPTION);
+        new SwingWorker<List<List<Customer>>, Void>() {
+            @Override
+            protected List<List<Customer>> doInBackground() throws SQLException {
+                return DuplicateDetector.findClusters(reads.forRead());
+            }
 
-                    if (confirm == JOptionPane.YES_OPTION) {
-                        if (Customer.delete(connection, customerId)) {
-                            refreshTable("customer");
-                        } else {
-                            JOptionPane.showMessageDialog(this, "Failed to delete customer", "Error", JOptionPane.ERROR_MESSAGE);
-                        }
-                    }
-                } catch (SQLException e) {
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                List<List<Customer>> clusters;
+                try {
+                    clusters = get();
+                } catch (InterruptedException | ExecutionException e) {
                     e.printStackTrace();
-                    JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    JOptionPane.showMessageDialog(TourismManagementSystem.this, "Error scanning for duplicates",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (clusters.isEmpty()) {
+                    JOptionPane.showMessageDialog(TourismManagementSystem.this, "No duplicate customers found",
+                            "Find Duplicates", JOptionPane.INFORMATION_MESSAGE);
+                    return;
                 }
-            } else {
-                JOptionPane.showMessageDialog(this, "Please select a customer to delete", "No Selection", JOptionPane.WARNING_MESSAGE);
-            }
-        }
-    }
 
-    private boolean isCustomerReferenced(String customerId) throws SQLException {
-        String query = "SELECT COUNT(*) FROM bookings WHERE customer_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, customerId);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next() && rs.getInt(1) > 0) return true;
-        }
-        return false;
+                DefaultTableModel model = new DefaultTableModel(
+                        new String[]{"Group", "ID", "Name", "Email", "Phone"}, 0) {
+                    @Override
+                    public boolean isCellEditable(int row, int column) {
+                        return false;
+                    }
+                };
+                int group = 1;
+                for (List<Customer> cluster : clusters) {
+                    for (Customer c : cluster) {
+                        model.addRow(new Object[]{group, c.getId(), c.getName(), c.getEmail(), c.getPhone()});
+                    }
+                    group++;
+                }
+
+                JDialog dialog = new JDialog(TourismManagementSystem.this,
+                        "Possible Duplicates (" + clusters.size() + " groups)", true);
+                dialog.setSize(700, 400);
+                dialog.setLocationRelativeTo(TourismManagementSystem.this);
+                dialog.add(new JScrollPane(new JTable(model)));
+                dialog.setVisible(true);
+            }
+        }.execute();
     }
 
     private JPanel createBookingPanel() {
@@ -602,6 +1018,10 @@ public class TourismManagementSystem extends JFrame {
         addBtn.addActionListener(e -> showBookingForm(null));
         toolbar.add(addBtn);
 
+        JButton itineraryBtn = new JButton("New Itinerary");
+        itineraryBtn.addActionListener(e -> showItineraryForm());
+        toolbar.add(itineraryBtn);
+
         JButton editBtn = new JButton("Edit Booking");
         editBtn.addActionListener(e -> editSelectedBooking());
         toolbar.add(editBtn);
@@ -610,6 +1030,18 @@ public class TourismManagementSystem extends JFrame {
         deleteBtn.addActionListener(e -> deleteSelectedBooking());
         toolbar.add(deleteBtn);
 
+        JButton statusBtn = new JButton("Change Status");
+        statusBtn.addActionListener(e -> changeSelectedBookingStatus());
+        toolbar.add(statusBtn);
+
+        JButton analyticsBtn = new JButton("Analytics");
+        analyticsBtn.addActionListener(e -> showBookingAnalytics());
+        toolbar.add(analyticsBtn);
+
+        JButton documentsBtn = new JButton("Month-End Documents");
+        documentsBtn.addActionListener(e -> generateBookingDocuments());
+        toolbar.add(documentsBtn);
+
         JButton refreshBtn = new JButton("Refresh");
         refreshBtn.addActionListener(e -> refreshTable("booking"));
         toolbar.add(refreshBtn);
@@ -626,7 +1058,14 @@ public class TourismManagementSystem extends JFrame {
 
         JTable table = new JTable(model);
         table.setFillsViewportHeight(true);
-        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        tables.put("booking", table);
+        FastCellRenderers.install(table, 3, FastCellRenderers.date());
+        FastCellRenderers.install(table, 4, FastCellRenderers.date());
+        FastCellRenderers.install(table, 5, FastCellRenderers.number());
+        FastCellRenderers.install(table, 6, FastCellRenderers.money());
+        toolbar.add(createFilterLabel());
+        toolbar.add(createFilterField(table));
 
         table.addMouseListener(new MouseAdapter() {
             @Override
@@ -645,14 +1084,20 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void editSelectedBooking() {
-        JTable table = getTableFromPanel(panels.get("booking"));
+        if (!requireOnline()) return;
+        JTable table = tables.get("booking");
         if (table != null) {
             int row = table.getSelectedRow();
             if (row >= 0) {
                 String bookingId = (String) table.getValueAt(row, 0);
                 try {
                     Booking booking = Booking.getById(connection, bookingId);
-                    if (booking != null) {
+                    if (booking != null && booking.isArchived()) {
+                        JOptionPane.showMessageDialog(this, "Booking " + bookingId + " travelled in " +
+                                        YearMonth.from(booking.getTravelDate().toLocalDate()) +
+                                        ", which has been archived. Archived bookings can no longer be edited.",
+                                "Archived Booking", JOptionPane.INFORMATION_MESSAGE);
+                    } else if (booking != null) {
                         showBookingForm(booking);
                     }
                 } catch (SQLException e) {
@@ -666,38 +1111,512 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void deleteSelectedBooking() {
-        JTable table = getTableFromPanel(panels.get("booking"));
+        deleteSelectedRows("booking", "booking", "booking for ", null, null, Booking::deleteAll);
+    }
+
+    private void changeSelectedBookingStatus() {
+        if (!requireOnline()) return;
+
+        JTable table = tables.get("booking");
         if (table != null) {
-            int row = table.getSelectedRow();
-            if (row >= 0) {
-                String bookingId = (String) table.getValueAt(row, 0);
-                String tourName = (String) table.getValueAt(row, 1);
+            List<String> ids = selectedIds(table);
+            if (ids.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please select the bookings to update", "No Selection", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
 
-                int confirm = JOptionPane.showConfirmDialog(this,
-                        "Are you sure you want to delete booking for " + tourName + "?",
-                        "Confirm Delete", JOptionPane.YES_NO_OPTION);
+            Object status = JOptionPane.showInputDialog(this,
+                    "New status for " + ids.size() + " selected booking(s):", "Change Status",
+                    JOptionPane.QUESTION_MESSAGE, null, BookingStatus.values(), BookingStatus.CONFIRMED);
+            if (status == null) return;
 
-                if (confirm == JOptionPane.YES_OPTION) {
-                    try {
-                        if (Booking.delete(connection, bookingId)) {
-                            refreshTable("booking");
-                        } else {
-                            JOptionPane.showMessageDialog(this, "Failed to delete booking", "Error", JOptionPane.ERROR_MESSAGE);
-                        }
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                        JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                    }
+            try {
+                int updated = Booking.updateStatus(connection, ids, (BookingStatus) status);
+                reads.noteWrite();
+                if (updated < ids.size()) {
+                    JOptionPane.showMessageDialog(this, (ids.size() - updated) + " booking(s) cannot move to " +
+                                    status + " from their current status and were left unchanged.",
+                            "Change Status", JOptionPane.INFORMATION_MESSAGE);
                 }
-            } else {
-                JOptionPane.showMessageDialog(this, "Please select a booking to delete", "No Selection", JOptionPane.WARNING_MESSAGE);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
 
-    private JPanel createModuleHeader(String title) {
-        JPanel header = new JPanel(new BorderLayout());
-        header.setOpaque(false);
+    // Runs BookingDocuments in the background; an interrupted run resumes when started again for the same month
+    private void generateBookingDocuments() {
+        if (!requireOnline()) return;
+
+        String input = JOptionPane.showInputDialog(this, "Documents for Confirmed bookings made in (yyyy-MM):",
+                YearMonth.now().minusMonths(1).toString());
+        if (input == null) return;
+        YearMonth month;
+        try {
+            month = YearMonth.parse(input.trim());
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Please enter the month as yyyy-MM", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Output directory");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        Path output = chooser.getSelectedFile().toPath().resolve("documents-" + month);
+
+        new SwingWorker<Long, String>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                return BookingDocuments.generate(month, output, (count, elapsed) ->
+                        publish(String.format("Documents for %s: %,d written, %,.0f per second",
+                                month, count, count / Math.max(elapsed / 1e9, 1e-3))));
+            }
+
+            @Override
+            protected void process(List<String> updates) {
+                setStatus(updates.get(updates.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                setStatus(null);
+                try {
+                    JOptionPane.showMessageDialog(TourismManagementSystem.this,
+                            String.format("%,d documents written to %s", get(), output),
+                            "Month-End Documents", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    cause.printStackTrace();
+                    JOptionPane.showMessageDialog(TourismManagementSystem.this,
+                            "Document generation stopped: " + cause.getMessage() + "\nRun it again to resume.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void showBookingAnalytics() {
+        if (!requireOnline()) return;
+
+        JDialog dialog = new JDialog(this, "Booking Analytics", true);
+        dialog.setSize(700, 450);
+        dialog.setLocationRelativeTo(this);
+
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JTextField fromField = new JTextField(LocalDate.now().withDayOfYear(1).toString(), 10);
+        JTextField toField = new JTextField(LocalDate.now().withDayOfYear(1).plusYears(1).minusDays(1).toString(), 10);
+        JButton runBtn = new JButton("Run");
+        JButton cancelBtn = new JButton("Cancel");
+        cancelBtn.setEnabled(false);
+        filters.add(new JLabel("Travel from (YYYY-MM-DD):"));
+        filters.add(fromField);
+        filters.add(new JLabel("to:"));
+        filters.add(toField);
+        filters.add(runBtn);
+        filters.add(cancelBtn);
+        panel.add(filters, BorderLayout.NORTH);
+
+        String[] columns = {"Tour", "Bookings", "People", "Revenue"};
+        DefaultTableModel model = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        panel.add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+
+        JLabel summary = new JLabel(" ");
+        panel.add(summary, BorderLayout.SOUTH);
+
+        Map<String, String> tourNames = new HashMap<>();
+        try {
+            for (Tour t : Tour.getAllTours(connection)) {
+                tourNames.put(t.getId(), t.getName());
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        Runnable scan = () -> {
+            LocalDate from;
+            LocalDate to;
+            try {
+                from = LocalDate.parse(fromField.getText().trim());
+                to = LocalDate.parse(toField.getText().trim());
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(dialog, "Invalid date format", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            BookingColumnStore store = bookingStore;
+            long start = System.nanoTime();
+            List<BookingColumnStore.TourSummary> rows = store.summarizeByTour(from, to,
+                    BookingStatus.CONFIRMED, BookingStatus.COMPLETED);
+            int[] statusCounts = store.countByStatus(from, to);
+            int customers = store.distinctCustomers(from, to);
+            long micros = (System.nanoTime() - start) / 1000;
+
+            model.setRowCount(0);
+            for (BookingColumnStore.TourSummary row : rows) {
+                model.addRow(new Object[]{
+                        tourNames.getOrDefault(row.tourId, row.tourId),
+                        row.bookings,
+                        row.people,
+                        String.format("%.2f", row.revenueCents / 100.0)
+                });
+            }
+
+            StringBuilder text = new StringBuilder();
+            for (BookingStatus status : BookingStatus.values()) {
+                text.append(status).append(": ").append(statusCounts[status.ordinal()]).append("   ");
+            }
+            text.append("Customers: ").append(customers);
+            text.append("   (scanned ").append(store.size()).append(" bookings in ").append(micros).append(" \u00b5s)");
+            summary.setText(text.toString());
+        };
+
+        runBtn.addActionListener(e -> {
+            if (bookingStore != null) {
+                scan.run();
+                return;
+            }
+
+            // First use: stream the bookings table into the column store off the EDT, on a connection
+            // of its own so the streaming result never blocks the shared one. The primary is read,
+            // not a replica, so the backlog started before the query covers everything the stream misses.
+            runBtn.setEnabled(false);
+            summary.setText("Loading bookings...");
+            AtomicReference<Connection> source = new AtomicReference<>();
+            // Cancel aborts the running statement on the server (Statement.cancel)
+            ActionListener cancel = ev -> {
+                Connection conn = source.get();
+                if (conn != null) ResilientConnection.cancelRunning(conn);
+            };
+            cancelBtn.addActionListener(cancel);
+            cancelBtn.setEnabled(true);
+            new SwingWorker<BookingColumnStore, Void>() {
+                @Override
+                protected BookingColumnStore doInBackground() throws Exception {
+                    synchronized (bookingStoreLock) {
+                        if (bookingStoreBacklog == null) bookingStoreBacklog = new ArrayList<>();
+                    }
+                    try (Connection conn = Database.connect()) {
+                        source.set(conn);
+                        return publishBookingStore(BookingColumnStore.load(conn));
+                    } catch (SQLException e) {
+                        synchronized (bookingStoreLock) {
+                            bookingStoreBacklog = null;
+                        }
+                        throw e;
+                    } finally {
+                        source.set(null);
+                    }
+                }
+
+                @Override
+                protected void done() {
+                    runBtn.setEnabled(true);
+                    cancelBtn.setEnabled(false);
+                    cancelBtn.removeActionListener(cancel);
+                    try {
+                        get();
+                        scan.run();
+                    } catch (InterruptedException | ExecutionException ex) {
+                        ex.printStackTrace();
+                        summary.setText("Error loading bookings: " + ex.getMessage());
+                    }
+                }
+            }.execute();
+        });
+
+        dialog.add(panel);
+        dialog.setVisible(true);
+    }
+
+    // Lists available tours that are in season on the travel date, from SeasonIndex without a query
+    private void showToursByTravelDate() {
+        if (seasonIndex == null) {
+            JOptionPane.showMessageDialog(this, "Tour seasons are still loading, please try again in a moment.",
+                    "Find by Travel Date", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        JDialog dialog = new JDialog(this, "Tours by Travel Date", true);
+        dialog.setSize(750, 450);
+        dialog.setLocationRelativeTo(this);
+
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JPanel criteria = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JTextField dateField = new JTextField(LocalDate.now().plusDays(30).toString(), 10);
+        JSpinner peopleSpinner = new JSpinner(new SpinnerNumberModel(2, 1, 100, 1));
+        JButton searchBtn = new JButton("Search");
+        criteria.add(new JLabel("Travel Date (YYYY-MM-DD):"));
+        criteria.add(dateField);
+        criteria.add(new JLabel("People:"));
+        criteria.add(peopleSpinner);
+        criteria.add(searchBtn);
+        panel.add(criteria, BorderLayout.NORTH);
+
+        String[] columns = {"ID", "Tour", "Destination", "Days", "Price", "Total Price"};
+        DefaultTableModel model = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(model);
+        FastCellRenderers.install(table, 3, FastCellRenderers.number());
+        FastCellRenderers.install(table, 4, FastCellRenderers.money());
+        FastCellRenderers.install(table, 5, FastCellRenderers.money());
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JLabel summary = new JLabel(" ");
+        panel.add(summary, BorderLayout.SOUTH);
+
+        ActionListener search = e -> {
+            LocalDate travelDate;
+            try {
+                travelDate = LocalDate.parse(dateField.getText().trim());
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(dialog, "Invalid date format", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            int people = (Integer) peopleSpinner.getValue();
+
+            model.setRowCount(0);
+            List<SeasonIndex.Match> matches = seasonIndex.lookup(travelDate, people);
+            for (SeasonIndex.Match m : matches) {
+                model.addRow(new Object[]{m.tourId, m.tourName, m.destinationName,
+                        FastCellRenderers.numberValue(m.durationDays),
+                        FastCellRenderers.moneyValue(m.price), FastCellRenderers.moneyValue(m.price * people)});
+            }
+            summary.setText(matches.size() + " available tour(s) in season in " +
+                    travelDate.getMonth().getDisplayName(TextStyle.FULL, Locale.getDefault()) +
+                    " with room for " + people + " on a departure, cheapest first");
+        };
+        searchBtn.addActionListener(search);
+        dateField.addActionListener(search);
+        search.actionPerformed(null);
+
+        dialog.add(panel);
+        dialog.setVisible(true);
+    }
+
+    private void changeSelectedTourAvailability() {
+        if (!requireOnline()) return;
+
+        JTable table = tables.get("tour");
+        if (table != null) {
+            List<String> ids = selectedIds(table);
+            if (ids.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please select the tours to update", "No Selection", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+
+            String[] options = {"Available", "Unavailable"};
+            int choice = JOptionPane.showOptionDialog(this,
+                    "Set availability for " + ids.size() + " selected tour(s):", "Set Availability",
+                    JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+            if (choice < 0) return;
+
+            try {
+                Tour.updateAvailability(connection, ids, choice == 0);
+                reads.noteWrite();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private List<String> selectedIds(JTable table) {
+        List<String> ids = new ArrayList<>();
+        for (int row : table.getSelectedRows()) {
+            ids.add((String) table.getModel().getValueAt(table.convertRowIndexToModel(row), 0));
+        }
+        return ids;
+    }
+
+    // Deletes every selected row with one reference check and one set-based DELETE per chunk of ids
+    private void deleteSelectedRows(String panelName, String entity, String singlePrefix, String referencedIn,
+                                    SqlSupport.IdsFunction<List<String>> findReferenced,
+                                    SqlSupport.IdsFunction<Integer> deleteAll) {
+        if (!requireOnline()) return;
+
+        JTable table = tables.get(panelName);
+        if (table != null) {
+            List<String> ids = selectedIds(table);
+            if (ids.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Please select a " + entity + " to delete", "No Selection", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+
+            try {
+                Set<String> referenced = findReferenced == null
+                        ? Collections.emptySet()
+                        : new HashSet<>(findReferenced.apply(connection, ids));
+                List<String> deletable = new ArrayList<>();
+                for (String id : ids) {
+                    if (!referenced.contains(id)) deletable.add(id);
+                }
+
+                if (deletable.isEmpty()) {
+                    JOptionPane.showMessageDialog(this,
+                            ids.size() == 1
+                                    ? "Cannot delete " + entity + ". It is referenced in " + referencedIn + " records."
+                                    : "Cannot delete " + entity + "s. They are all referenced in " + referencedIn + " records.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+
+                String message;
+                if (ids.size() == 1) {
+                    int row = table.convertRowIndexToModel(table.getSelectedRow());
+                    message = "Are you sure you want to delete " + singlePrefix + table.getModel().getValueAt(row, 1) + "?";
+                } else {
+                    message = "Are you sure you want to delete " + deletable.size() + " " + entity + "s?";
+                    if (!referenced.isEmpty()) {
+                        message += "\n" + referenced.size() + " selected " + entity + "(s) are referenced in " +
+                                referencedIn + " records and will be kept.";
+                    }
+                }
+
+                int confirm = JOptionPane.showConfirmDialog(this, message, "Confirm Delete", JOptionPane.YES_NO_OPTION);
+                if (confirm == JOptionPane.YES_OPTION) {
+                    if (deleteAll.apply(connection, deletable) > 0) {
+                        reads.noteWrite();
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Failed to delete " + entity, "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Database error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private JPanel createOccupancyPanel() {
+        JPanel panel = new GradientPanel(new Color(26, 188, 156), new Color(22, 160, 133));
+        panel.setLayout(new BorderLayout());
+
+        panel.add(createModuleHeader("Occupancy Calendar"), BorderLayout.NORTH);
+
+        JPanel content = new JPanel(new BorderLayout());
+        content.setOpaque(false);
+        content.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        toolbar.setOpaque(false);
+
+        JButton previousBtn = new JButton("◀ Previous");
+        previousBtn.addActionListener(e ->
+                moveOccupancy(occupancyModel.getWindowFrom().minusDays(OccupancyTableModel.WINDOW_DAYS)));
+        toolbar.add(previousBtn);
+
+        JButton todayBtn = new JButton("Today");
+        todayBtn.addActionListener(e -> moveOccupancy(LocalDate.now()));
+        toolbar.add(todayBtn);
+
+        JButton nextBtn = new JButton("Next ▶");
+        nextBtn.addActionListener(e ->
+                moveOccupancy(occupancyModel.getWindowFrom().plusDays(OccupancyTableModel.WINDOW_DAYS)));
+        toolbar.add(nextBtn);
+
+        JButton refreshBtn = new JButton("Refresh");
+        refreshBtn.addActionListener(e -> refreshTable("occupancy"));
+        toolbar.add(refreshBtn);
+
+        occupancyRange = new JLabel();
+        occupancyRange.setForeground(Color.WHITE);
+        toolbar.add(occupancyRange);
+
+        content.add(toolbar, BorderLayout.NORTH);
+
+        JTable table = new JTable(occupancyModel);
+        table.setFillsViewportHeight(true);
+        table.setDefaultRenderer(Long.class, new OccupancyTableModel.HeatRenderer());
+        table.getTableHeader().setReorderingAllowed(false);
+
+        content.add(new JScrollPane(table), BorderLayout.CENTER);
+        panel.add(content, BorderLayout.CENTER);
+
+        panel.add(createFooter(), BorderLayout.SOUTH);
+        return panel;
+    }
+
+    // Windows inside the loaded span are served from the index without touching the database
+    private void moveOccupancy(LocalDate windowFrom) {
+        OccupancyIndex index = occupancyIndex;
+        if (index != null && index.covers(windowFrom, windowFrom.plusDays(OccupancyTableModel.WINDOW_DAYS))) {
+            showOccupancy(index, windowFrom);
+        } else {
+            loadOccupancy(windowFrom);
+        }
+    }
+
+    private void showOccupancy(OccupancyIndex index, LocalDate windowFrom) {
+        occupancyModel.show(index, windowFrom);
+        if (occupancyRange != null) {
+            occupancyRange.setText("  " + windowFrom + " to " + occupancyModel.windowTo().minusDays(1) +
+                    "   (busiest day: " + occupancyModel.getMaxSeats() + " seats)");
+        }
+    }
+
+    private void loadOccupancy(LocalDate windowFrom) {
+        if (connection == null) {
+            if (occupancyRange != null) occupancyRange.setText("  The occupancy calendar needs the database.");
+            return;
+        }
+
+        // One aggregation query covers a month back and half a year ahead of the requested window
+        LocalDate spanFrom = windowFrom.minusMonths(1);
+        LocalDate spanTo = windowFrom.plusMonths(6);
+        long[] clock = syncedClock();
+        int load = ++occupancyLoad;
+        if (occupancyBacklog == null) occupancyBacklog = new ArrayList<>();
+        new SwingWorker<OccupancyIndex, Void>() {
+            @Override
+            protected OccupancyIndex doInBackground() throws SQLException {
+                return OccupancyIndex.load(reads.forRead(clock), spanFrom, spanTo);
+            }
+
+            @Override
+            protected void done() {
+                // A later load has started and takes over the backlog
+                if (load != occupancyLoad) return;
+                List<DomainEvent> backlog = occupancyBacklog;
+                occupancyBacklog = null;
+                try {
+                    OccupancyIndex index = get();
+                    // Patching again what the query already saw is harmless: patch replaces a booking's seats
+                    if (!patchOccupancy(index, backlog)) {
+                        loadOccupancy(windowFrom);
+                        return;
+                    }
+                    occupancyIndex = index;
+                    showOccupancy(index, windowFrom);
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    // The index on screen stays, brought up to date with what happened meanwhile
+                    if (occupancyIndex != null && !patchOccupancy(occupancyIndex, backlog)) occupancyIndex = null;
+                    JOptionPane.showMessageDialog(TourismManagementSystem.this,
+                            "Error loading occupancy: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private JPanel createModuleHeader(String title) {
+        JPanel header = new JPanel(new BorderLayout());
+        header.setOpaque(false);
         header.setBorder(BorderFactory.createEmptyBorder(15, 20, 15, 20));
 
         JLabel titleLbl = new JLabel(title);
@@ -706,7 +1625,7 @@ public class TourismManagementSystem extends JFrame {
         header.add(titleLbl, BorderLayout.WEST);
 
         JButton backBtn = new JButton("Back to Dashboard");
-        backBtn.addActionListener(e -> cardLayout.show(mainPanel, "dashboard"));
+        backBtn.addActionListener(e -> showPanel("dashboard"));
         header.add(backBtn, BorderLayout.EAST);
 
         return header;
@@ -718,8 +1637,10 @@ public class TourismManagementSystem extends JFrame {
         footer.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
 
         JLabel status = new JLabel("Tourism Management System v1.0");
+        status.setText(statusLine());
         status.setForeground(Color.WHITE);
         footer.add(status, BorderLayout.WEST);
+        statusLabels.add(status);
 
         JButton settings = new JButton("Settings");
         settings.addActionListener(e -> showSettings());
@@ -736,23 +1657,9 @@ public class TourismManagementSystem extends JFrame {
         cardLayout.show(mainPanel, "login");
     }
 
-    private JTable getTableFromPanel(JPanel panel) {
-        if (panel == null) return null;
-
-        for (Component comp : panel.getComponents()) {
-            if (comp instanceof JScrollPane) {
-                JScrollPane scrollPane = (JScrollPane) comp;
-                return (JTable) scrollPane.getViewport().getView();
-            }
-            if (comp instanceof JPanel) {
-                JTable table = getTableFromPanel((JPanel) comp);
-                if (table != null) return table;
-            }
-        }
-        return null;
-    }
-
     private void showDestinationForm(Destination destination) {
+        if (!requireOnline()) return;
+
         JDialog dialog = new JDialog(this, destination == null ? "Add Destination" : "Edit Destination", true);
         dialog.setSize(500, 350);
         dialog.setLocationRelativeTo(this);
@@ -768,6 +1675,8 @@ public class TourismManagementSystem extends JFrame {
         JTextArea descriptionArea = new JTextArea(3, 20);
         JScrollPane descriptionScroll = new JScrollPane(descriptionArea);
         JComboBox<String> seasonCombo = new JComboBox<>(new String[]{"Spring", "Summer", "Autumn", "Winter", "All Year"});
+        // Month ranges such as "Nov-Mar" can be typed in as well
+        seasonCombo.setEditable(true);
 
         if (destination != null) {
             idField.setText(destination.getId());
@@ -776,6 +1685,9 @@ public class TourismManagementSystem extends JFrame {
             descriptionArea.setText(destination.getDescription());
             seasonCombo.setSelectedItem(destination.getBestSeason());
             idField.setEditable(false);
+        } else {
+            idField.setText(NEW_ID_PLACEHOLDER);
+            idField.setEditable(false);
         }
 
         form.add(new JLabel("Destination ID:"));
@@ -796,21 +1708,27 @@ public class TourismManagementSystem extends JFrame {
         JButton cancel = new JButton("Cancel");
 
         save.addActionListener(e -> {
-            String id = idField.getText();
+            String id = destination != null ? destination.getId() : null;
             String name = nameField.getText();
             String country = countryField.getText();
             String description = descriptionArea.getText();
-            String bestSeason = (String) seasonCombo.getSelectedItem();
+            String bestSeason = ((String) seasonCombo.getSelectedItem()).trim();
 
-            if (id.isEmpty() || name.isEmpty() || country.isEmpty()) {
+            if (name.isEmpty() || country.isEmpty()) {
                 JOptionPane.showMessageDialog(dialog, "Please fill all required fields", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
+            if (SeasonIndex.monthMask(bestSeason) == 0 || bestSeason.length() > 20) {
+                JOptionPane.showMessageDialog(dialog,
+                        "Best season must be a season, \"All Year\", or months such as \"Nov-Mar\" (at most 20 characters)",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
             try {
                 Destination d = new Destination(id, name, country, description, bestSeason);
                 if (d.save(connection)) {
-                    refreshTable("destination");
+                    reads.noteWrite();
                     dialog.dispose();
                 } else {
                     JOptionPane.showMessageDialog(dialog, "Failed to save destination", "Error", JOptionPane.ERROR_MESSAGE);
@@ -832,6 +1750,8 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void showTourForm(Tour tour) {
+        if (!requireOnline()) return;
+
         JDialog dialog = new JDialog(this, tour == null ? "Add Tour" : "Edit Tour", true);
         dialog.setSize(500, 350);
         dialog.setLocationRelativeTo(this);
@@ -839,7 +1759,7 @@ public class TourismManagementSystem extends JFrame {
         JPanel panel = new JPanel(new BorderLayout(10, 10));
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
-        JPanel form = new JPanel(new GridLayout(6, 2, 5, 5));
+        JPanel form = new JPanel(new GridLayout(7, 2, 5, 5));
 
         JTextField idField = new JTextField();
         JTextField nameField = new JTextField();
@@ -847,6 +1767,7 @@ public class TourismManagementSystem extends JFrame {
         JTextField durationField = new JTextField();
         JTextField priceField = new JTextField();
         JCheckBox availableCheck = new JCheckBox("Available");
+        JTextField capacityField = new JTextField();
 
         try {
             List<Destination> destinations = Destination.getAllDestinations(connection);
@@ -871,6 +1792,10 @@ public class TourismManagementSystem extends JFrame {
             durationField.setText(String.valueOf(tour.getDurationDays()));
             priceField.setText(String.valueOf(tour.getPrice()));
             availableCheck.setSelected(tour.isAvailable());
+            if (tour.getCapacity() != null) capacityField.setText(String.valueOf(tour.getCapacity()));
+            idField.setEditable(false);
+        } else {
+            idField.setText(NEW_ID_PLACEHOLDER);
             idField.setEditable(false);
         }
 
@@ -886,6 +1811,8 @@ public class TourismManagementSystem extends JFrame {
         form.add(priceField);
         form.add(new JLabel("Availability:"));
         form.add(availableCheck);
+        form.add(new JLabel("Seats per Departure:"));
+        form.add(capacityField);
 
         panel.add(form, BorderLayout.CENTER);
 
@@ -894,14 +1821,14 @@ public class TourismManagementSystem extends JFrame {
         JButton cancel = new JButton("Cancel");
 
         save.addActionListener(e -> {
-            String id = idField.getText();
+            String id = tour != null ? tour.getId() : null;
             String name = nameField.getText();
             String destinationSelection = (String) destinationCombo.getSelectedItem();
             String durationStr = durationField.getText();
             String priceStr = priceField.getText();
             boolean available = availableCheck.isSelected();
 
-            if (id.isEmpty() || name.isEmpty() || destinationSelection == null ||
+            if (name.isEmpty() || destinationSelection == null ||
                     durationStr.isEmpty() || priceStr.isEmpty()) {
                 JOptionPane.showMessageDialog(dialog, "Please fill all fields", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
@@ -915,14 +1842,17 @@ public class TourismManagementSystem extends JFrame {
                 double price = Double.parseDouble(priceStr);
 
                 Tour t = new Tour(id, name, destinationId, duration, price, available);
+                // Left blank, the tour takes any number of travellers
+                String capacityStr = capacityField.getText().trim();
+                t.setCapacity(capacityStr.isEmpty() ? null : Integer.parseInt(capacityStr));
                 if (t.save(connection)) {
-                    refreshTable("tour");
+                    reads.noteWrite();
                     dialog.dispose();
                 } else {
                     JOptionPane.showMessageDialog(dialog, "Failed to save tour", "Error", JOptionPane.ERROR_MESSAGE);
                 }
             } catch (NumberFormatException ex) {
-                JOptionPane.showMessageDialog(dialog, "Duration and price must be numbers", "Error", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(dialog, "Duration, price and seats must be numbers", "Error", JOptionPane.ERROR_MESSAGE);
             } catch (SQLException ex) {
                 ex.printStackTrace();
                 JOptionPane.showMessageDialog(dialog, "Database error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -940,6 +1870,8 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void showCustomerForm(Customer customer) {
+        if (!requireOnline()) return;
+
         JDialog dialog = new JDialog(this, customer == null ? "Add Customer" : "Edit Customer", true);
         dialog.setSize(500, 350);
         dialog.setLocationRelativeTo(this);
@@ -963,6 +1895,9 @@ public class TourismManagementSystem extends JFrame {
             phoneField.setText(customer.getPhone());
             addressArea.setText(customer.getAddress());
             idField.setEditable(false);
+        } else {
+            idField.setText(NEW_ID_PLACEHOLDER);
+            idField.setEditable(false);
         }
 
         form.add(new JLabel("Customer ID:"));
@@ -983,21 +1918,33 @@ public class TourismManagementSystem extends JFrame {
         JButton cancel = new JButton("Cancel");
 
         save.addActionListener(e -> {
-            String id = idField.getText();
+            String id = customer != null ? customer.getId() : null;
             String name = nameField.getText();
             String email = emailField.getText();
             String phone = phoneField.getText();
             String address = addressArea.getText();
 
-            if (id.isEmpty() || name.isEmpty() || email.isEmpty() || phone.isEmpty()) {
+            if (name.isEmpty() || email.isEmpty() || phone.isEmpty()) {
                 JOptionPane.showMessageDialog(dialog, "Please fill all required fields", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
             try {
                 Customer c = new Customer(id, name, email, phone, address);
-                if (c.save(connection)) {
-                    refreshTable("customer");
+                boolean saved;
+                try {
+                    saved = c.save(connection);
+                } catch (DuplicateCustomerException dup) {
+                    Customer existing = dup.getExisting();
+                    int choice = JOptionPane.showConfirmDialog(dialog,
+                            "Customer " + existing.getName() + " (" + existing.getId() + ", " + existing.getEmail() +
+                                    ", " + existing.getPhone() + ") has the same email or phone.\nSave anyway?",
+                            "Possible Duplicate", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+                    if (choice != JOptionPane.YES_OPTION) return;
+                    saved = c.save(connection, true);
+                }
+                if (saved) {
+                    reads.noteWrite();
                     dialog.dispose();
                 } else {
                     JOptionPane.showMessageDialog(dialog, "Failed to save customer", "Error", JOptionPane.ERROR_MESSAGE);
@@ -1019,6 +1966,8 @@ public class TourismManagementSystem extends JFrame {
     }
 
     private void showBookingForm(Booking booking) {
+        if (!requireOnline()) return;
+
         JDialog dialog = new JDialog(this, booking == null ? "Add Booking" : "Edit Booking", true);
         dialog.setSize(600, 400);
         dialog.setLocationRelativeTo(this);
@@ -1034,12 +1983,14 @@ public class TourismManagementSystem extends JFrame {
         JTextField bookingDateField = new JTextField();
         JTextField travelDateField = new JTextField();
         JTextField numPeopleField = new JTextField();
-        JComboBox<String> statusCombo = new JComboBox<>(new String[]{"Confirmed", "Pending", "Cancelled", "Completed"});
+        JComboBox<String> statusCombo = new JComboBox<>();
 
+        Map<String, String> tourDestinations = new HashMap<>();
         try {
             List<Tour> tours = Tour.getAllTours(connection);
             for (Tour t : tours) {
                 tourCombo.addItem(t.getName() + " (" + t.getId() + ")");
+                tourDestinations.put(t.getId(), t.getDestinationId());
             }
 
             List<Customer> customers = Customer.getAllCustomers(connection);
@@ -1068,8 +2019,19 @@ public class TourismManagementSystem extends JFrame {
             bookingDateField.setText(booking.getBookingDate().toString());
             travelDateField.setText(booking.getTravelDate().toString());
             numPeopleField.setText(String.valueOf(booking.getNumPeople()));
+            // Only offer the statuses this booking can legally move to
+            BookingStatus current = booking.getBookingStatus();
+            for (BookingStatus status : BookingStatus.values()) {
+                if (current.canTransitionTo(status)) statusCombo.addItem(status.getLabel());
+            }
             statusCombo.setSelectedItem(booking.getStatus());
             idField.setEditable(false);
+        } else {
+            idField.setText(NEW_ID_PLACEHOLDER);
+            idField.setEditable(false);
+            for (BookingStatus status : BookingStatus.values()) {
+                if (status.isInitial()) statusCombo.addItem(status.getLabel());
+            }
         }
 
         form.add(new JLabel("Booking ID:"));
@@ -1089,12 +2051,33 @@ public class TourismManagementSystem extends JFrame {
 
         panel.add(form, BorderLayout.CENTER);
 
+        // Answered from the in-memory co-booking matrix, so it can follow every selection change
+        JLabel suggestions = new JLabel(" ");
+        Runnable suggest = () -> {
+            CoBookingIndex index = coBookings;
+            String tourId = selectedId((String) tourCombo.getSelectedItem());
+            String customerId = selectedId((String) customerCombo.getSelectedItem());
+            List<CoBookingIndex.Recommendation> similar = index == null ? Collections.emptyList()
+                    : index.recommend(customerId, tourDestinations.get(tourId), 5);
+            StringBuilder text = new StringBuilder(" ");
+            for (CoBookingIndex.Recommendation r : similar) {
+                text.append(text.length() == 1 ? "Customers who booked this also booked: " : ", ").append(r.name);
+            }
+            suggestions.setText(text.toString());
+        };
+        tourCombo.addActionListener(e -> suggest.run());
+        customerCombo.addActionListener(e -> suggest.run());
+        suggest.run();
+
+        JPanel south = new JPanel(new BorderLayout());
+        south.add(suggestions, BorderLayout.NORTH);
+
         JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton save = new JButton("Save");
         JButton cancel = new JButton("Cancel");
 
         save.addActionListener(e -> {
-            String id = idField.getText();
+            String id = booking != null ? booking.getId() : null;
             String tourSelection = (String) tourCombo.getSelectedItem();
             String customerSelection = (String) customerCombo.getSelectedItem();
             String bookingDate = bookingDateField.getText();
@@ -1102,7 +2085,7 @@ public class TourismManagementSystem extends JFrame {
             String numPeopleStr = numPeopleField.getText();
             String status = (String) statusCombo.getSelectedItem();
 
-            if (id.isEmpty() || tourSelection == null || customerSelection == null ||
+            if (tourSelection == null || customerSelection == null ||
                     bookingDate.isEmpty() || travelDate.isEmpty() || numPeopleStr.isEmpty()) {
                 JOptionPane.showMessageDialog(dialog, "Please fill all fields", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
@@ -1120,89 +2103,628 @@ public class TourismManagementSystem extends JFrame {
                 double totalPrice = numPeople * tour.getPrice();
 
                 Booking b = new Booking(id, tourId, customerId, bookingDate, travelDate, numPeople, totalPrice, status);
-                if (b.save(connection)) {
-                    refreshTable("booking");
+                boolean saved;
+                try {
+                    saved = b.save(connection);
+                } catch (DepartureFullException full) {
+                    int choice = JOptionPane.showConfirmDialog(dialog,
+                            tour.getName() + " on " + full.getTravelDate() + " has " + full.getSeatsLeft() +
+                                    " seat(s) left.\nAdd the customer to the waitlist for this departure?",
+                            "Departure Full", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+                    if (choice != JOptionPane.YES_OPTION) return;
+                    int position = Waitlist.join(connection, tourId, full.getTravelDate(), customerId, numPeople);
+                    JOptionPane.showMessageDialog(dialog, "Added to the waitlist at position " + position + ".",
+                            "Waitlist", JOptionPane.INFORMATION_MESSAGE);
+                    dialog.dispose();
+                    return;
+                }
+                if (saved) {
+                    reads.noteWrite();
                     dialog.dispose();
                 } else {
                     JOptionPane.showMessageDialog(dialog, "Failed to save booking", "Error", JOptionPane.ERROR_MESSAGE);
                 }
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(dialog, "Number of people must be an integer", "Error", JOptionPane.ERROR_MESSAGE);
+            } catch (IllegalStateException ex) {
+                JOptionPane.showMessageDialog(dialog, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             } catch (SQLException ex) {
                 ex.printStackTrace();
                 JOptionPane.showMessageDialog(dialog, "Database error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(dialog, "Invalid date format", "Error", JOptionPane.ERROR_MESSAGE);
             }
-        });
+        });
+
+        cancel.addActionListener(e -> dialog.dispose());
+
+        buttons.add(cancel);
+        buttons.add(save);
+        south.add(buttons, BorderLayout.SOUTH);
+        panel.add(south, BorderLayout.SOUTH);
+
+        dialog.add(panel);
+        dialog.setVisible(true);
+    }
+
+    // Several tours for one customer, booked together or not at all
+    private void showItineraryForm() {
+        if (!requireOnline()) return;
+
+        JDialog dialog = new JDialog(this, "New Itinerary", true);
+        dialog.setSize(700, 450);
+        dialog.setLocationRelativeTo(this);
+
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JComboBox<String> customerCombo = new JComboBox<>();
+        JComboBox<String> statusCombo = new JComboBox<>();
+        JComboBox<String> tourCombo = new JComboBox<>();
+        Map<String, Double> tourPrices = new HashMap<>();
+        try {
+            for (Customer c : Customer.getAllCustomers(connection)) {
+                customerCombo.addItem(c.getName() + " (" + c.getId() + ")");
+            }
+            for (Tour t : Tour.getAllTours(connection)) {
+                tourCombo.addItem(t.getName() + " (" + t.getId() + ")");
+                tourPrices.put(t.getId(), t.getPrice());
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        for (BookingStatus status : BookingStatus.values()) {
+            if (status.isInitial()) statusCombo.addItem(status.getLabel());
+        }
+
+        JPanel header = new JPanel(new GridLayout(2, 2, 5, 5));
+        header.add(new JLabel("Customer:"));
+        header.add(customerCombo);
+        header.add(new JLabel("Status:"));
+        header.add(statusCombo);
+        panel.add(header, BorderLayout.NORTH);
+
+        DefaultTableModel legsModel = new DefaultTableModel(
+                new String[]{"Tour", "Travel Date (YYYY-MM-DD)", "Number of People"}, 0);
+        JTable legsTable = new JTable(legsModel);
+        legsTable.getColumnModel().getColumn(0).setCellEditor(new DefaultCellEditor(tourCombo));
+        legsModel.addRow(new Object[]{tourCombo.getItemCount() > 0 ? tourCombo.getItemAt(0) : null, "", "1"});
+        panel.add(new JScrollPane(legsTable), BorderLayout.CENTER);
+
+        // Estimate from the prices loaded with the dialog; save prices every leg again under lock
+        JLabel total = new JLabel(" ");
+        Runnable updateTotal = () -> {
+            double sum = 0;
+            for (int row = 0; row < legsModel.getRowCount(); row++) {
+                Double price = tourPrices.get(selectedId((String) legsModel.getValueAt(row, 0)));
+                try {
+                    if (price != null) sum += price * Integer.parseInt(String.valueOf(legsModel.getValueAt(row, 2)).trim());
+                } catch (NumberFormatException ignored) {
+                    // Counted once the number is complete
+                }
+            }
+            total.setText(String.format("Estimated total: %,.2f", sum));
+        };
+        legsModel.addTableModelListener(e -> updateTotal.run());
+        updateTotal.run();
+
+        JPanel south = new JPanel(new BorderLayout());
+        JPanel legButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton addLeg = new JButton("Add Tour");
+        addLeg.addActionListener(e -> {
+            int last = legsModel.getRowCount() - 1;
+            // A new leg starts from the previous one, so only what differs needs typing
+            legsModel.addRow(last < 0 ? new Object[]{tourCombo.getItemAt(0), "", "1"}
+                    : new Object[]{legsModel.getValueAt(last, 0), legsModel.getValueAt(last, 1), legsModel.getValueAt(last, 2)});
+        });
+        JButton removeLeg = new JButton("Remove Tour");
+        removeLeg.addActionListener(e -> {
+            int row = legsTable.getSelectedRow();
+            if (row >= 0) legsModel.removeRow(legsTable.convertRowIndexToModel(row));
+        });
+        legButtons.add(addLeg);
+        legButtons.add(removeLeg);
+        legButtons.add(total);
+        south.add(legButtons, BorderLayout.NORTH);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton save = new JButton("Save");
+        JButton cancel = new JButton("Cancel");
+
+        save.addActionListener(e -> {
+            if (legsTable.isEditing()) legsTable.getCellEditor().stopCellEditing();
+            String customerId = selectedId((String) customerCombo.getSelectedItem());
+            if (customerId == null || legsModel.getRowCount() == 0) {
+                JOptionPane.showMessageDialog(dialog, "Please choose a customer and at least one tour", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            try {
+                Itinerary itinerary = new Itinerary(customerId, BookingStatus.fromLabel((String) statusCombo.getSelectedItem()));
+                for (int row = 0; row < legsModel.getRowCount(); row++) {
+                    String tourId = selectedId((String) legsModel.getValueAt(row, 0));
+                    String travelDate = String.valueOf(legsModel.getValueAt(row, 1)).trim();
+                    int numPeople = Integer.parseInt(String.valueOf(legsModel.getValueAt(row, 2)).trim());
+                    if (tourId == null || numPeople <= 0) {
+                        JOptionPane.showMessageDialog(dialog, "Please complete tour " + (row + 1), "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    itinerary.addLeg(tourId, Date.valueOf(travelDate), numPeople);
+                }
+                itinerary.save(connection);
+                reads.noteWrite();
+                dialog.dispose();
+                JOptionPane.showMessageDialog(this, "Itinerary " + itinerary.getId() + " booked with " +
+                        itinerary.getBookings().size() + " tour(s).", "Itinerary", JOptionPane.INFORMATION_MESSAGE);
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(dialog, "Number of people must be an integer", "Error", JOptionPane.ERROR_MESSAGE);
+            } catch (DepartureFullException full) {
+                JOptionPane.showMessageDialog(dialog, "Tour " + full.getTourId() + " on " + full.getTravelDate() +
+                        " has " + full.getSeatsLeft() + " seat(s) left.\nNothing was booked.", "Departure Full", JOptionPane.WARNING_MESSAGE);
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(dialog, "Database error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(dialog, "Invalid date format", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        cancel.addActionListener(e -> dialog.dispose());
+
+        buttons.add(cancel);
+        buttons.add(save);
+        south.add(buttons, BorderLayout.SOUTH);
+        panel.add(south, BorderLayout.SOUTH);
+
+        dialog.add(panel);
+        dialog.setVisible(true);
+    }
+
+    // "Name (ID)" combo entries
+    private static String selectedId(String selection) {
+        if (selection == null || selection.indexOf('(') < 0) return null;
+        return selection.substring(selection.lastIndexOf('(') + 1, selection.lastIndexOf(')'));
+    }
+
+    private void refreshTable(String panelName) {
+        loadedPanels.add(panelName);
+        if ("occupancy".equals(panelName)) {
+            loadOccupancy(occupancyModel.getWindowFrom());
+            return;
+        }
+        if (connection == null) {
+            refreshTableFromSnapshot(panelName);
+            return;
+        }
+
+        try {
+            JTable table = tables.get(panelName);
+            if (table != null) {
+                DefaultTableModel model = (DefaultTableModel) table.getModel();
+                model.setRowCount(0);
+                // A replica read must not be older than what DeltaSync already skipped past
+                Connection conn = reads.forRead(syncedClock());
+
+                switch (panelName) {
+                    case "destination":
+                        List<Destination> destinations = Destination.getAllDestinations(conn);
+                        for (Destination d : destinations) {
+                            model.addRow(destinationRow(d));
+                        }
+                        break;
+                    case "tour":
+                        List<Tour> tours = Tour.getAllTours(conn);
+                        Map<String, String> destinationNames = namesById(conn, "destinations", tours, Tour::getDestinationId);
+                        for (Tour t : tours) {
+                            model.addRow(tourRow(t, destinationNames.getOrDefault(t.getDestinationId(), "Unknown Destination")));
+                        }
+                        break;
+                    case "customer":
+                        List<Customer> customers = Customer.getAllCustomers(conn);
+                        for (Customer c : customers) {
+                            model.addRow(customerRow(c));
+                        }
+                        break;
+                    case "booking":
+                        List<Booking> bookings = Booking.getAllBookings(conn);
+                        Map<String, String> tourNames = namesById(conn, "tours", bookings, Booking::getTourId);
+                        Map<String, String> customerNames = namesById(conn, "customers", bookings, Booking::getCustomerId);
+                        for (Booking b : bookings) {
+                            model.addRow(bookingRow(b,
+                                    tourNames.getOrDefault(b.getTourId(), "Unknown Tour"),
+                                    customerNames.getOrDefault(b.getCustomerId(), "Unknown Customer")));
+                        }
+                        break;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error refreshing data: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // One IN query per chunk of referenced ids instead of a name lookup per row
+    private static <T> Map<String, String> namesById(Connection conn, String table, List<T> rows,
+                                                     Function<T, String> reference) throws SQLException {
+        Set<String> ids = new HashSet<>();
+        for (T row : rows) ids.add(reference.apply(row));
+        Map<String, String> names = new HashMap<>();
+        for (String[] row : SqlSupport.selectByIds(conn, "SELECT id, name FROM " + table + " WHERE id IN",
+                new ArrayList<>(ids), rs -> new String[]{rs.getString(1), rs.getString(2)})) {
+            names.put(row[0], row[1]);
+        }
+        return names;
+    }
+
+    // Replays the deltas that arrived during the load, then makes the store visible to applyDelta and
+    // the analytics; when another load got there first, its store is kept
+    private BookingColumnStore publishBookingStore(BookingColumnStore loaded) {
+        synchronized (bookingStoreLock) {
+            if (bookingStore == null) {
+                if (bookingStoreBacklog != null) {
+                    for (DeltaSync.Delta delta : bookingStoreBacklog) applyToStore(loaded, delta);
+                }
+                bookingStore = loaded;
+            }
+            bookingStoreBacklog = null;
+            return bookingStore;
+        }
+    }
+
+    private static void applyToStore(BookingColumnStore store, DeltaSync.Delta delta) {
+        for (String id : delta.deleted.getOrDefault("booking", Collections.emptyList())) store.remove(id);
+        for (Booking b : delta.bookings) store.upsert(b);
+    }
+
+    private long[] syncedClock() {
+        return deltaSync != null ? deltaSync.seenClock() : null;
+    }
+
+    private void refreshTableFromSnapshot(String panelName) {
+        JTable table = tables.get(panelName);
+        if (table == null) return;
+
+        DefaultTableModel model = (DefaultTableModel) table.getModel();
+        model.setRowCount(0);
+        if (snapshot == null) return;
+
+        switch (panelName) {
+            case "destination":
+                for (Destination d : snapshot.getDestinations()) {
+                    model.addRow(destinationRow(d));
+                }
+                break;
+            case "tour":
+                Map<String, String> destinationNames = snapshot.destinationNames();
+                for (Tour t : snapshot.getTours()) {
+                    model.addRow(tourRow(t, destinationNames.getOrDefault(t.getDestinationId(), "Unknown Destination")));
+                }
+                break;
+            case "customer":
+                for (Customer c : snapshot.getCustomers()) {
+                    model.addRow(customerRow(c));
+                }
+                break;
+            case "booking":
+                Map<String, String> tourNames = snapshot.tourNames();
+                Map<String, String> customerNames = snapshot.customerNames();
+                for (Booking b : snapshot.getBookings()) {
+                    model.addRow(bookingRow(b,
+                            tourNames.getOrDefault(b.getTourId(), "Unknown Tour"),
+                            customerNames.getOrDefault(b.getCustomerId(), "Unknown Customer")));
+                }
+                break;
+        }
+    }
+
+    // Runs on the sync thread. Other clients' changes reach the indexes and views through the same
+    // bus as this client's own writes; DeltaSync cannot tell inserts from updates, so rows are UPDATED.
+    private void applyDelta(DeltaSync.Delta delta, Connection conn) throws SQLException {
+        synchronized (bookingStoreLock) {
+            if (bookingStore != null) {
+                applyToStore(bookingStore, delta);
+            } else if (bookingStoreBacklog != null) {
+                bookingStoreBacklog.add(delta);
+            }
+        }
+        DuplicateDetector.observe(delta.customers);
+
+        List<DomainEvent> events = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : delta.deleted.entrySet()) {
+            DomainEvent.Entity entity = DomainEvent.Entity.fromKey(entry.getKey());
+            for (String id : entry.getValue()) events.add(DomainEvent.deleted(entity, id));
+        }
+        for (Destination d : delta.destinations) events.add(DomainEvent.saved(DomainEvent.Entity.DESTINATION, d.getId(), false, d));
+        for (Tour t : delta.tours) events.add(DomainEvent.saved(DomainEvent.Entity.TOUR, t.getId(), false, t));
+        for (Customer c : delta.customers) events.add(DomainEvent.saved(DomainEvent.Entity.CUSTOMER, c.getId(), false, c));
+        for (Booking b : delta.bookings) events.add(DomainEvent.saved(DomainEvent.Entity.BOOKING, b.getId(), false, b));
+        DomainEvents.publish(events);
+    }
+
+    // EDT, once per frame: patches the affected rows of loaded tables, renames the rows that show a
+    // changed name, and refreshes the occupancy calendar and the dashboard counts when they are affected
+    private void applyEvents(List<DomainEvent> events) {
+        Map<String, List<String>> deleted = new HashMap<>();
+        Map<String, List<Object[]>> upserts = new HashMap<>();
+        Map<String, Map<String, String>> renamed = new HashMap<>();
+        Map<String, Set<String>> unnamed = new HashMap<>();
+        Set<DomainEvent.Entity> counted = EnumSet.noneOf(DomainEvent.Entity.class);
+        for (DomainEvent event : events) {
+            String key = event.entity.key;
+            // DeltaSync reports inserts as UPDATED too, so any change may have moved a count
+            counted.add(event.entity);
+            if (event.change == DomainEvent.Change.DELETED) {
+                deleted.computeIfAbsent(key, k -> new ArrayList<>()).add(event.id);
+                continue;
+            }
+            if (event.row instanceof Destination) {
+                Destination d = (Destination) event.row;
+                renamed.computeIfAbsent(key, k -> new HashMap<>()).put(d.getId(), d.getName());
+            } else if (event.row instanceof Customer) {
+                Customer c = (Customer) event.row;
+                renamed.computeIfAbsent(key, k -> new HashMap<>()).put(c.getId(), c.getName());
+            } else if (event.row instanceof Tour) {
+                Tour t = (Tour) event.row;
+                renamed.computeIfAbsent(key, k -> new HashMap<>()).put(t.getId(), t.getName());
+            }
+            // Only tables on screen are patched; the rest load fresh rows when opened
+            if (loadedPanels.contains(key)) {
+                upserts.computeIfAbsent(key, k -> new ArrayList<>()).add(displayRow(event.row, unnamed));
+            }
+        }
+
+        for (String panelName : loadedPanels) {
+            JTable table = tables.get(panelName);
+            if (table == null) continue;
+
+            DefaultTableModel model = (DefaultTableModel) table.getModel();
+            removeRows(model, deleted.getOrDefault(panelName, Collections.emptyList()));
+            upsertRows(model, upserts.get(panelName));
+            renameRefs(panelName, renamed);
+        }
+        resolveNames(unnamed);
+        if (loadedPanels.contains("occupancy")) updateOccupancy(events);
+        refreshTileCounts(counted);
+    }
+
+    // Booking changes are patched into the loaded index; while a load runs they wait for its result
+    private void updateOccupancy(List<DomainEvent> events) {
+        if (occupancyBacklog != null) {
+            occupancyBacklog.addAll(events);
+            return;
+        }
+        OccupancyIndex index = occupancyIndex;
+        if (index == null || events.stream().noneMatch(e ->
+                e.entity == DomainEvent.Entity.BOOKING || e.entity == DomainEvent.Entity.TOUR)) {
+            return;
+        }
+        if (patchOccupancy(index, events)) {
+            showOccupancy(index, occupancyModel.getWindowFrom());
+        } else {
+            loadOccupancy(occupancyModel.getWindowFrom());
+        }
+    }
+
+    // False when a tour change alters the calendar rows, which takes a reload
+    private static boolean patchOccupancy(OccupancyIndex index, List<DomainEvent> events) {
+        for (DomainEvent event : events) {
+            if (event.entity != DomainEvent.Entity.TOUR) continue;
+            boolean current = event.change == DomainEvent.Change.DELETED
+                    ? !index.hasTour(event.id) : index.isCurrent((Tour) event.row);
+            if (!current) return false;
+        }
+        for (DomainEvent event : events) {
+            if (event.entity != DomainEvent.Entity.BOOKING) continue;
+            Booking row = event.change == DomainEvent.Change.DELETED ? null : (Booking) event.row;
+            if (!index.patch(event.id, row)) return false;
+        }
+        return true;
+    }
+
+    // Never queries: names the search index does not know yet show as the id and are collected in
+    // unnamed, for resolveNames to look up off the EDT
+    private Object[] displayRow(Object row, Map<String, Set<String>> unnamed) {
+        if (row instanceof Destination) return destinationRow((Destination) row);
+        if (row instanceof Customer) return customerRow((Customer) row);
+        if (row instanceof Tour) {
+            Tour t = (Tour) row;
+            return tourRow(t, nameOrId("destination", t.getDestinationId(), unnamed));
+        }
+        Booking b = (Booking) row;
+        return bookingRow(b, nameOrId("tour", b.getTourId(), unnamed), nameOrId("customer", b.getCustomerId(), unnamed));
+    }
+
+    // The search index is subscribed synchronously, so it already holds the names of this batch
+    private String nameOrId(String entity, String id, Map<String, Set<String>> unnamed) {
+        SearchIndex index = searchIndex;
+        String name = index != null ? index.findName(entity, id) : null;
+        if (name != null) return name;
+        unnamed.computeIfAbsent(entity, k -> new HashSet<>()).add(id);
+        return id;
+    }
+
+    private void resolveNames(Map<String, Set<String>> unnamed) {
+        if (unnamed.isEmpty() || connection == null) return;
+
+        new SwingWorker<Map<String, Map<String, String>>, Void>() {
+            @Override
+            protected Map<String, Map<String, String>> doInBackground() throws SQLException {
+                Map<String, Map<String, String>> names = new HashMap<>();
+                Connection conn = reads.forRead(syncedClock());
+                for (Map.Entry<String, Set<String>> entry : unnamed.entrySet()) {
+                    Map<String, String> found = new HashMap<>();
+                    for (String[] row : SqlSupport.selectByIds(conn, "SELECT id, name FROM " + entry.getKey() + "s WHERE id IN",
+                            new ArrayList<>(entry.getValue()), rs -> new String[]{rs.getString(1), rs.getString(2)})) {
+                        found.put(row[0], row[1]);
+                    }
+                    names.put(entry.getKey(), found);
+                }
+                return names;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    Map<String, Map<String, String>> names = get();
+                    for (String panelName : loadedPanels) renameRefs(panelName, names);
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    private void renameRefs(String panelName, Map<String, Map<String, String>> names) {
+        JTable table = tables.get(panelName);
+        if (table == null) return;
+
+        DefaultTableModel model = (DefaultTableModel) table.getModel();
+        if ("tour".equals(panelName)) {
+            renameRefs(model, 2, names.get("destination"));
+        } else if ("booking".equals(panelName)) {
+            renameRefs(model, 1, names.get("tour"));
+            renameRefs(model, 2, names.get("customer"));
+        }
+    }
+
+    private static void renameRefs(DefaultTableModel model, int column, Map<String, String> names) {
+        if (names == null) return;
+
+        for (int row = 0; row < model.getRowCount(); row++) {
+            Object value = model.getValueAt(row, column);
+            if (!(value instanceof Ref)) continue;
+            Ref ref = (Ref) value;
+            String name = names.get(ref.id);
+            if (name != null && !name.equals(ref.name)) model.setValueAt(new Ref(ref.id, name), row, column);
+        }
+    }
+
+    // A burst of events touches the counts many times a frame; they are counted at most once a second
+    private void refreshTileCounts(Set<DomainEvent.Entity> entities) {
+        if (entities.isEmpty() || connection == null) return;
+
+        staleCounts.addAll(entities);
+        if (countTimer == null) {
+            countTimer = new Timer(COUNT_INTERVAL_MS, e -> countTiles());
+            countTimer.setRepeats(false);
+        }
+        if (!countTimer.isRunning()) countTimer.start();
+    }
+
+    private void countTiles() {
+        Set<DomainEvent.Entity> entities = EnumSet.copyOf(staleCounts);
+        staleCounts.clear();
+
+        new SwingWorker<Map<DomainEvent.Entity, Integer>, Void>() {
+            @Override
+            protected Map<DomainEvent.Entity, Integer> doInBackground() throws SQLException {
+                Map<DomainEvent.Entity, Integer> counts = new EnumMap<>(DomainEvent.Entity.class);
+                Connection conn = reads.forRead(syncedClock());
+                try (Statement stmt = conn.createStatement()) {
+                    for (DomainEvent.Entity entity : entities) {
+                        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + entity.key + "s")) {
+                            rs.next();
+                            counts.put(entity, rs.getInt(1));
+                        }
+                    }
+                }
+                return counts;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    for (Map.Entry<DomainEvent.Entity, Integer> count : get().entrySet()) {
+                        JLabel label = tileCounts.get(count.getKey().key);
+                        if (label != null) label.setText(count.getValue() + " records");
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
 
-        cancel.addActionListener(e -> dialog.dispose());
+    private static Map<String, Integer> rowIndexById(DefaultTableModel model) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            index.put((String) model.getValueAt(row, 0), row);
+        }
+        return index;
+    }
 
-        buttons.add(cancel);
-        buttons.add(save);
-        panel.add(buttons, BorderLayout.SOUTH);
+    private static void removeRows(DefaultTableModel model, List<String> ids) {
+        if (ids.isEmpty()) return;
 
-        dialog.add(panel);
-        dialog.setVisible(true);
+        Set<String> doomed = new HashSet<>(ids);
+        for (int row = model.getRowCount() - 1; row >= 0; row--) {
+            if (doomed.contains(model.getValueAt(row, 0))) model.removeRow(row);
+        }
     }
 
-    private void refreshTable(String panelName) {
-        try {
-            JPanel panel = panels.get(panelName);
-            JTable table = getTableFromPanel(panel);
-            if (table != null) {
-                DefaultTableModel model = (DefaultTableModel) table.getModel();
-                model.setRowCount(0);
+    private static void upsertRows(DefaultTableModel model, List<Object[]> rows) {
+        if (rows == null || rows.isEmpty()) return;
 
-                switch (panelName) {
-                    case "destination":
-                        List<Destination> destinations = Destination.getAllDestinations(connection);
-                        for (Destination d : destinations) {
-                            model.addRow(new Object[]{d.getId(), d.getName(), d.getCountry(), d.getBestSeason()});
-                        }
-                        break;
-                    case "tour":
-                        List<Tour> tours = Tour.getAllTours(connection);
-                        for (Tour t : tours) {
-                            model.addRow(new Object[]{
-                                    t.getId(),
-                                    t.getName(),
-                                    t.getDestinationName(connection),
-                                    t.getDurationDays(),
-                                    t.getPrice(),
-                                    t.isAvailable() ? "Yes" : "No"
-                            });
-                        }
-                        break;
-                    case "customer":
-                        List<Customer> customers = Customer.getAllCustomers(connection);
-                        for (Customer c : customers) {
-                            model.addRow(new Object[]{c.getId(), c.getName(), c.getEmail(), c.getPhone()});
-                        }
-                        break;
-                    case "booking":
-                        List<Booking> bookings = Booking.getAllBookings(connection);
-                        for (Booking b : bookings) {
-                            model.addRow(new Object[]{
-                                    b.getId(),
-                                    b.getTourName(connection),
-                                    b.getCustomerName(connection),
-                                    b.getBookingDate(),
-                                    b.getTravelDate(),
-                                    b.getNumPeople(),
-                                    b.getTotalPrice(),
-                                    b.getStatus()
-                            });
-                        }
-                        break;
+        Map<String, Integer> index = rowIndexById(model);
+        for (Object[] values : rows) {
+            Integer row = index.get((String) values[0]);
+            if (row == null) {
+                model.addRow(values);
+                index.put((String) values[0], model.getRowCount() - 1);
+            } else {
+                for (int col = 1; col < values.length; col++) {
+                    model.setValueAt(values[col], row, col);
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error refreshing data: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    private static Object[] destinationRow(Destination d) {
+        return new Object[]{d.getId(), d.getName(), d.getCountry(), d.getBestSeason()};
+    }
+
+    private static Object[] tourRow(Tour t, String destinationName) {
+        return new Object[]{
+                t.getId(),
+                t.getName(),
+                new Ref(t.getDestinationId(), destinationName),
+                FastCellRenderers.numberValue(t.getDurationDays()),
+                FastCellRenderers.moneyValue(t.getPrice()),
+                t.isAvailable() ? "Yes" : "No"
+        };
+    }
+
+    private static Object[] customerRow(Customer c) {
+        return new Object[]{c.getId(), c.getName(), c.getEmail(), c.getPhone()};
+    }
+
+    private static Object[] bookingRow(Booking b, String tourName, String customerName) {
+        return new Object[]{
+                b.getId(),
+                new Ref(b.getTourId(), tourName),
+                new Ref(b.getCustomerId(), customerName),
+                FastCellRenderers.dateValue(b.getBookingDate()),
+                FastCellRenderers.dateValue(b.getTravelDate()),
+                FastCellRenderers.numberValue(b.getNumPeople()),
+                FastCellRenderers.moneyValue(b.getTotalPrice()),
+                b.getStatus()
+        };
+    }
+
+    /** A cell showing a related row's name; keeps the id so a rename can find the cells to update. */
+    private static final class Ref {
+        final String id;
+        final String name;
+
+        Ref(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() { return name; }
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             try {
@@ -1215,10 +2737,31 @@ public class TourismManagementSystem extends JFrame {
                     @Override
                     public void windowClosing(WindowEvent e) {
                         try {
+                            if (frame.lifecycleJob != null) {
+                                frame.lifecycleJob.stop();
+                            }
+                            if (frame.notificationDispatcher != null) {
+                                frame.notificationDispatcher.stop();
+                            }
+                            if (frame.waitlist != null) {
+                                frame.waitlist.stop();
+                            }
+                            if (frame.deltaSync != null) {
+                                frame.deltaSync.stop();
+                            }
+                            if (frame.partitionJob != null) {
+                                frame.partitionJob.stop();
+                            }
+                            if (frame.coBookings != null) {
+                                frame.coBookings.save();
+                            }
+                            if (frame.reads != null) {
+                                frame.reads.close();
+                            }
                             if (frame.connection != null && !frame.connection.isClosed()) {
                                 frame.connection.close();
                             }
-                        } catch (SQLException ex) {
+                        } catch (SQLException | IOException ex) {
                             ex.printStackTrace();
                         }
                     }
@@ -1231,24 +2774,86 @@ public class TourismManagementSystem extends JFrame {
 }
 
 class GradientPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    // Rendered backgrounds keyed by colors and size; module panels of the same size share one image.
+    // An image can be larger than its key's size; only the top-left width x height is drawn.
+    private static final int CACHE_SIZE = 8;
+    private static final int SPARE_SIZE = 2;
+    private static final Deque<BufferedImage> SPARES = new ArrayDeque<>();
+    private static int largestWidth;
+    private static int largestHeight;
+    private static final Map<String, BufferedImage> BACKGROUNDS = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+            if (size() <= CACHE_SIZE) return false;
+            // Kept for the next size, so resizing a window does not allocate a full-size image per step
+            SPARES.addFirst(eldest.getValue());
+            if (SPARES.size() > SPARE_SIZE) SPARES.removeLast();
+            return true;
+        }
+    };
+
     private Color color1;
     private Color color2;
 
     public GradientPanel(Color color1, Color color2) {
         this.color1 = color1;
         this.color2 = color2;
-        setOpaque(false);
+        // The gradient covers every pixel, so Swing need not paint what lies behind the panel
+        setOpaque(color1.getAlpha() == 255 && color2.getAlpha() == 255);
     }
 
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) return;
+
+        // Copy only the damaged area out of the cached image
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, width, height);
+        int x2 = Math.min(width, clip.x + clip.width);
+        int y2 = Math.min(height, clip.y + clip.height);
+        g.drawImage(background(width, height), clip.x, clip.y, x2, y2, clip.x, clip.y, x2, y2, null);
+    }
+
+    private BufferedImage background(int width, int height) {
+        String key = color1.getRGB() + ":" + color2.getRGB() + ":" + width + "x" + height;
+        synchronized (BACKGROUNDS) {
+            BufferedImage image = BACKGROUNDS.get(key);
+            if (image == null) {
+                image = spare(width, height);
+                Graphics2D g2d = image.createGraphics();
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g2d.setPaint(new GradientPaint(0, 0, color1, width, height, color2));
+                g2d.fillRect(0, 0, width, height);
+                g2d.dispose();
+                BACKGROUNDS.put(key, image);
+            }
+            return image;
+        }
+    }
 
-        GradientPaint gp = new GradientPaint(0, 0, color1, getWidth(), getHeight(), color2);
-        g2d.setPaint(gp);
-        g2d.fillRect(0, 0, getWidth(), getHeight());
+    private BufferedImage spare(int width, int height) {
+        int transparency = isOpaque() ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+        for (Iterator<BufferedImage> it = SPARES.iterator(); it.hasNext(); ) {
+            BufferedImage image = it.next();
+            if (image.getWidth() >= width && image.getHeight() >= height && image.getTransparency() == transparency) {
+                it.remove();
+                return image;
+            }
+        }
+        // Sized for the largest panel so far, so any spare fits the sizes a resize passes through
+        largestWidth = Math.max(largestWidth, width);
+        largestHeight = Math.max(largestHeight, height);
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        return config != null
+                ? config.createCompatibleImage(largestWidth, largestHeight, transparency)
+                : new BufferedImage(largestWidth, largestHeight, isOpaque() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
     }
 }
 
@@ -1258,6 +2863,8 @@ class Destination {
     private String country;
     private String description;
     private String bestSeason;
+    private int seasonMonths;
+    private long version;
 
     public Destination(String id, String name, String country, String description, String bestSeason) {
         this.id = id;
@@ -1265,6 +2872,7 @@ class Destination {
         this.country = country;
         this.description = description;
         this.bestSeason = bestSeason;
+        this.seasonMonths = SeasonIndex.seasonMonths(bestSeason);
     }
 
     public String getId() { return id; }
@@ -1272,11 +2880,16 @@ class Destination {
     public String getCountry() { return country; }
     public String getDescription() { return description; }
     public String getBestSeason() { return bestSeason; }
+    public int getSeasonMonths() { return seasonMonths; }
+    public long getVersion() { return version; }
 
     public void setName(String name) { this.name = name; }
     public void setCountry(String country) { this.country = country; }
     public void setDescription(String description) { this.description = description; }
-    public void setBestSeason(String bestSeason) { this.bestSeason = bestSeason; }
+    public void setBestSeason(String bestSeason) {
+        this.bestSeason = bestSeason;
+        this.seasonMonths = SeasonIndex.seasonMonths(bestSeason);
+    }
 
     // Database operations
     public static List<Destination> getAllDestinations(Connection conn) throws SQLException {
@@ -1287,13 +2900,7 @@ class Destination {
              ResultSet rs = stmt.executeQuery(query)) {
 
             while (rs.next()) {
-                destinations.add(new Destination(
-                        rs.getString("id"),
-                        rs.getString("name"),
-                        rs.getString("country"),
-                        rs.getString("description"),
-                        rs.getString("best_season")
-                ));
+                destinations.add(fromRow(rs));
             }
         }
         return destinations;
@@ -1307,29 +2914,64 @@ class Destination {
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
-                return new Destination(
-                        rs.getString("id"),
-                        rs.getString("name"),
-                        rs.getString("country"),
-                        rs.getString("description"),
-                        rs.getString("best_season")
-                );
+                return fromRow(rs);
             }
         }
         return null;
     }
 
+    public static List<Destination> getChangedSince(Connection conn, long version, long upTo, int limit) throws SQLException {
+        List<Destination> destinations = new ArrayList<>();
+        String query = "SELECT * FROM destinations WHERE version > ? AND version <= ? ORDER BY version LIMIT ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setLong(1, version);
+            pstmt.setLong(2, upTo);
+            pstmt.setInt(3, limit);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                destinations.add(fromRow(rs));
+            }
+        }
+        return destinations;
+    }
+
+    private static Destination fromRow(ResultSet rs) throws SQLException {
+        Destination destination = new Destination(
+                rs.getString("id"),
+                rs.getString("name"),
+                Interner.COUNTRIES.intern(rs.getString("country")),
+                rs.getString("description"),
+                Interner.SEASONS.intern(rs.getString("best_season"))
+        );
+        int seasonMonths = rs.getInt("season_months");
+        // Rows another client wrote before the column existed keep the set parsed from the text
+        if (!rs.wasNull() && seasonMonths != 0) destination.seasonMonths = seasonMonths;
+        destination.version = rs.getLong("version");
+        return destination;
+    }
+
     public boolean save(Connection conn) throws SQLException {
-        if (getById(conn, this.id) != null) {
-            return update(conn);
+        boolean created = true;
+        boolean saved;
+        if (id == null) {
+            // New rows take a pre-allocated id, so no existence probe is needed
+            id = IdAllocator.nextId("destination");
+            saved = insert(conn);
+        } else if (getById(conn, this.id) != null) {
+            created = false;
+            saved = update(conn);
         } else {
-            return insert(conn);
+            saved = insert(conn);
         }
+        if (saved) DomainEvents.publish(DomainEvent.saved(DomainEvent.Entity.DESTINATION, id, created, this));
+        return saved;
     }
 
     private boolean insert(Connection conn) throws SQLException {
-        String query = "INSERT INTO destinations (id, name, country, description, best_season) " +
-                "VALUES (?, ?, ?, ?, ?)";
+        String query = "INSERT INTO destinations (id, name, country, description, best_season, season_months) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, id);
@@ -1337,21 +2979,23 @@ class Destination {
             pstmt.setString(3, country);
             pstmt.setString(4, description);
             pstmt.setString(5, bestSeason);
+            pstmt.setInt(6, seasonMonths);
 
             return pstmt.executeUpdate() > 0;
         }
     }
 
     private boolean update(Connection conn) throws SQLException {
-        String query = "UPDATE destinations SET name = ?, country = ?, description = ?, best_season = ? " +
-                "WHERE id = ?";
+        String query = "UPDATE destinations SET name = ?, country = ?, description = ?, best_season = ?, " +
+                "season_months = ? WHERE id = ?";
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, name);
             pstmt.setString(2, country);
             pstmt.setString(3, description);
             pstmt.setString(4, bestSeason);
-            pstmt.setString(5, id);
+            pstmt.setInt(5, seasonMonths);
+            pstmt.setString(6, id);
 
             return pstmt.executeUpdate() > 0;
         }
@@ -1362,9 +3006,24 @@ class Destination {
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, id);
-            return pstmt.executeUpdate() > 0;
+            boolean deleted = pstmt.executeUpdate() > 0;
+            if (deleted) DomainEvents.publish(DomainEvent.deleted(DomainEvent.Entity.DESTINATION, id));
+            return deleted;
         }
     }
+
+    public static List<String> findReferenced(Connection conn, List<String> ids) throws SQLException {
+        return SqlSupport.selectIds(conn, "SELECT d.id FROM destinations d " +
+                "WHERE EXISTS (SELECT 1 FROM tours t WHERE t.destination_id = d.id) AND d.id IN", ids);
+    }
+
+    // Referenced rows are skipped rather than failing the whole set
+    public static int deleteAll(Connection conn, List<String> ids) throws SQLException {
+        int deleted = SqlSupport.updateByIds(conn, "DELETE FROM destinations " +
+                "WHERE NOT EXISTS (SELECT 1 FROM tours t WHERE t.destination_id = destinations.id) AND id IN", ids);
+        DomainEvents.publishDeleted(conn, DomainEvent.Entity.DESTINATION, "destinations", ids, deleted);
+        return deleted;
+    }
 }
 
 class Tour {
@@ -1374,6 +3033,9 @@ class Tour {
     private int durationDays;
     private double price;
     private boolean available;
+    // Seats per departure; null for no limit
+    private Integer capacity;
+    private long version;
 
     public Tour(String id, String name, String destinationId, int durationDays, double price, boolean available) {
         this.id = id;
@@ -1390,30 +3052,27 @@ class Tour {
     public int getDurationDays() { return durationDays; }
     public double getPrice() { return price; }
     public boolean isAvailable() { return available; }
+    public Integer getCapacity() { return capacity; }
+    public long getVersion() { return version; }
 
     public void setName(String name) { this.name = name; }
     public void setDestinationId(String destinationId) { this.destinationId = destinationId; }
     public void setDurationDays(int durationDays) { this.durationDays = durationDays; }
     public void setPrice(double price) { this.price = price; }
     public void setAvailable(boolean available) { this.available = available; }
+    public void setCapacity(Integer capacity) { this.capacity = capacity; }
 
     // Database operations
     public static List<Tour> getAllTours(Connection conn) throws SQLException {
         List<Tour> tours = new ArrayList<>();
+        Interner ids = Interner.forLoad();
         String query = "SELECT * FROM tours";
 
         try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
 
             while (rs.next()) {
-                tours.add(new Tour(
-                        rs.getString("id"),
-                        rs.getString("name"),
-                        rs.getString("destination_id"),
-                        rs.getInt("duration_days"),
-                        rs.getDouble("price"),
-                        rs.getBoolean("available")
-                ));
+                tours.add(fromRow(rs, ids));
             }
         }
         return tours;
@@ -1427,35 +3086,74 @@ class Tour {
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
-                return new Tour(
-                        rs.getString("id"),
-                        rs.getString("name"),
-                        rs.getString("destination_id"),
-                        rs.getInt("duration_days"),
-                        rs.getDouble("price"),
-                        rs.getBoolean("available")
-                );
+                return fromRow(rs);
             }
         }
         return null;
     }
 
+    public static List<Tour> getChangedSince(Connection conn, long version, long upTo, int limit) throws SQLException {
+        List<Tour> tours = new ArrayList<>();
+        Interner ids = Interner.forLoad();
+        String query = "SELECT * FROM tours WHERE version > ? AND version <= ? ORDER BY version LIMIT ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setLong(1, version);
+            pstmt.setLong(2, upTo);
+            pstmt.setInt(3, limit);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                tours.add(fromRow(rs, ids));
+            }
+        }
+        return tours;
+    }
+
+    private static Tour fromRow(ResultSet rs) throws SQLException {
+        return fromRow(rs, Interner.NONE);
+    }
+
+    private static Tour fromRow(ResultSet rs, Interner ids) throws SQLException {
+        Tour tour = new Tour(
+                rs.getString("id"),
+                rs.getString("name"),
+                ids.intern(rs.getString("destination_id")),
+                rs.getInt("duration_days"),
+                rs.getDouble("price"),
+                rs.getBoolean("available")
+        );
+        int capacity = rs.getInt("capacity");
+        if (!rs.wasNull()) tour.capacity = capacity;
+        tour.version = rs.getLong("version");
+        return tour;
+    }
+
     public String getDestinationName(Connection conn) throws SQLException {
         Destination destination = Destination.getById(conn, destinationId);
         return destination != null ? destination.getName() : "Unknown Destination";
     }
 
     public boolean save(Connection conn) throws SQLException {
-        if (getById(conn, this.id) != null) {
-            return update(conn);
+        boolean created = true;
+        boolean saved;
+        if (id == null) {
+            // New rows take a pre-allocated id, so no existence probe is needed
+            id = IdAllocator.nextId("tour");
+            saved = insert(conn);
+        } else if (getById(conn, this.id) != null) {
+            created = false;
+            saved = update(conn);
         } else {
-            return insert(conn);
+            saved = insert(conn);
         }
+        if (saved) DomainEvents.publish(DomainEvent.saved(DomainEvent.Entity.TOUR, id, created, this));
+        return saved;
     }
 
     private boolean insert(Connection conn) throws SQLException {
-        String query = "INSERT INTO tours (id, name, destination_id, duration_days, price, available) " +
-                "VALUES (?, ?, ?, ?, ?, ?)";
+        String query = "INSERT INTO tours (id, name, destination_id, duration_days, price, available, capacity) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, id);
@@ -1464,6 +3162,7 @@ class Tour {
             pstmt.setInt(4, durationDays);
             pstmt.setDouble(5, price);
             pstmt.setBoolean(6, available);
+            pstmt.setObject(7, capacity, Types.INTEGER);
 
             return pstmt.executeUpdate() > 0;
         }
@@ -1471,7 +3170,7 @@ class Tour {
 
     private boolean update(Connection conn) throws SQLException {
         String query = "UPDATE tours SET name = ?, destination_id = ?, duration_days = ?, " +
-                "price = ?, available = ? WHERE id = ?";
+                "price = ?, available = ?, capacity = ? WHERE id = ?";
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, name);
@@ -1479,19 +3178,60 @@ class Tour {
             pstmt.setInt(3, durationDays);
             pstmt.setDouble(4, price);
             pstmt.setBoolean(5, available);
-            pstmt.setString(6, id);
+            pstmt.setObject(6, capacity, Types.INTEGER);
+            pstmt.setString(7, id);
 
             return pstmt.executeUpdate() > 0;
         }
     }
 
+    // Kept from being deleted while bookings reference it, live or archived
     public static boolean delete(Connection conn, String id) throws SQLException {
-        String query = "DELETE FROM tours WHERE id = ?";
+        return deleteAll(conn, Collections.singletonList(id)) > 0;
+    }
 
-        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, id);
-            return pstmt.executeUpdate() > 0;
+    public static List<String> findReferenced(Connection conn, List<String> ids) throws SQLException {
+        return referenced(conn, ids, "");
+    }
+
+    // The bookings table is checked before the archive: archiving writes its file before it drops the
+    // rows, so a booking is always in at least one of them
+    private static List<String> referenced(Connection conn, List<String> ids, String lock) throws SQLException {
+        Set<String> found = new LinkedHashSet<>(SqlSupport.selectIds(conn,
+                "SELECT DISTINCT tour_id FROM bookings WHERE tour_id IN", ids, lock));
+        try {
+            found.addAll(BookingArchive.referencedTours(ids));
+        } catch (IOException e) {
+            throw new SQLException("Could not read the booking archive", e);
+        }
+        return new ArrayList<>(found);
+    }
+
+    // Referenced rows are skipped rather than failing the whole set. The bookings table has no foreign
+    // keys, so the tours are locked first: a booking insert holding one of them (Booking.lockParents)
+    // has committed before the locking read of the bookings runs, and later ones find the row gone
+    public static int deleteAll(Connection conn, List<String> ids) throws SQLException {
+        int deleted = SqlSupport.inTransaction(conn, c -> {
+            SqlSupport.selectIds(c, "SELECT id FROM tours WHERE id IN", ids, " FOR UPDATE");
+            Set<String> deletable = new LinkedHashSet<>(ids);
+            deletable.removeAll(referenced(c, ids, " FOR SHARE"));
+            return SqlSupport.updateByIds(c, "DELETE FROM tours WHERE id IN", new ArrayList<>(deletable));
+        });
+        DomainEvents.publishDeleted(conn, DomainEvent.Entity.TOUR, "tours", ids, deleted);
+        return deleted;
+    }
+
+    public static int updateAvailability(Connection conn, List<String> ids, boolean available) throws SQLException {
+        int updated = SqlSupport.updateByIds(conn, "UPDATE tours SET available = ? WHERE id IN",
+                Collections.singletonList(available), ids);
+        if (updated > 0) {
+            List<DomainEvent> events = new ArrayList<>();
+            for (Tour t : SqlSupport.selectByIds(conn, "SELECT * FROM tours WHERE id IN", ids, Tour::fromRow)) {
+                events.add(DomainEvent.saved(DomainEvent.Entity.TOUR, t.id, false, t));
+            }
+            DomainEvents.publish(events);
         }
+        return updated;
     }
 }
 
@@ -1501,6 +3241,7 @@ class Customer {
     private String email;
     private String phone;
     private String address;
+    private long version;
 
     public Customer(String id, String name, String email, String phone, String address) {
         this.id = id;
@@ -1515,6 +3256,7 @@ class Customer {
     public String getEmail() { return email; }
     public String getPhone() { return phone; }
     public String getAddress() { return address; }
+    public long getVersion() { return version; }
 
     public void setName(String name) { this.name = name; }
     public void setEmail(String email) { this.email = email; }
@@ -1530,13 +3272,7 @@ class Customer {
              ResultSet rs = stmt.executeQuery(query)) {
 
             while (rs.next()) {
-                customers.add(new Customer(
-                        rs.getString("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getString("phone"),
-                        rs.getString("address")
-                ));
+                customers.add(fromRow(rs));
             }
         }
         return customers;
@@ -1550,63 +3286,197 @@ class Customer {
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
-                return new Customer(
-                        rs.getString("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getString("phone"),
-                        rs.getString("address")
-                );
+                return fromRow(rs);
+            }
+        }
+        return null;
+    }
+
+    public static List<Customer> getChangedSince(Connection conn, long version, long upTo, int limit) throws SQLException {
+        List<Customer> customers = new ArrayList<>();
+        String query = "SELECT * FROM customers WHERE version > ? AND version <= ? ORDER BY version LIMIT ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setLong(1, version);
+            pstmt.setLong(2, upTo);
+            pstmt.setInt(3, limit);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                customers.add(fromRow(rs));
+            }
+        }
+        return customers;
+    }
+
+    private static Customer fromRow(ResultSet rs) throws SQLException {
+        Customer customer = new Customer(
+                rs.getString("id"),
+                rs.getString("name"),
+                rs.getString("email"),
+                rs.getString("phone"),
+                rs.getString("address")
+        );
+        customer.version = rs.getLong("version");
+        return customer;
+    }
+
+    /** Existing customer (other than excludeId) with the given normalized email or phone; either may be null. */
+    public static Customer findByNormalizedContact(Connection conn, String emailNorm, String phoneNorm,
+                                                   String excludeId) throws SQLException {
+        // Two index lookups joined with UNION rather than one OR, which MySQL may answer with a scan
+        String query = "SELECT * FROM customers WHERE email_norm = ? AND id <> ? " +
+                "UNION SELECT * FROM customers WHERE phone_norm = ? AND id <> ? LIMIT 1";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            String exclude = excludeId == null ? "" : excludeId;
+            pstmt.setString(1, emailNorm);
+            pstmt.setString(2, exclude);
+            pstmt.setString(3, phoneNorm);
+            pstmt.setString(4, exclude);
+            ResultSet rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                return fromRow(rs);
             }
         }
         return null;
     }
 
     public boolean save(Connection conn) throws SQLException {
-        if (getById(conn, this.id) != null) {
-            return update(conn);
+        return save(conn, false);
+    }
+
+    /** Saves the customer; unless allowDuplicate is set, refuses one whose email or phone is already taken. */
+    public boolean save(Connection conn, boolean allowDuplicate) throws SQLException {
+        DuplicateDetector detector = DuplicateDetector.instance();
+        if (!allowDuplicate) {
+            Customer duplicate = detector.findDuplicate(conn, this);
+            if (duplicate != null) {
+                throw new DuplicateCustomerException(duplicate);
+            }
+        }
+
+        boolean created = true;
+        boolean saved;
+        if (id == null) {
+            // New rows take a pre-allocated id, so no existence probe is needed
+            id = IdAllocator.nextId("customer");
+            saved = insert(conn);
+        } else if (getById(conn, this.id) != null) {
+            created = false;
+            saved = update(conn);
         } else {
-            return insert(conn);
+            saved = insert(conn);
+        }
+        if (saved) {
+            detector.add(this);
+            DomainEvents.publish(DomainEvent.saved(DomainEvent.Entity.CUSTOMER, id, created, this));
+        }
+        return saved;
+    }
+
+    /**
+     * Bulk insert for imports: customers that duplicate an existing customer or an earlier entry
+     * are skipped. Returns the customers actually inserted.
+     */
+    public static List<Customer> insertAllNew(Connection conn, List<Customer> customers) throws SQLException {
+        DuplicateDetector detector = DuplicateDetector.instance();
+        List<Customer> fresh = detector.filterNew(conn, customers);
+        if (fresh.isEmpty()) return fresh;
+
+        String query = "INSERT INTO customers (id, name, email, phone, address, email_norm, phone_norm) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        SqlSupport.inTransaction(conn, c -> {
+            try (PreparedStatement pstmt = c.prepareStatement(query)) {
+                for (Customer customer : fresh) {
+                    if (customer.id == null) customer.id = IdAllocator.nextId("customer");
+                    customer.bindInsert(pstmt);
+                    pstmt.addBatch();
+                }
+                return pstmt.executeBatch().length;
+            }
+        });
+        List<DomainEvent> events = new ArrayList<>();
+        for (Customer customer : fresh) {
+            detector.add(customer);
+            events.add(DomainEvent.saved(DomainEvent.Entity.CUSTOMER, customer.id, true, customer));
         }
+        DomainEvents.publish(events);
+        return fresh;
     }
 
     private boolean insert(Connection conn) throws SQLException {
-        String query = "INSERT INTO customers (id, name, email, phone, address) " +
-                "VALUES (?, ?, ?, ?, ?)";
+        String query = "INSERT INTO customers (id, name, email, phone, address, email_norm, phone_norm) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, id);
-            pstmt.setString(2, name);
-            pstmt.setString(3, email);
-            pstmt.setString(4, phone);
-            pstmt.setString(5, address);
-
+            bindInsert(pstmt);
             return pstmt.executeUpdate() > 0;
         }
     }
 
+    private void bindInsert(PreparedStatement pstmt) throws SQLException {
+        pstmt.setString(1, id);
+        pstmt.setString(2, name);
+        pstmt.setString(3, email);
+        pstmt.setString(4, phone);
+        pstmt.setString(5, address);
+        pstmt.setString(6, DuplicateDetector.normalizeEmail(email));
+        pstmt.setString(7, DuplicateDetector.normalizePhone(phone));
+    }
+
     private boolean update(Connection conn) throws SQLException {
-        String query = "UPDATE customers SET name = ?, email = ?, phone = ?, address = ? " +
-                "WHERE id = ?";
+        String query = "UPDATE customers SET name = ?, email = ?, phone = ?, address = ?, " +
+                "email_norm = ?, phone_norm = ? WHERE id = ?";
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, name);
             pstmt.setString(2, email);
             pstmt.setString(3, phone);
             pstmt.setString(4, address);
-            pstmt.setString(5, id);
+            pstmt.setString(5, DuplicateDetector.normalizeEmail(email));
+            pstmt.setString(6, DuplicateDetector.normalizePhone(phone));
+            pstmt.setString(7, id);
 
             return pstmt.executeUpdate() > 0;
         }
     }
 
+    // Kept from being deleted while bookings reference it, live or archived
     public static boolean delete(Connection conn, String id) throws SQLException {
-        String query = "DELETE FROM customers WHERE id = ?";
+        return deleteAll(conn, Collections.singletonList(id)) > 0;
+    }
 
-        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, id);
-            return pstmt.executeUpdate() > 0;
+    public static List<String> findReferenced(Connection conn, List<String> ids) throws SQLException {
+        return referenced(conn, ids, "");
+    }
+
+    // The bookings table is checked before the archive: archiving writes its file before it drops the
+    // rows, so a booking is always in at least one of them
+    private static List<String> referenced(Connection conn, List<String> ids, String lock) throws SQLException {
+        Set<String> found = new LinkedHashSet<>(SqlSupport.selectIds(conn,
+                "SELECT DISTINCT customer_id FROM bookings WHERE customer_id IN", ids, lock));
+        try {
+            found.addAll(BookingArchive.referencedCustomers(ids));
+        } catch (IOException e) {
+            throw new SQLException("Could not read the booking archive", e);
         }
+        return new ArrayList<>(found);
+    }
+
+    // Referenced rows are skipped rather than failing the whole set. The bookings table has no foreign
+    // keys, so the customers are locked first: a booking insert holding one of them (Booking.lockParents)
+    // has committed before the locking read of the bookings runs, and later ones find the row gone
+    public static int deleteAll(Connection conn, List<String> ids) throws SQLException {
+        int deleted = SqlSupport.inTransaction(conn, c -> {
+            SqlSupport.selectIds(c, "SELECT id FROM customers WHERE id IN", ids, " FOR UPDATE");
+            Set<String> deletable = new LinkedHashSet<>(ids);
+            deletable.removeAll(referenced(c, ids, " FOR SHARE"));
+            return SqlSupport.updateByIds(c, "DELETE FROM customers WHERE id IN", new ArrayList<>(deletable));
+        });
+        DomainEvents.publishDeleted(conn, DomainEvent.Entity.CUSTOMER, "customers", ids, deleted);
+        return deleted;
     }
 }
 
@@ -1618,7 +3488,9 @@ class Booking {
     private Date travelDate;
     private int numPeople;
     private double totalPrice;
-    private String status;
+    private BookingStatus status;
+    private long version;
+    private boolean archived;
 
     public Booking(String id, String tourId, String customerId, String bookingDate,
                    String travelDate, int numPeople, double totalPrice, String status) {
@@ -1629,7 +3501,19 @@ class Booking {
         this.travelDate = Date.valueOf(travelDate);
         this.numPeople = numPeople;
         this.totalPrice = totalPrice;
-        this.status = status;
+        this.status = BookingStatus.fromStoredLabel(status);
+    }
+
+    public Booking(String id, String tourId, String customerId, Date bookingDate,
+                   Date travelDate, int numPeople, double totalPrice, String status) {
+        this.id = id;
+        this.tourId = tourId;
+        this.customerId = customerId;
+        this.bookingDate = bookingDate;
+        this.travelDate = travelDate;
+        this.numPeople = numPeople;
+        this.totalPrice = totalPrice;
+        this.status = BookingStatus.fromStoredLabel(status);
     }
 
     public String getId() { return id; }
@@ -1639,7 +3523,11 @@ class Booking {
     public Date getTravelDate() { return travelDate; }
     public int getNumPeople() { return numPeople; }
     public double getTotalPrice() { return totalPrice; }
-    public String getStatus() { return status; }
+    public String getStatus() { return status.getLabel(); }
+    public BookingStatus getBookingStatus() { return status; }
+    public long getVersion() { return version; }
+    // Read from BookingArchive: the row has left the database, so the booking is read-only
+    public boolean isArchived() { return archived; }
 
     public void setTourId(String tourId) { this.tourId = tourId; }
     public void setCustomerId(String customerId) { this.customerId = customerId; }
@@ -1647,55 +3535,148 @@ class Booking {
     public void setTravelDate(Date travelDate) { this.travelDate = travelDate; }
     public void setNumPeople(int numPeople) { this.numPeople = numPeople; }
     public void setTotalPrice(double totalPrice) { this.totalPrice = totalPrice; }
-    public void setStatus(String status) { this.status = status; }
+    public void setStatus(String status) { this.status = BookingStatus.fromStoredLabel(status); }
 
     // Database operations
     public static List<Booking> getAllBookings(Connection conn) throws SQLException {
         List<Booking> bookings = new ArrayList<>();
+        Interner ids = Interner.forLoad();
         String query = "SELECT * FROM bookings";
 
         try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
 
             while (rs.next()) {
-                bookings.add(new Booking(
-                        rs.getString("id"),
-                        rs.getString("tour_id"),
-                        rs.getString("customer_id"),
-                        rs.getDate("booking_date").toString(),
-                        rs.getDate("travel_date").toString(),
-                        rs.getInt("num_people"),
-                        rs.getDouble("total_price"),
-                        rs.getString("status")
-                ));
+                bookings.add(fromRow(rs, ids));
+            }
+        }
+        return bookings;
+    }
+
+    public static List<Booking> getRecentBookings(Connection conn, int limit) throws SQLException {
+        List<Booking> bookings = new ArrayList<>();
+        Interner ids = Interner.forLoad();
+        String query = "SELECT * FROM bookings ORDER BY booking_date DESC LIMIT ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setInt(1, limit);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                bookings.add(fromRow(rs, ids));
+            }
+        }
+        return bookings;
+    }
+
+    // Bookings in one table with the bookings layout, e.g. a partition detached for archiving
+    static List<Booking> getAllFrom(Connection conn, String table) throws SQLException {
+        List<Booking> bookings = new ArrayList<>();
+        Interner ids = Interner.forLoad();
+        String query = "SELECT * FROM " + table;
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+
+            while (rs.next()) {
+                bookings.add(fromRow(rs, ids));
+            }
+        }
+        return bookings;
+    }
+
+    // Bookings travelling in [from, to), including archived months
+    public static List<Booking> getByTravelDateRange(Connection conn, LocalDate from, LocalDate to) throws SQLException {
+        List<Booking> bookings = new ArrayList<>();
+        Interner ids = Interner.forLoad();
+        // Plain comparisons on travel_date let MySQL prune to the partitions of the range
+        String query = "SELECT * FROM bookings WHERE travel_date >= ? AND travel_date < ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setDate(1, Date.valueOf(from));
+            pstmt.setDate(2, Date.valueOf(to));
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                bookings.add(fromRow(rs, ids));
             }
         }
+
+        try {
+            bookings.addAll(BookingArchive.readRange(from, to));
+        } catch (IOException e) {
+            throw new SQLException("Could not read the booking archive", e);
+        }
         return bookings;
     }
 
+    // Falls back to the archive files for bookings whose partition has been archived
     public static Booking getById(Connection conn, String id) throws SQLException {
-        String query = "SELECT * FROM bookings WHERE id = ?";
+        Booking booking = getLiveById(conn, id);
+        if (booking != null) return booking;
+
+        try {
+            return BookingArchive.findById(id);
+        } catch (IOException e) {
+            throw new SQLException("Could not read the booking archive", e);
+        }
+    }
+
+    private static Booking getLiveById(Connection conn, String id) throws SQLException {
+        return getLiveById(conn, id, false);
+    }
+
+    private static Booking getLiveById(Connection conn, String id, boolean lock) throws SQLException {
+        String query = "SELECT * FROM bookings WHERE id = ?" + (lock ? " FOR UPDATE" : "");
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, id);
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
-                return new Booking(
-                        rs.getString("id"),
-                        rs.getString("tour_id"),
-                        rs.getString("customer_id"),
-                        rs.getDate("booking_date").toString(),
-                        rs.getDate("travel_date").toString(),
-                        rs.getInt("num_people"),
-                        rs.getDouble("total_price"),
-                        rs.getString("status")
-                );
+                return fromRow(rs);
             }
         }
         return null;
     }
 
+    public static List<Booking> getChangedSince(Connection conn, long version, long upTo, int limit) throws SQLException {
+        List<Booking> bookings = new ArrayList<>();
+        Interner ids = Interner.forLoad();
+        String query = "SELECT * FROM bookings WHERE version > ? AND version <= ? ORDER BY version LIMIT ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setLong(1, version);
+            pstmt.setLong(2, upTo);
+            pstmt.setInt(3, limit);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                bookings.add(fromRow(rs, ids));
+            }
+        }
+        return bookings;
+    }
+
+    private static Booking fromRow(ResultSet rs) throws SQLException {
+        return fromRow(rs, Interner.NONE);
+    }
+
+    private static Booking fromRow(ResultSet rs, Interner ids) throws SQLException {
+        Booking booking = new Booking(
+                rs.getString("id"),
+                ids.intern(rs.getString("tour_id")),
+                ids.intern(rs.getString("customer_id")),
+                rs.getDate("booking_date"),
+                rs.getDate("travel_date"),
+                rs.getInt("num_people"),
+                rs.getDouble("total_price"),
+                rs.getString("status")
+        );
+        booking.version = rs.getLong("version");
+        return booking;
+    }
+
     public String getTourName(Connection conn) throws SQLException {
         Tour tour = Tour.getById(conn, tourId);
         return tour != null ? tour.getName() : "Unknown Tour";
@@ -1707,11 +3688,47 @@ class Booking {
     }
 
     public boolean save(Connection conn) throws SQLException {
-        if (getById(conn, this.id) != null) {
-            return update(conn);
-        } else {
-            return insert(conn);
+        if (archived) throw new IllegalStateException("An archived booking cannot be changed");
+        BookingStatus next = status;
+        // New bookings take a pre-allocated id, so no existence probe is needed
+        boolean probe = id != null;
+        if (!probe) {
+            if (!next.isInitial()) {
+                throw new IllegalStateException("A new booking cannot start as " + next);
+            }
+            id = IdAllocator.nextId("booking");
         }
+        AtomicReference<Booking> stored = new AtomicReference<>();
+        // The customer's message is queued in the same transaction, so it exists exactly when the change does
+        boolean saved = SqlSupport.inTransaction(conn, c -> {
+            if (!lockParents(c, tourId, customerId)) {
+                throw new SQLException("The tour or customer of this booking no longer exists");
+            }
+            // Read under the row lock, so the lifecycle job cannot move the booking on between the
+            // transition check and the write
+            Booking existing = probe ? getLiveById(c, id, true) : null;
+            stored.set(existing);
+            if (existing != null) {
+                BookingStatus current = existing.status;
+                if (!current.canTransitionTo(next)) {
+                    throw new IllegalStateException("A " + current + " booking cannot be changed to " + next);
+                }
+            } else if (!next.isInitial()) {
+                throw new IllegalStateException("A new booking cannot start as " + next);
+            }
+            // Pending and Confirmed bookings hold seats
+            if (next.isInitial()) {
+                Integer left = Waitlist.seatsLeft(c, tourId, travelDate, existing != null ? id : null);
+                if (left != null && left < numPeople) throw new DepartureFullException(tourId, travelDate, left);
+            }
+            boolean written = existing != null ? update(c, existing.travelDate) : insert(c);
+            if (written && (existing == null || existing.status != next)) {
+                NotificationOutbox.enqueue(c, Collections.singletonList(id), next);
+            }
+            return written;
+        });
+        if (saved) DomainEvents.publish(DomainEvent.saved(DomainEvent.Entity.BOOKING, id, stored.get() == null, this));
+        return saved;
     }
 
     private boolean insert(Connection conn) throws SQLException {
@@ -1727,16 +3744,38 @@ class Booking {
             pstmt.setDate(5, travelDate);
             pstmt.setInt(6, numPeople);
             pstmt.setDouble(7, totalPrice);
-            pstmt.setString(8, status);
+            pstmt.setString(8, status.getLabel());
 
             return pstmt.executeUpdate() > 0;
         }
     }
 
-    private boolean update(Connection conn) throws SQLException {
+    void markArchived() {
+        archived = true;
+    }
+
+    // For Waitlist.promote, which has already counted the seats under the tour lock in the caller's
+    // transaction; false when the tour or customer has been deleted in the meantime
+    boolean insertPromoted(Connection conn) throws SQLException {
+        if (!lockParents(conn, tourId, customerId)) return false;
+        id = IdAllocator.nextId("booking");
+        return insert(conn);
+    }
+
+    /**
+     * Locks the tour and customer rows until commit, in that order, and returns false when either is
+     * gone. The bookings table is partitioned and cannot have foreign keys; this lock is what keeps
+     * Tour.deleteAll and Customer.deleteAll from removing a parent while a booking for it is written.
+     */
+    static boolean lockParents(Connection conn, String tourId, String customerId) throws SQLException {
+        return SqlSupport.lockById(conn, "tours", tourId) && SqlSupport.lockById(conn, "customers", customerId);
+    }
+
+    // The stored travel date pins the update to the row's partition; a new travel date moves the row
+    private boolean update(Connection conn, Date storedTravelDate) throws SQLException {
         String query = "UPDATE bookings SET tour_id = ?, customer_id = ?, booking_date = ?, " +
                 "travel_date = ?, num_people = ?, total_price = ?, status = ? " +
-                "WHERE id = ?";
+                "WHERE id = ? AND travel_date = ?";
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, tourId);
@@ -1745,8 +3784,9 @@ class Booking {
             pstmt.setDate(4, travelDate);
             pstmt.setInt(5, numPeople);
             pstmt.setDouble(6, totalPrice);
-            pstmt.setString(7, status);
+            pstmt.setString(7, status.getLabel());
             pstmt.setString(8, id);
+            pstmt.setDate(9, storedTravelDate);
 
             return pstmt.executeUpdate() > 0;
         }
@@ -1757,7 +3797,47 @@ class Booking {
 
         try (PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, id);
-            return pstmt.executeUpdate() > 0;
+            boolean deleted = pstmt.executeUpdate() > 0;
+            if (deleted) DomainEvents.publish(DomainEvent.deleted(DomainEvent.Entity.BOOKING, id));
+            return deleted;
+        }
+    }
+
+    public static int deleteAll(Connection conn, List<String> ids) throws SQLException {
+        int deleted = SqlSupport.updateByIds(conn, "DELETE FROM bookings WHERE id IN", ids);
+        DomainEvents.publishDeleted(conn, DomainEvent.Entity.BOOKING, "bookings", ids, deleted);
+        return deleted;
+    }
+
+    // Bookings whose current status cannot move to the new one are left unchanged
+    public static int updateStatus(Connection conn, List<String> ids, BookingStatus status) throws SQLException {
+        List<String> sources = BookingStatus.labelsLeadingTo(status);
+        List<Object> params = new ArrayList<>();
+        params.add(status.getLabel());
+        params.addAll(sources);
+        int updated = SqlSupport.inTransaction(conn, c -> {
+            List<String> changing = NotificationOutbox.notifies(status)
+                    ? SqlSupport.selectIds(c, "SELECT id FROM bookings WHERE status IN (" + quoted(sources) +
+                    ") AND status <> '" + status.getLabel() + "' AND id IN", ids)
+                    : Collections.emptyList();
+            int count = SqlSupport.updateByIds(c, "UPDATE bookings SET status = ? " +
+                    "WHERE status IN (" + SqlSupport.placeholders(sources.size()) + ") AND id IN", params, ids);
+            NotificationOutbox.enqueue(c, changing, status);
+            return count;
+        });
+        if (updated > 0) {
+            // Re-read so subscribers get whole rows; the ones left unchanged are re-published as they are
+            List<DomainEvent> events = new ArrayList<>();
+            for (Booking b : SqlSupport.selectByIds(conn, "SELECT * FROM bookings WHERE id IN", ids, Booking::fromRow)) {
+                events.add(DomainEvent.saved(DomainEvent.Entity.BOOKING, b.id, false, b));
+            }
+            DomainEvents.publish(events);
         }
+        return updated;
+    }
+
+    // Labels come from BookingStatus, never from user input
+    private static String quoted(List<String> labels) {
+        return "'" + String.join("', '", labels) + "'";
     }
 }
\ No newline at end of file
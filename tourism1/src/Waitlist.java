@@ -0,0 +1,329 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Waitlists for tour departures (a tour on a travel date) whose capacity is used up.
+ *
+ * Entries live in the waitlist table, ordered for promotion by customer tier and then request
+ * time; the composite index makes that order a range scan. Tiers are fixed when the customer joins:
+ * 2 for five or more completed bookings, 1 for two or more, 0 otherwise.
+ *
+ * The engine watches DomainEvents for bookings turning Cancelled (and tours whose capacity may have
+ * grown), from this client and through DeltaSync from every other one, and queues the departure
+ * for promotion. Deleted and edited bookings may free seats too, but their events do not say which
+ * departure they held before, so they queue a sweep that finds the waitlisted departures with free
+ * seats in one query. The queue holds each departure once however many of its bookings were
+ * cancelled, nearest travel date first, and one worker drains it: per departure it locks the tour
+ * row, fills the free seats with the first waiting entries that fit as Pending bookings, and
+ * commits. Only promotions for the same tour ever wait for each other; clients racing for the same
+ * departure find the seats already taken once they get the lock.
+ */
+class Waitlist implements DomainEvents.Listener {
+    static final String WAITING = "Waiting";
+    static final String PROMOTED = "Promoted";
+
+    private static final Departure STOP = new Departure("", null);
+    // Every waitlisted departure that has seats free
+    private static final Departure SWEEP = new Departure("*", null);
+
+    private static final class Departure {
+        final String tourId;
+        // Null for every waiting departure of the tour
+        final Date travelDate;
+
+        Departure(String tourId, Date travelDate) {
+            this.tourId = tourId;
+            this.travelDate = travelDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Departure)) return false;
+            Departure other = (Departure) o;
+            return tourId.equals(other.tourId) && Objects.equals(travelDate, other.travelDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return tourId.hashCode() * 31 + Objects.hashCode(travelDate);
+        }
+    }
+
+    private final PriorityBlockingQueue<Departure> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparing((Departure d) -> d.travelDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(d -> d.tourId));
+    private final Set<Departure> queued = ConcurrentHashMap.newKeySet();
+    private Thread worker;
+
+    static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS waitlist (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "tour_id VARCHAR(10) NOT NULL, " +
+                    "travel_date DATE NOT NULL, " +
+                    "customer_id VARCHAR(10) NOT NULL, " +
+                    "num_people INT NOT NULL, " +
+                    "tier TINYINT NOT NULL DEFAULT 0, " +
+                    "requested_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+                    "status VARCHAR(10) NOT NULL DEFAULT 'Waiting', " +
+                    "booking_id VARCHAR(10), " +
+                    "INDEX idx_waitlist_queue (tour_id, travel_date, status, tier DESC, requested_at, id), " +
+                    "INDEX idx_waitlist_customer (customer_id))");
+        }
+        // Null means the tour takes any number of travellers and never has a waitlist
+        SqlSupport.ensureColumn(conn, "tours", "capacity", "INT NULL");
+    }
+
+    /**
+     * Seats left on the departure, leaving out the given booking, or null when the tour has no
+     * capacity. For a tour with a capacity, locks the tour row until the caller's transaction ends,
+     * so the answer stays true until the caller has written its booking; tours without one are not
+     * locked, so their bookings never wait for each other.
+     */
+    static Integer seatsLeft(Connection conn, String tourId, Date travelDate, String excludeBookingId) throws SQLException {
+        if (capacity(conn, tourId, false) == null) return null;
+        // Read again under the lock, since the capacity may have been set or changed in between
+        Integer capacity = capacity(conn, tourId, true);
+        if (capacity == null) return null;
+
+        // Completed bookings count like the occupancy calendar does; they only exist for past dates
+        String query = "SELECT COALESCE(SUM(num_people), 0) FROM bookings " +
+                "WHERE tour_id = ? AND travel_date = ? AND status <> ? AND id <> ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, tourId);
+            pstmt.setDate(2, travelDate);
+            pstmt.setString(3, BookingStatus.CANCELLED.getLabel());
+            pstmt.setString(4, excludeBookingId == null ? "" : excludeBookingId);
+            ResultSet rs = pstmt.executeQuery();
+            rs.next();
+            return Math.max(0, capacity - rs.getInt(1));
+        }
+    }
+
+    private static Integer capacity(Connection conn, String tourId, boolean lock) throws SQLException {
+        String query = "SELECT capacity FROM tours WHERE id = ?" + (lock ? " FOR UPDATE" : "");
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, tourId);
+            ResultSet rs = pstmt.executeQuery();
+            if (!rs.next()) return null;
+            int value = rs.getInt(1);
+            return rs.wasNull() ? null : value;
+        }
+    }
+
+    /** Puts the customer on the departure's waitlist and returns their position in it. */
+    static int join(Connection conn, String tourId, Date travelDate, String customerId, int numPeople) throws SQLException {
+        return SqlSupport.inTransaction(conn, c -> {
+            int tier;
+            try (PreparedStatement pstmt = c.prepareStatement(
+                    "SELECT COUNT(*) FROM bookings WHERE customer_id = ? AND status = ?")) {
+                pstmt.setString(1, customerId);
+                pstmt.setString(2, BookingStatus.COMPLETED.getLabel());
+                ResultSet rs = pstmt.executeQuery();
+                rs.next();
+                int completed = rs.getInt(1);
+                tier = completed >= 5 ? 2 : completed >= 2 ? 1 : 0;
+            }
+
+            long entryId;
+            String insert = "INSERT INTO waitlist (tour_id, travel_date, customer_id, num_people, tier) VALUES (?, ?, ?, ?, ?)";
+            try (PreparedStatement pstmt = c.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, tourId);
+                pstmt.setDate(2, travelDate);
+                pstmt.setString(3, customerId);
+                pstmt.setInt(4, numPeople);
+                pstmt.setInt(5, tier);
+                pstmt.executeUpdate();
+                ResultSet keys = pstmt.getGeneratedKeys();
+                keys.next();
+                entryId = keys.getLong(1);
+            }
+
+            String position = "SELECT COUNT(*) FROM waitlist w, waitlist me " +
+                    "WHERE me.id = ? AND w.tour_id = me.tour_id AND w.travel_date = me.travel_date " +
+                    "AND w.status = ? AND (w.tier > me.tier OR (w.tier = me.tier AND " +
+                    "(w.requested_at < me.requested_at OR (w.requested_at = me.requested_at AND w.id <= me.id))))";
+            try (PreparedStatement pstmt = c.prepareStatement(position)) {
+                pstmt.setLong(1, entryId);
+                pstmt.setString(2, WAITING);
+                ResultSet rs = pstmt.executeQuery();
+                rs.next();
+                return rs.getInt(1);
+            }
+        });
+    }
+
+    /**
+     * Starts the worker and queues every upcoming departure with waiting entries, catching up on
+     * cancellations made while no client was running.
+     */
+    public void start(Connection conn) throws SQLException {
+        worker = new Thread(this::drain, "waitlist-promotion");
+        worker.setDaemon(true);
+        worker.start();
+        DomainEvents.subscribe(this);
+
+        String query = "SELECT DISTINCT tour_id, travel_date FROM waitlist WHERE status = ? AND travel_date >= CURRENT_DATE";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, WAITING);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) schedule(new Departure(rs.getString(1), rs.getDate(2)));
+        }
+    }
+
+    public void stop() {
+        DomainEvents.unsubscribe(this);
+        if (worker != null) queue.add(STOP);
+    }
+
+    // Runs on the publishing thread, so it only queues the work
+    @Override
+    public void onEvents(List<DomainEvent> events) {
+        for (DomainEvent event : events) {
+            if (event.entity == DomainEvent.Entity.BOOKING && event.change == DomainEvent.Change.DELETED) {
+                schedule(SWEEP);
+            } else if (event.row instanceof Booking) {
+                Booking b = (Booking) event.row;
+                if (b.getBookingStatus() == BookingStatus.CANCELLED) {
+                    schedule(new Departure(b.getTourId(), b.getTravelDate()));
+                } else if (event.change == DomainEvent.Change.UPDATED) {
+                    // May have moved off another departure or shrunk; which one is not in the event
+                    schedule(SWEEP);
+                }
+            } else if (event.row instanceof Tour && event.change == DomainEvent.Change.UPDATED) {
+                schedule(new Departure(((Tour) event.row).getId(), null));
+            }
+        }
+    }
+
+    private void schedule(Departure departure) {
+        if (departure.travelDate != null && departure.travelDate.toLocalDate().isBefore(LocalDate.now())) return;
+        if (queued.add(departure)) queue.add(departure);
+    }
+
+    // One connection per burst: it is opened when work arrives and closed once the queue is empty
+    private void drain() {
+        try {
+            while (true) {
+                Departure departure = queue.take();
+                if (departure == STOP) return;
+                try (Connection conn = Database.connect()) {
+                    for (; departure != null; departure = queue.poll()) {
+                        if (departure == STOP) return;
+                        // Removed before promoting, so a cancellation arriving meanwhile queues the departure again
+                        queued.remove(departure);
+                        try {
+                            if (departure == SWEEP) {
+                                for (Departure free : departuresWithSeats(conn)) schedule(free);
+                            } else if (departure.travelDate == null) {
+                                for (Date date : waitingDates(conn, departure.tourId)) {
+                                    schedule(new Departure(departure.tourId, date));
+                                }
+                            } else {
+                                promote(conn, departure.tourId, departure.travelDate);
+                            }
+                        } catch (SQLException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waitlisted upcoming departures with at least one seat free; promote decides who fits
+    private static List<Departure> departuresWithSeats(Connection conn) throws SQLException {
+        List<Departure> departures = new ArrayList<>();
+        String query = "SELECT w.tour_id, w.travel_date FROM " +
+                "(SELECT DISTINCT tour_id, travel_date FROM waitlist WHERE status = ? AND travel_date >= CURRENT_DATE) w " +
+                "JOIN tours t ON t.id = w.tour_id " +
+                "WHERE t.capacity IS NULL OR t.capacity > (SELECT COALESCE(SUM(b.num_people), 0) FROM bookings b " +
+                "WHERE b.tour_id = w.tour_id AND b.travel_date = w.travel_date AND b.status <> ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, WAITING);
+            pstmt.setString(2, BookingStatus.CANCELLED.getLabel());
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) departures.add(new Departure(rs.getString(1), rs.getDate(2)));
+        }
+        return departures;
+    }
+
+    private static List<Date> waitingDates(Connection conn, String tourId) throws SQLException {
+        List<Date> dates = new ArrayList<>();
+        String query = "SELECT DISTINCT travel_date FROM waitlist WHERE tour_id = ? AND status = ? AND travel_date >= CURRENT_DATE";
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, tourId);
+            pstmt.setString(2, WAITING);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) dates.add(rs.getDate(1));
+        }
+        return dates;
+    }
+
+    /**
+     * Turns the first waiting entries that fit into the free seats into Pending bookings, in one
+     * transaction, and returns the bookings created. A party too large for the seats left is passed
+     * over for smaller ones behind it but keeps its place.
+     */
+    static List<Booking> promote(Connection conn, String tourId, Date travelDate) throws SQLException {
+        List<Booking> promoted = SqlSupport.inTransaction(conn, c -> {
+            List<Booking> bookings = new ArrayList<>();
+            Integer left = seatsLeft(c, tourId, travelDate, null);
+            if (left != null && left == 0) return bookings;
+
+            Tour tour = Tour.getById(c, tourId);
+            if (tour == null) return bookings;
+            String query = "SELECT id, customer_id, num_people FROM waitlist " +
+                    "WHERE tour_id = ? AND travel_date = ? AND status = ? " +
+                    "ORDER BY tier DESC, requested_at, id FOR UPDATE";
+            List<long[]> entries = new ArrayList<>();
+            List<String> customers = new ArrayList<>();
+            try (PreparedStatement pstmt = c.prepareStatement(query)) {
+                pstmt.setString(1, tourId);
+                pstmt.setDate(2, travelDate);
+                pstmt.setString(3, WAITING);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    entries.add(new long[]{rs.getLong(1), rs.getInt(3)});
+                    customers.add(rs.getString(2));
+                }
+            }
+
+            Date today = Date.valueOf(LocalDate.now());
+            try (PreparedStatement mark = c.prepareStatement(
+                    "UPDATE waitlist SET status = ?, booking_id = ? WHERE id = ?")) {
+                for (int i = 0; i < entries.size() && (left == null || left > 0); i++) {
+                    int people = (int) entries.get(i)[1];
+                    if (left != null && people > left) continue;
+
+                    Booking booking = new Booking(null, tourId, customers.get(i), today, travelDate,
+                            people, people * tour.getPrice(), BookingStatus.PENDING.getLabel());
+                    if (!booking.insertPromoted(c)) continue;
+                    mark.setString(1, PROMOTED);
+                    mark.setString(2, booking.getId());
+                    mark.setLong(3, entries.get(i)[0]);
+                    mark.executeUpdate();
+                    bookings.add(booking);
+                    if (left != null) left -= people;
+                }
+            }
+            return bookings;
+        });
+
+        List<DomainEvent> events = new ArrayList<>();
+        for (Booking b : promoted) events.add(DomainEvent.saved(DomainEvent.Entity.BOOKING, b.getId(), true, b));
+        DomainEvents.publish(events);
+        return promoted;
+    }
+}